@@ -0,0 +1,239 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The result of the scope analysis and munging of a JavaScript source:
+ * the identifiers declared in each scope, with their reference counts and
+ * munged names, and the naming options they were given by. An artifact
+ * is keyed by the SHA-256 hash of the source it was computed from, and
+ * can be stored with {@link #writeTo(OutputStream)} to skip munging when
+ * the same source is compressed again.
+ */
+public final class AnalysisArtifact {
+
+    /**
+     * Version of the binary format and of the scope model it records.
+     * Artifacts written with another version are rejected when read.
+     */
+    public static final int VERSION = 5;
+
+    private static final int MAGIC = 0x59554941; // "YUIA"
+
+    private final String sourceHash;
+    private final NamingStrategy namingStrategy;
+    private final boolean frequencyAlphabet;
+    // Scopes in pre-order, the global scope first
+    private final List<ScopeRecord> scopes;
+
+    private AnalysisArtifact(String sourceHash, NamingStrategy namingStrategy,
+                             boolean frequencyAlphabet, List<ScopeRecord> scopes) {
+        this.sourceHash = sourceHash;
+        this.namingStrategy = namingStrategy;
+        this.frequencyAlphabet = frequencyAlphabet;
+        this.scopes = scopes;
+    }
+
+    /**
+     * @return Hex encoded SHA-256 hash of the source this artifact describes
+     */
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    /**
+     * @return The naming strategy the munged names were given by
+     */
+    public NamingStrategy getNamingStrategy() {
+        return namingStrategy;
+    }
+
+    /**
+     * @return Whether the munged names were made of the letters most
+     *         frequent in the code
+     */
+    public boolean isFrequencyAlphabet() {
+        return frequencyAlphabet;
+    }
+
+    /**
+     * @return Hex encoded SHA-256 hash of the given source
+     */
+    public static String hash(String source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    static AnalysisArtifact capture(String sourceHash, NamingStrategy namingStrategy,
+                                    boolean frequencyAlphabet, ScriptOrFnScope globalScope) {
+        List<ScopeRecord> scopes = new ArrayList<>();
+        capture(globalScope, scopes);
+        return new AnalysisArtifact(sourceHash, namingStrategy, frequencyAlphabet, scopes);
+    }
+
+    private static void capture(ScriptOrFnScope scope, List<ScopeRecord> scopes) {
+        ScopeRecord record = new ScopeRecord(scope.getSubScopes().size());
+        for (JavaScriptIdentifier identifier : scope.getIdentifiers()) {
+            record.identifiers.add(new IdentifierRecord(identifier.getValue(),
+                identifier.getRefcount(), identifier.getMungedValue()));
+        }
+        scopes.add(record);
+        for (ScriptOrFnScope subScope : scope.getSubScopes()) {
+            capture(subScope, scopes);
+        }
+    }
+
+    /**
+     * Assigns the recorded munged names to the identifiers of the given
+     * scope tree. Nothing is changed unless the tree has exactly the
+     * recorded scopes and identifiers.
+     *
+     * @return true if the names were applied
+     */
+    boolean applyTo(ScriptOrFnScope globalScope) {
+        List<ScriptOrFnScope> tree = new ArrayList<>();
+        flatten(globalScope, tree);
+        if (tree.size() != scopes.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < tree.size(); i++) {
+            ScriptOrFnScope scope = tree.get(i);
+            ScopeRecord record = scopes.get(i);
+            if (scope.getSubScopes().size() != record.subScopeCount ||
+                    scope.getIdentifiers().size() != record.identifiers.size()) {
+                return false;
+            }
+            for (IdentifierRecord id : record.identifiers) {
+                JavaScriptIdentifier identifier = scope.getIdentifier(id.name);
+                if (identifier == null || identifier.getRefcount() != id.refcount) {
+                    return false;
+                }
+            }
+        }
+
+        for (int i = 0; i < tree.size(); i++) {
+            ScriptOrFnScope scope = tree.get(i);
+            for (IdentifierRecord id : scopes.get(i).identifiers) {
+                scope.getIdentifier(id.name).setMungedValue(id.mungedValue);
+            }
+        }
+        return true;
+    }
+
+    private static void flatten(ScriptOrFnScope scope, List<ScriptOrFnScope> tree) {
+        tree.add(scope);
+        for (ScriptOrFnScope subScope : scope.getSubScopes()) {
+            flatten(subScope, tree);
+        }
+    }
+
+    /**
+     * Writes this artifact in the versioned binary format.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeUTF(sourceHash);
+        data.writeUTF(namingStrategy.name());
+        data.writeBoolean(frequencyAlphabet);
+        data.writeInt(scopes.size());
+        for (ScopeRecord scope : scopes) {
+            data.writeInt(scope.subScopeCount);
+            data.writeInt(scope.identifiers.size());
+            for (IdentifierRecord id : scope.identifiers) {
+                data.writeUTF(id.name);
+                data.writeInt(id.refcount);
+                data.writeBoolean(id.mungedValue != null);
+                if (id.mungedValue != null) {
+                    data.writeUTF(id.mungedValue);
+                }
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads an artifact written by {@link #writeTo(OutputStream)}.
+     *
+     * @throws IOException if the data is not an artifact of the current version
+     */
+    public static AnalysisArtifact readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not an analysis artifact");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported analysis artifact version " + version);
+        }
+        String sourceHash = data.readUTF();
+        NamingStrategy namingStrategy;
+        try {
+            namingStrategy = NamingStrategy.valueOf(data.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown naming strategy", e);
+        }
+        boolean frequencyAlphabet = data.readBoolean();
+        int scopeCount = data.readInt();
+        List<ScopeRecord> scopes = new ArrayList<>(scopeCount);
+        for (int i = 0; i < scopeCount; i++) {
+            ScopeRecord scope = new ScopeRecord(data.readInt());
+            int identifierCount = data.readInt();
+            for (int j = 0; j < identifierCount; j++) {
+                String name = data.readUTF();
+                int refcount = data.readInt();
+                String mungedValue = data.readBoolean() ? data.readUTF() : null;
+                scope.identifiers.add(new IdentifierRecord(name, refcount, mungedValue));
+            }
+            scopes.add(scope);
+        }
+        return new AnalysisArtifact(sourceHash, namingStrategy, frequencyAlphabet, scopes);
+    }
+
+    private static final class ScopeRecord {
+        final int subScopeCount;
+        final List<IdentifierRecord> identifiers = new ArrayList<>();
+
+        ScopeRecord(int subScopeCount) {
+            this.subScopeCount = subScopeCount;
+        }
+    }
+
+    private static final class IdentifierRecord {
+        final String name;
+        final int refcount;
+        final String mungedValue;
+
+        IdentifierRecord(String name, int refcount, String mungedValue) {
+            this.name = name;
+            this.refcount = refcount;
+            this.mungedValue = mungedValue;
+        }
+    }
+}
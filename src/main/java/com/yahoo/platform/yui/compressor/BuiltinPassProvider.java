@@ -0,0 +1,27 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Provides the passes the YUI Compressor ships with.
+ */
+public class BuiltinPassProvider implements CompressorPassProvider {
+
+    public List<CompressorPass> getPasses(String type) {
+        if (CSS.equals(type)) {
+            return CssPasses.PASSES;
+        } else if (JAVASCRIPT.equals(type)) {
+            return JavaScriptPasses.PASSES;
+        }
+        return Collections.emptyList();
+    }
+}
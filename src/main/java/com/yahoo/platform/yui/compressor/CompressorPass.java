@@ -0,0 +1,48 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+/**
+ * A single named step of a compression pipeline.
+ *
+ * Passes are supplied by {@link CompressorPassProvider} implementations and
+ * run in ascending {@link #getOrder() order}. The built-in passes use orders
+ * in steps of 100, so custom passes can be slotted in between them.
+ */
+public interface CompressorPass {
+
+    /**
+     * @return Name used to refer to this pass, e.g. to disable it
+     */
+    String getName();
+
+    /**
+     * @return Position of this pass in the pipeline (lower runs first)
+     */
+    int getOrder();
+
+    /**
+     * Required passes maintain internal invariants of the pipeline (such as
+     * protecting and restoring string literals) and cannot be disabled.
+     *
+     * @return true if this pass cannot be disabled
+     */
+    default boolean isRequired() {
+        return false;
+    }
+
+    /**
+     * Applies this pass.
+     *
+     * @param input Output of the previous pass
+     * @param context State shared by the passes of a single compression
+     * @return The transformed input
+     */
+    String apply(String input, PassContext context);
+}
@@ -0,0 +1,33 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.util.List;
+
+/**
+ * Service provider interface for compression passes.
+ *
+ * Implementations are discovered with {@link java.util.ServiceLoader}: list
+ * the implementation class in
+ * {@code META-INF/services/com.yahoo.platform.yui.compressor.CompressorPassProvider}.
+ */
+public interface CompressorPassProvider {
+
+    /** Type of the CSS pipeline */
+    String CSS = "css";
+
+    /** Type of the JavaScript pipeline, run on the generated code */
+    String JAVASCRIPT = "js";
+
+    /**
+     * @param type Pipeline type, {@link #CSS} or {@link #JAVASCRIPT}
+     * @return The passes this provider contributes to the pipeline, never null
+     */
+    List<CompressorPass> getPasses(String type);
+}
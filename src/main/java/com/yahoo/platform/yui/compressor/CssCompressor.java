@@ -16,11 +16,15 @@ import java.io.Reader;
 import java.io.Writer;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 public class CssCompressor {
 
     private StringBuffer srcsb = new StringBuffer();
+    private Collection<String> disabledPasses = Collections.emptySet();
+    private List<PassStatistics> passStatistics = Collections.emptyList();
 
     public CssCompressor(Reader in) throws IOException {
         // Read the stream...
@@ -39,7 +43,13 @@ public class CssCompressor {
      * @return
      */
     protected String preserveToken(String css, String preservedToken,
-            String tokenRegex, boolean removeWhiteSpace, ArrayList preservedTokens) {
+            String tokenRegex, boolean removeWhiteSpace, List<String> preservedTokens) {
+        return preserveToken(css, preservedToken, tokenRegex, removeWhiteSpace,
+                new Placeholders("___YUICSSMIN_PRESERVED_TOKEN_", preservedTokens));
+    }
+
+    static String preserveToken(String css, String preservedToken,
+            String tokenRegex, boolean removeWhiteSpace, Placeholders preservedTokens) {
 
         int maxIndex = css.length() - 1;
         int appendIndex = 0;
@@ -85,9 +95,7 @@ public class CssCompressor {
                 String token = css.substring(startIndex, endIndex);
                 if(removeWhiteSpace)
                     token = token.replaceAll("\\s+", "");
-                preservedTokens.add(token);
-
-                String preserver = preservedToken + "(___YUICSSMIN_PRESERVED_TOKEN_" + (preservedTokens.size() - 1) + "___)";
+                String preserver = preservedToken + "(" + preservedTokens.add(token) + ")";
                 sb.append(preserver);
 
                 appendIndex = endIndex + 1;
@@ -103,466 +111,34 @@ public class CssCompressor {
         return sb.toString();
     }
 
-    public void compress(Writer out, int linebreakpos)
-            throws IOException {
-
-        Pattern p;
-        Matcher m;
-        String css = srcsb.toString();
-
-        int startIndex = 0;
-        int endIndex = 0;
-        int i = 0;
-        int max = 0;
-        ArrayList preservedTokens = new ArrayList(0);
-        ArrayList comments = new ArrayList(0);
-        String token;
-        int totallen = css.length();
-        String placeholder;
-
-
-        StringBuffer sb = new StringBuffer(css);
-
-        // collect all comment blocks...
-        while ((startIndex = sb.indexOf("/*", startIndex)) >= 0) {
-            endIndex = sb.indexOf("*/", startIndex + 2);
-            if (endIndex < 0) {
-                endIndex = totallen;
-            }
-
-            token = sb.substring(startIndex + 2, endIndex);
-            comments.add(token);
-            sb.replace(startIndex + 2, endIndex, "___YUICSSMIN_PRESERVE_CANDIDATE_COMMENT_" + (comments.size() - 1) + "___");
-            startIndex += 2;
-        }
-        css = sb.toString();
-
-
-        css = this.preserveToken(css, "url", "(?i)url\\(\\s*([\"']?)data\\:", true, preservedTokens);
-        css = this.preserveToken(css, "calc",  "(?i)calc\\(\\s*([\"']?)", false, preservedTokens);
-        css = this.preserveToken(css, "progid:DXImageTransform.Microsoft.Matrix",  "(?i)progid:DXImageTransform.Microsoft.Matrix\\s*([\"']?)", false, preservedTokens);
-
-
-        // preserve strings so their content doesn't get accidentally minified
-        sb = new StringBuffer();
-        p = Pattern.compile("(\"([^\\\\\"]|\\\\.|\\\\)*\")|(\'([^\\\\\']|\\\\.|\\\\)*\')");
-        m = p.matcher(css);
-        while (m.find()) {
-            token = m.group();
-            char quote = token.charAt(0);
-            token = token.substring(1, token.length() - 1);
-
-            // maybe the string contains a comment-like substring?
-            // one, maybe more? put'em back then
-            if (token.indexOf("___YUICSSMIN_PRESERVE_CANDIDATE_COMMENT_") >= 0) {
-                for (i = 0, max = comments.size(); i < max; i += 1) {
-                    token = token.replace("___YUICSSMIN_PRESERVE_CANDIDATE_COMMENT_" + i + "___", comments.get(i).toString());
-                }
-            }
-
-            // minify alpha opacity in filter strings
-            token = token.replaceAll("(?i)progid:DXImageTransform.Microsoft.Alpha\\(Opacity=", "alpha(opacity=");
-
-            preservedTokens.add(token);
-            String preserver = quote + "___YUICSSMIN_PRESERVED_TOKEN_" + (preservedTokens.size() - 1) + "___" + quote;
-            m.appendReplacement(sb, preserver);
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-
-        // strings are safe, now wrestle the comments
-        for (i = 0, max = comments.size(); i < max; i += 1) {
-
-            token = comments.get(i).toString();
-            placeholder = "___YUICSSMIN_PRESERVE_CANDIDATE_COMMENT_" + i + "___";
-
-            // ! in the first position of the comment means preserve
-            // so push to the preserved tokens while stripping the !
-            if (token.startsWith("!")) {
-                preservedTokens.add(token);
-                css = css.replace(placeholder,  "___YUICSSMIN_PRESERVED_TOKEN_" + (preservedTokens.size() - 1) + "___");
-                continue;
-            }
-
-            // \ in the last position looks like hack for Mac/IE5
-            // shorten that to /*\*/ and the next one to /**/
-            if (token.endsWith("\\")) {
-                preservedTokens.add("\\");
-                css = css.replace(placeholder,  "___YUICSSMIN_PRESERVED_TOKEN_" + (preservedTokens.size() - 1) + "___");
-                i = i + 1; // attn: advancing the loop
-                preservedTokens.add("");
-                css = css.replace("___YUICSSMIN_PRESERVE_CANDIDATE_COMMENT_" + i + "___",  "___YUICSSMIN_PRESERVED_TOKEN_" + (preservedTokens.size() - 1) + "___");
-                continue;
-            }
-
-            // keep empty comments after child selectors (IE7 hack)
-            // e.g. html >/**/ body
-            if (token.length() == 0) {
-                startIndex = css.indexOf(placeholder);
-                if (startIndex > 2) {
-                    if (css.charAt(startIndex - 3) == '>') {
-                        preservedTokens.add("");
-                        css = css.replace(placeholder,  "___YUICSSMIN_PRESERVED_TOKEN_" + (preservedTokens.size() - 1) + "___");
-                    }
-                }
-            }
-
-            // in all other cases kill the comment
-            css = css.replace("/*" + placeholder + "*/", "");
-        }
-
-        // preserve \9 IE hack
-        final String backslash9 = "\\9"; 
-        while (css.indexOf(backslash9) > -1) {
-            preservedTokens.add(backslash9);
-            css = css.replace(backslash9,  "___YUICSSMIN_PRESERVED_TOKEN_" + (preservedTokens.size() - 1) + "___");
-     	}
-        
-        // Normalize all whitespace strings to single spaces. Easier to work with that way.
-        css = css.replaceAll("\\s+", " ");
-
-        // Remove the spaces before the things that should not have spaces before them.
-        // But, be careful not to turn "p :link {...}" into "p:link{...}"
-        // Swap out any pseudo-class colons with the token, and then swap back.
-        sb = new StringBuffer();
-        p = Pattern.compile("(^|\\})((^|([^\\{:])+):)+([^\\{]*\\{)");
-        m = p.matcher(css);
-        while (m.find()) {
-            String s = m.group();
-            s = s.replaceAll(":", "___YUICSSMIN_PSEUDOCLASSCOLON___");
-            s = s.replaceAll( "\\\\", "\\\\\\\\" ).replaceAll( "\\$", "\\\\\\$" );
-            m.appendReplacement(sb, s);
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-        // Remove spaces before the things that should not have spaces before them.
-        css = css.replaceAll("\\s+([!{};:>+\\(\\)\\],])", "$1");
-        // Restore spaces for !important
-        css = css.replaceAll("!important", " !important");
-        // bring back the colon
-        css = css.replaceAll("___YUICSSMIN_PSEUDOCLASSCOLON___", ":");
-
-        // retain space for special IE6 cases
-        sb = new StringBuffer();
-        p = Pattern.compile("(?i):first\\-(line|letter)(\\{|,)");
-        m = p.matcher(css);
-        while (m.find()) {
-            m.appendReplacement(sb, ":first-" + m.group(1).toLowerCase() + " " + m.group(2));
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // no space after the end of a preserved comment
-        css = css.replaceAll("\\*/ ", "*/");
-
-        // If there are multiple @charset directives, push them to the top of the file.
-        sb = new StringBuffer();
-        p = Pattern.compile("(?i)^(.*)(@charset)( \"[^\"]*\";)");
-        m = p.matcher(css);
-        while (m.find()) {
-            String s = m.group(1).replaceAll("\\\\", "\\\\\\\\").replaceAll("\\$", "\\\\\\$");
-            m.appendReplacement(sb, m.group(2).toLowerCase() + m.group(3) + s);
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // When all @charset are at the top, remove the second and after (as they are completely ignored).
-        sb = new StringBuffer();
-        p = Pattern.compile("(?i)^((\\s*)(@charset)( [^;]+;\\s*))+");
-        m = p.matcher(css);
-        while (m.find()) {
-            m.appendReplacement(sb, m.group(2) + m.group(3).toLowerCase() + m.group(4));
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // lowercase some popular @directives (@charset is done right above)
-        sb = new StringBuffer();
-        p = Pattern.compile("(?i)@(font-face|import|(?:-(?:atsc|khtml|moz|ms|o|wap|webkit)-)?keyframe|media|page|namespace)");
-        m = p.matcher(css);
-        while (m.find()) {
-            m.appendReplacement(sb, '@' + m.group(1).toLowerCase());
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // lowercase some more common pseudo-elements
-        sb = new StringBuffer();
-        p = Pattern.compile("(?i):(active|after|before|checked|disabled|empty|enabled|first-(?:child|of-type)|focus|hover|last-(?:child|of-type)|link|only-(?:child|of-type)|root|:selection|target|visited)");
-        m = p.matcher(css);
-        while (m.find()) {
-            m.appendReplacement(sb, ':' + m.group(1).toLowerCase());
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // lowercase some more common functions
-        sb = new StringBuffer();
-        p = Pattern.compile("(?i):(lang|not|nth-child|nth-last-child|nth-last-of-type|nth-of-type|(?:-(?:moz|webkit)-)?any)\\(");
-        m = p.matcher(css);
-        while (m.find()) {
-            m.appendReplacement(sb, ':' + m.group(1).toLowerCase() + '(');
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // lower case some common function that can be values
-        // NOTE: rgb() isn't useful as we replace with #hex later, as well as and() is already done for us right after this
-        sb = new StringBuffer();
-        p = Pattern.compile("(?i)([:,\\( ]\\s*)(attr|color-stop|from|rgba|to|url|(?:-(?:atsc|khtml|moz|ms|o|wap|webkit)-)?(?:calc|max|min|(?:repeating-)?(?:linear|radial)-gradient)|-webkit-gradient)");
-        m = p.matcher(css);
-        while (m.find()) {
-            m.appendReplacement(sb, m.group(1) + m.group(2).toLowerCase());
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // Put the space back in some cases, to support stuff like
-        // @media screen and (-webkit-min-device-pixel-ratio:0){
-        css = css.replaceAll("(?i)\\band\\(", "and (");
-
-        // Remove the spaces after the things that should not have spaces after them.
-        css = css.replaceAll("([!{}:;>+\\(\\[,])\\s+", "$1");
-
-        // remove unnecessary semicolons
-        css = css.replaceAll(";+}", "}");
-
-        // Replace 0(px,em) with 0. (don't replace seconds are they are needed for transitions to be valid)
-        String oldCss;
-        p = Pattern.compile("(?i)(^|: ?)((?:[0-9a-z-.]+ )*?)?(?:0?\\.)?0(?:px|em|in|cm|mm|pc|pt|ex|deg|g?rad|k?hz)");
-        do {
-          oldCss = css;
-          m = p.matcher(css);
-          css = m.replaceAll("$1$20");
-        } while (!(css.equals(oldCss)));
-
-        // We do the same with % but don't replace the 0% in keyframes
-        p = Pattern.compile("(?i)(: ?)((?:[0-9a-z-.]+ )*?)?(?:0?\\.)?0(?:%)");
-        do {
-          oldCss = css;
-          m = p.matcher(css);
-          css = m.replaceAll("$1$20");
-        } while (!(css.equals(oldCss)));
-        
-        //Replace the keyframe 100% step with 'to' which is shorter
-        p = Pattern.compile("(?i)(^|,|\\{) ?(?:100% ?\\{)");
-        do {
-          oldCss = css;
-          m = p.matcher(css);
-          css = m.replaceAll("$1to{");
-        } while (!(css.equals(oldCss)));
-
-        // Replace 0(px,em,%) with 0 inside groups (e.g. -MOZ-RADIAL-GRADIENT(CENTER 45DEG, CIRCLE CLOSEST-SIDE, ORANGE 0%, RED 100%))
-        p = Pattern.compile("(?i)\\( ?((?:[0-9a-z-.]+[ ,])*)?(?:0?\\.)?0(?:px|em|%|in|cm|mm|pc|pt|ex|deg|g?rad|m?s|k?hz)");
-        do {
-          oldCss = css;
-          m = p.matcher(css);
-          css = m.replaceAll("($10");
-        } while (!(css.equals(oldCss)));
-
-        // Replace x.0(px,em,%) with x(px,em,%).
-        css = css.replaceAll("([0-9])\\.0(px|em|%|in|cm|mm|pc|pt|ex|deg|m?s|g?rad|k?hz| |;)", "$1$2");
-
-        // Replace 0 0 0 0; with 0.
-        css = css.replaceAll(":0 0 0 0(;|})", ":0$1");
-        css = css.replaceAll(":0 0 0(;|})", ":0$1");
-        css = css.replaceAll("(?<!flex):0 0(;|})", ":0$1");
-
-
-        // Replace background-position:0; with background-position:0 0;
-        // same for transform-origin
-        sb = new StringBuffer();
-        p = Pattern.compile("(?i)(background-position|webkit-mask-position|transform-origin|webkit-transform-origin|moz-transform-origin|o-transform-origin|ms-transform-origin):0(;|})");
-        m = p.matcher(css);
-        while (m.find()) {
-            m.appendReplacement(sb, m.group(1).toLowerCase() + ":0 0" + m.group(2));
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // Replace 0.6 to .6, but only when preceded by : or a white-space
-        css = css.replaceAll("(:|\\s)0+\\.(\\d+)", "$1.$2");
-
-        // Shorten colors from rgb(51,102,153) to #336699
-        // This makes it more likely that it'll get further compressed in the next step.
-        p = Pattern.compile("rgb\\s*\\(\\s*([0-9,\\s]+)\\s*\\)");
-        m = p.matcher(css);
-        sb = new StringBuffer();
-        while (m.find()) {
-            String[] rgbcolors = m.group(1).split(",");
-            StringBuffer hexcolor = new StringBuffer("#");
-            for (i = 0; i < rgbcolors.length; i++) {
-                int val = Integer.parseInt(rgbcolors[i]);
-                if (val < 16) {
-                    hexcolor.append("0");
-                }
-
-                // If someone passes an RGB value that's too big to express in two characters, round down.
-                // Probably should throw out a warning here, but generating valid CSS is a bigger concern.
-                if (val > 255) {
-                    val = 255;
-                }
-                hexcolor.append(Integer.toHexString(val));
-            }
-            m.appendReplacement(sb, hexcolor.toString());
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // Shorten colors from #AABBCC to #ABC. Note that we want to make sure
-        // the color is not preceded by either ", " or =. Indeed, the property
-        //     filter: chroma(color="#FFFFFF");
-        // would become
-        //     filter: chroma(color="#FFF");
-        // which makes the filter break in IE.
-        // We also want to make sure we're only compressing #AABBCC patterns inside { }, not id selectors ( #FAABAC {} )
-        // We also want to avoid compressing invalid values (e.g. #AABBCCD to #ABCD)
-        p = Pattern.compile("(\\=\\s*?[\"']?)?" + "#([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])" + "(:?\\}|[^0-9a-fA-F{][^{]*?\\})");
-
-        m = p.matcher(css);
-        sb = new StringBuffer();
-        int index = 0;
-
-        while (m.find(index)) {
-
-            sb.append(css.substring(index, m.start()));
-
-            boolean isFilter = (m.group(1) != null && !"".equals(m.group(1)));
-
-            if (isFilter) {
-                // Restore, as is. Compression will break filters
-                sb.append(m.group(1) + "#" + m.group(2) + m.group(3) + m.group(4) + m.group(5) + m.group(6) + m.group(7));
-            } else {
-                if( m.group(2).equalsIgnoreCase(m.group(3)) &&
-                    m.group(4).equalsIgnoreCase(m.group(5)) &&
-                    m.group(6).equalsIgnoreCase(m.group(7))) {
-
-                    // #AABBCC pattern
-                    sb.append("#" + (m.group(3) + m.group(5) + m.group(7)).toLowerCase());
-
-                } else {
-
-                    // Non-compressible color, restore, but lower case.
-                    sb.append("#" + (m.group(2) + m.group(3) + m.group(4) + m.group(5) + m.group(6) + m.group(7)).toLowerCase());
-                }
-            }
-
-            index = m.end(7);
-        }
-
-        sb.append(css.substring(index));
-        css = sb.toString();
-
-        // Replace #f00 -> red
-        css = css.replaceAll("(:|\\s)(#f00)(;|})", "$1red$3");
-        // Replace other short color keywords
-        css = css.replaceAll("(:|\\s)(#000080)(;|})", "$1navy$3");
-        css = css.replaceAll("(:|\\s)(#808080)(;|})", "$1gray$3");
-        css = css.replaceAll("(:|\\s)(#808000)(;|})", "$1olive$3");
-        css = css.replaceAll("(:|\\s)(#800080)(;|})", "$1purple$3");
-        css = css.replaceAll("(:|\\s)(#c0c0c0)(;|})", "$1silver$3");
-        css = css.replaceAll("(:|\\s)(#008080)(;|})", "$1teal$3");
-        css = css.replaceAll("(:|\\s)(#ffa500)(;|})", "$1orange$3");
-        css = css.replaceAll("(:|\\s)(#800000)(;|})", "$1maroon$3");
-
-        // border: none -> border:0
-        sb = new StringBuffer();
-        p = Pattern.compile("(?i)(border|border-top|border-right|border-bottom|border-left|outline|background):none(;|})");
-        m = p.matcher(css);
-        while (m.find()) {
-            m.appendReplacement(sb, m.group(1).toLowerCase() + ":0" + m.group(2));
-        }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // shorter opacity IE filter
-        css = css.replaceAll("(?i)progid:DXImageTransform.Microsoft.Alpha\\(Opacity=", "alpha(opacity=");
-
-        // Find a fraction that is used for Opera's -o-device-pixel-ratio query
-        // Add token to add the "\" back in later
-        css = css.replaceAll("\\(([\\-A-Za-z]+):([0-9]+)\\/([0-9]+)\\)", "($1:$2___YUI_QUERY_FRACTION___$3)");
-
-        // Remove empty rules.
-        css = css.replaceAll("[^\\}\\{/;]+\\{\\}", "");
-
-        // Add "\" back to fix Opera -o-device-pixel-ratio query
-        css = css.replaceAll("___YUI_QUERY_FRACTION___", "/");
-
-        // Replace multiple semi-colons in a row by a single one
-        // See SF bug #1980989
-        css = css.replaceAll(";;+", ";");
-
-        // restore preserved comments and strings
-        for(i = 0, max = preservedTokens.size(); i < max; i++) {
-            css = css.replace("___YUICSSMIN_PRESERVED_TOKEN_" + i + "___", preservedTokens.get(i).toString());
-        }
-        
-        // Add spaces back in between operators for css calc function
-        // https://developer.mozilla.org/en-US/docs/Web/CSS/calc
-        // Added by Eric Arnol-Martin (earnolmartin@gmail.com)
-        sb = new StringBuffer();
-        p = Pattern.compile("calc\\([^\\)]*\\)");
-        m = p.matcher(css);
-        while (m.find()) {
-            String s = m.group();
-            
-            s = s.replaceAll("(?<=[-|%|px|em|rem|vw|\\d]+)\\+", " + ");
-            s = s.replaceAll("(?<=[-|%|px|em|rem|vw|\\d]+)\\-", " - ");
-            s = s.replaceAll("(?<=[-|%|px|em|rem|vw|\\d]+)\\*", " * ");
-            s = s.replaceAll("(?<=[-|%|px|em|rem|vw|\\d]+)\\/", " / ");
-            
-            m.appendReplacement(sb, s);
+    /**
+     * @param disabledPasses Names of the optional passes to skip
+     * @throws IllegalArgumentException if a required pass is disabled, or
+     *         a pass of that name does not exist
+     */
+    public void setDisabledPasses(Collection<String> disabledPasses) {
+        if (disabledPasses == null) {
+            disabledPasses = Collections.emptySet();
         }
-        m.appendTail(sb);
-        css = sb.toString();
-
-        // Insert linebreaks for source control tools that don't like long lines.
-        // This is done after token restoration so that line lengths are accurate.
-        // We track string state to avoid inserting linebreaks inside string literals.
-        if (linebreakpos >= 0) {
-            i = 0;
-            int linestartpos = 0;
-            sb = new StringBuffer(css);
-            boolean inString = false;
-            char stringChar = 0;
-
-            while (i < sb.length()) {
-                char c = sb.charAt(i);
-
-                // Track whether we're inside a string literal
-                if (!inString && (c == '"' || c == '\'')) {
-                    inString = true;
-                    stringChar = c;
-                } else if (inString && c == stringChar) {
-                    // Check for escaped quote (look back for odd number of backslashes)
-                    int backslashCount = 0;
-                    int j = i - 1;
-                    while (j >= 0 && sb.charAt(j) == '\\') {
-                        backslashCount++;
-                        j--;
-                    }
-                    if (backslashCount % 2 == 0) {
-                        // Not escaped, end of string
-                        inString = false;
-                    }
-                }
-
-                i++;
+        // Fail now rather than in the middle of compress()
+        PassPipeline.create(CompressorPassProvider.CSS, disabledPasses);
+        this.disabledPasses = disabledPasses;
+    }
 
-                // Only insert linebreak at '}' if not inside a string
-                if (c == '}' && !inString && i - linestartpos > linebreakpos) {
-                    sb.insert(i, '\n');
-                    i++; // Skip the newly inserted newline
-                    linestartpos = i; // New line starts after the newline character
-                }
-            }
+    /**
+     * @return Statistics of the passes run by the last call to compress
+     */
+    public List<PassStatistics> getPassStatistics() {
+        return passStatistics;
+    }
 
-            css = sb.toString();
-        }
+    public void compress(Writer out, int linebreakpos)
+            throws IOException {
 
-        // Trim the final string (for any leading or trailing white spaces)
-        css = css.trim();
+        PassPipeline pipeline = PassPipeline.create(CompressorPassProvider.CSS, disabledPasses);
+        String source = srcsb.toString();
+        String css = pipeline.run(source, new PassContext(CompressorPassProvider.CSS, linebreakpos, source));
+        passStatistics = pipeline.getStatistics();
 
         // Write the output...
         out.write(css);
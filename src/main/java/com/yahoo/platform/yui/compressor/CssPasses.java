@@ -0,0 +1,598 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte -  http://www.julienlecomte.net/
+ * Author: Isaac Schlueter - http://foohack.com/
+ * Author: Stoyan Stefanov - http://phpied.com/
+ * Contributor: Dan Beam - http://danbeam.org/
+ * Copyright (c) 2013 Yahoo! Inc.  All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The built-in CSS compression passes, in the order they run.
+ */
+final class CssPasses {
+
+    static final List<CompressorPass> PASSES = Collections.unmodifiableList(Arrays.asList(
+        new SimplePass("collect-comments", 100, true, CssPasses::collectComments),
+        new SimplePass("preserve-data-urls", 200, true, CssPasses::preserveDataUrls),
+        new SimplePass("preserve-calc", 300, true, CssPasses::preserveCalc),
+        new SimplePass("preserve-matrix-filters", 400, true, CssPasses::preserveMatrixFilters),
+        new SimplePass("preserve-strings", 500, true, CssPasses::preserveStrings),
+        new SimplePass("process-comments", 600, true, CssPasses::processComments),
+        new SimplePass("preserve-backslash9-hack", 700, true, CssPasses::preserveBackslash9),
+        new SimplePass("collapse-whitespace", 800, false, CssPasses::collapseWhitespace),
+        new SimplePass("remove-spaces-before", 900, false, CssPasses::removeSpacesBefore),
+        new SimplePass("first-line-letter-spaces", 1000, false, CssPasses::firstLineLetterSpaces),
+        new SimplePass("comment-end-spaces", 1100, false, CssPasses::commentEndSpaces),
+        new SimplePass("charset-directives", 1200, false, CssPasses::charsetDirectives),
+        new SimplePass("lowercase-directives", 1300, false, CssPasses::lowercaseDirectives),
+        new SimplePass("lowercase-pseudo-elements", 1400, false, CssPasses::lowercasePseudoElements),
+        new SimplePass("lowercase-functions", 1500, false, CssPasses::lowercaseFunctions),
+        new SimplePass("lowercase-value-functions", 1600, false, CssPasses::lowercaseValueFunctions),
+        new SimplePass("media-and-spaces", 1700, false, CssPasses::mediaAndSpaces),
+        new SimplePass("remove-spaces-after", 1800, false, CssPasses::removeSpacesAfter),
+        new SimplePass("remove-last-semicolons", 1900, false, CssPasses::removeLastSemicolons),
+        new SimplePass("zero-units", 2000, false, CssPasses::zeroUnits),
+        new SimplePass("zero-percentages", 2100, false, CssPasses::zeroPercentages),
+        new SimplePass("keyframe-to", 2200, false, CssPasses::keyframeTo),
+        new SimplePass("zero-units-in-groups", 2300, false, CssPasses::zeroUnitsInGroups),
+        new SimplePass("trailing-zero-decimals", 2400, false, CssPasses::trailingZeroDecimals),
+        new SimplePass("zero-shorthands", 2500, false, CssPasses::zeroShorthands),
+        new SimplePass("zero-positions", 2600, false, CssPasses::zeroPositions),
+        new SimplePass("leading-zero-decimals", 2700, false, CssPasses::leadingZeroDecimals),
+        new SimplePass("rgb-to-hex", 2800, false, CssPasses::rgbToHex),
+        new SimplePass("short-hex-colors", 2900, false, CssPasses::shortHexColors),
+        new SimplePass("color-keywords", 3000, false, CssPasses::colorKeywords),
+        new SimplePass("none-to-zero", 3100, false, CssPasses::noneToZero),
+        new SimplePass("alpha-opacity-filters", 3200, false, CssPasses::alphaOpacityFilters),
+        new SimplePass("remove-empty-rules", 3300, false, CssPasses::removeEmptyRules),
+        new SimplePass("collapse-semicolons", 3400, false, CssPasses::collapseSemicolons),
+        new SimplePass("restore-preserved-tokens", 3500, true, CssPasses::restorePreservedTokens),
+        new SimplePass("calc-operator-spaces", 3600, true, CssPasses::calcOperatorSpaces),
+        new SimplePass("line-breaks", 3700, true, CssPasses::lineBreaks),
+        new SimplePass("trim", 3800, true, CssPasses::trim)
+    ));
+
+    private CssPasses() {
+    }
+
+    // collect all comment blocks...
+    private static String collectComments(String css, PassContext context) {
+        Placeholders comments = context.getComments();
+        StringBuffer sb = new StringBuffer(css);
+        int totallen = css.length();
+        int startIndex = 0;
+        int endIndex;
+        while ((startIndex = sb.indexOf("/*", startIndex)) >= 0) {
+            endIndex = sb.indexOf("*/", startIndex + 2);
+            if (endIndex < 0) {
+                endIndex = totallen;
+            }
+
+            String token = sb.substring(startIndex + 2, endIndex);
+            sb.replace(startIndex + 2, endIndex, comments.add(token));
+            startIndex += 2;
+        }
+        return sb.toString();
+    }
+
+    private static String preserveDataUrls(String css, PassContext context) {
+        return CssCompressor.preserveToken(css, "url", "(?i)url\\(\\s*([\"']?)data\\:", true, context.getPreservedTokens());
+    }
+
+    private static String preserveCalc(String css, PassContext context) {
+        return CssCompressor.preserveToken(css, "calc",  "(?i)calc\\(\\s*([\"']?)", false, context.getPreservedTokens());
+    }
+
+    private static String preserveMatrixFilters(String css, PassContext context) {
+        return CssCompressor.preserveToken(css, "progid:DXImageTransform.Microsoft.Matrix",  "(?i)progid:DXImageTransform.Microsoft.Matrix\\s*([\"']?)", false, context.getPreservedTokens());
+    }
+
+    // preserve strings so their content doesn't get accidentally minified
+    private static String preserveStrings(String css, PassContext context) {
+        Placeholders preservedTokens = context.getPreservedTokens();
+        Placeholders comments = context.getComments();
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("(\"([^\\\\\"]|\\\\.|\\\\)*\")|(\'([^\\\\\']|\\\\.|\\\\)*\')");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            String token = m.group();
+            char quote = token.charAt(0);
+            token = token.substring(1, token.length() - 1);
+
+            // maybe the string contains a comment-like substring?
+            // one, maybe more? put'em back then
+            token = comments.restore(token);
+
+            // minify alpha opacity in filter strings
+            token = token.replaceAll("(?i)progid:DXImageTransform.Microsoft.Alpha\\(Opacity=", "alpha(opacity=");
+
+            String preserver = quote + preservedTokens.add(token) + quote;
+            m.appendReplacement(sb, Matcher.quoteReplacement(preserver));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // strings are safe, now wrestle the comments
+    private static String processComments(String css, PassContext context) {
+        Placeholders preservedTokens = context.getPreservedTokens();
+        Placeholders comments = context.getComments();
+
+        // Decide what to do with each comment up front, null meaning
+        // the comment may be killed
+        String[] kept = new String[comments.size()];
+        for (int i = 0, max = comments.size(); i < max; i += 1) {
+            String token = comments.get(i);
+
+            // ! in the first position of the comment means preserve
+            if (token.startsWith("!")) {
+                kept[i] = token;
+            } else if (token.endsWith("\\")) {
+                // \ in the last position looks like hack for Mac/IE5
+                // shorten that to /*\*/ and the next one to /**/
+                kept[i] = "\\";
+                if (i + 1 < max) {
+                    kept[i + 1] = "";
+                }
+                i = i + 1; // attn: advancing the loop
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(css.length());
+        String prefix = comments.getPrefix();
+        int copied = 0;
+        int position = css.indexOf(prefix);
+        while (position >= 0) {
+            int i = comments.indexAt(css, position);
+            if (i < 0) {
+                position = css.indexOf(prefix, position + 1);
+                continue;
+            }
+            sb.append(css, copied, position);
+            copied = position + comments.length(i);
+
+            String token = kept[i];
+            // keep empty comments after child selectors (IE7 hack)
+            // e.g. html >/**/ body
+            if (token == null && comments.get(i).length() == 0
+                    && sb.length() > 2 && sb.charAt(sb.length() - 3) == '>') {
+                token = "";
+            }
+
+            if (token != null) {
+                sb.append(preservedTokens.add(token));
+            } else if (css.startsWith("*/", copied) && sb.length() >= 2
+                    && sb.charAt(sb.length() - 2) == '/' && sb.charAt(sb.length() - 1) == '*') {
+                // in all other cases kill the comment
+                sb.setLength(sb.length() - 2);
+                copied += 2;
+            } else {
+                sb.append(comments.placeholder(i));
+            }
+            position = css.indexOf(prefix, copied);
+        }
+        sb.append(css, copied, css.length());
+        return sb.toString();
+    }
+
+    // preserve \9 IE hack
+    private static String preserveBackslash9(String css, PassContext context) {
+        final String backslash9 = "\\9";
+        if (css.indexOf(backslash9) > -1) {
+            css = css.replace(backslash9, context.getPreservedTokens().add(backslash9));
+        }
+        return css;
+    }
+
+    // Normalize all whitespace strings to single spaces. Easier to work with that way.
+    private static String collapseWhitespace(String css, PassContext context) {
+        return css.replaceAll("\\s+", " ");
+    }
+
+    // Remove the spaces before the things that should not have spaces before them.
+    // But, be careful not to turn "p :link {...}" into "p:link{...}"
+    // Swap out any pseudo-class colons with the token, and then swap back.
+    private static String removeSpacesBefore(String css, PassContext context) {
+        String pseudoClassColon = context.marker("PSEUDOCLASSCOLON");
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("(^|\\})((^|([^\\{:])+):)+([^\\{]*\\{)");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            String s = m.group();
+            s = s.replace(":", pseudoClassColon);
+            s = s.replaceAll( "\\\\", "\\\\\\\\" ).replaceAll( "\\$", "\\\\\\$" );
+            m.appendReplacement(sb, s);
+        }
+        m.appendTail(sb);
+        css = sb.toString();
+        // Remove spaces before the things that should not have spaces before them.
+        css = css.replaceAll("\\s+([!{};:>+\\(\\)\\],])", "$1");
+        // Restore spaces for !important
+        css = css.replaceAll("!important", " !important");
+        // bring back the colon
+        return css.replace(pseudoClassColon, ":");
+    }
+
+    // retain space for special IE6 cases
+    private static String firstLineLetterSpaces(String css, PassContext context) {
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("(?i):first\\-(line|letter)(\\{|,)");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            m.appendReplacement(sb, ":first-" + m.group(1).toLowerCase() + " " + m.group(2));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // no space after the end of a preserved comment
+    private static String commentEndSpaces(String css, PassContext context) {
+        return css.replaceAll("\\*/ ", "*/");
+    }
+
+    private static String charsetDirectives(String css, PassContext context) {
+        // If there are multiple @charset directives, push them to the top of the file.
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("(?i)^(.*)(@charset)( \"[^\"]*\";)");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            String s = m.group(1).replaceAll("\\\\", "\\\\\\\\").replaceAll("\\$", "\\\\\\$");
+            m.appendReplacement(sb, m.group(2).toLowerCase() + m.group(3) + s);
+        }
+        m.appendTail(sb);
+        css = sb.toString();
+
+        // When all @charset are at the top, remove the second and after (as they are completely ignored).
+        sb = new StringBuffer();
+        p = Pattern.compile("(?i)^((\\s*)(@charset)( [^;]+;\\s*))+");
+        m = p.matcher(css);
+        while (m.find()) {
+            m.appendReplacement(sb, m.group(2) + m.group(3).toLowerCase() + m.group(4));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // lowercase some popular @directives (@charset is done right above)
+    private static String lowercaseDirectives(String css, PassContext context) {
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("(?i)@(font-face|import|(?:-(?:atsc|khtml|moz|ms|o|wap|webkit)-)?keyframe|media|page|namespace)");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            m.appendReplacement(sb, '@' + m.group(1).toLowerCase());
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // lowercase some more common pseudo-elements
+    private static String lowercasePseudoElements(String css, PassContext context) {
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("(?i):(active|after|before|checked|disabled|empty|enabled|first-(?:child|of-type)|focus|hover|last-(?:child|of-type)|link|only-(?:child|of-type)|root|:selection|target|visited)");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            m.appendReplacement(sb, ':' + m.group(1).toLowerCase());
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // lowercase some more common functions
+    private static String lowercaseFunctions(String css, PassContext context) {
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("(?i):(lang|not|nth-child|nth-last-child|nth-last-of-type|nth-of-type|(?:-(?:moz|webkit)-)?any)\\(");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            m.appendReplacement(sb, ':' + m.group(1).toLowerCase() + '(');
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // lower case some common function that can be values
+    // NOTE: rgb() isn't useful as we replace with #hex later, as well as and() is already done for us right after this
+    private static String lowercaseValueFunctions(String css, PassContext context) {
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("(?i)([:,\\( ]\\s*)(attr|color-stop|from|rgba|to|url|(?:-(?:atsc|khtml|moz|ms|o|wap|webkit)-)?(?:calc|max|min|(?:repeating-)?(?:linear|radial)-gradient)|-webkit-gradient)");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            m.appendReplacement(sb, m.group(1) + m.group(2).toLowerCase());
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // Put the space back in some cases, to support stuff like
+    // @media screen and (-webkit-min-device-pixel-ratio:0){
+    private static String mediaAndSpaces(String css, PassContext context) {
+        return css.replaceAll("(?i)\\band\\(", "and (");
+    }
+
+    // Remove the spaces after the things that should not have spaces after them.
+    private static String removeSpacesAfter(String css, PassContext context) {
+        return css.replaceAll("([!{}:;>+\\(\\[,])\\s+", "$1");
+    }
+
+    // remove unnecessary semicolons
+    private static String removeLastSemicolons(String css, PassContext context) {
+        return css.replaceAll(";+}", "}");
+    }
+
+    private static String replaceAllRepeatedly(String css, Pattern p, String replacement) {
+        String oldCss;
+        do {
+            oldCss = css;
+            css = p.matcher(css).replaceAll(replacement);
+        } while (!(css.equals(oldCss)));
+        return css;
+    }
+
+    // Replace 0(px,em) with 0. (don't replace seconds are they are needed for transitions to be valid)
+    private static String zeroUnits(String css, PassContext context) {
+        Pattern p = Pattern.compile("(?i)(^|: ?)((?:[0-9a-z-.]+ )*?)?(?:0?\\.)?0(?:px|em|in|cm|mm|pc|pt|ex|deg|g?rad|k?hz)");
+        return replaceAllRepeatedly(css, p, "$1$20");
+    }
+
+    // We do the same with % but don't replace the 0% in keyframes
+    private static String zeroPercentages(String css, PassContext context) {
+        Pattern p = Pattern.compile("(?i)(: ?)((?:[0-9a-z-.]+ )*?)?(?:0?\\.)?0(?:%)");
+        return replaceAllRepeatedly(css, p, "$1$20");
+    }
+
+    //Replace the keyframe 100% step with 'to' which is shorter
+    private static String keyframeTo(String css, PassContext context) {
+        Pattern p = Pattern.compile("(?i)(^|,|\\{) ?(?:100% ?\\{)");
+        return replaceAllRepeatedly(css, p, "$1to{");
+    }
+
+    // Replace 0(px,em,%) with 0 inside groups (e.g. -MOZ-RADIAL-GRADIENT(CENTER 45DEG, CIRCLE CLOSEST-SIDE, ORANGE 0%, RED 100%))
+    private static String zeroUnitsInGroups(String css, PassContext context) {
+        Pattern p = Pattern.compile("(?i)\\( ?((?:[0-9a-z-.]+[ ,])*)?(?:0?\\.)?0(?:px|em|%|in|cm|mm|pc|pt|ex|deg|g?rad|m?s|k?hz)");
+        return replaceAllRepeatedly(css, p, "($10");
+    }
+
+    // Replace x.0(px,em,%) with x(px,em,%).
+    private static String trailingZeroDecimals(String css, PassContext context) {
+        return css.replaceAll("([0-9])\\.0(px|em|%|in|cm|mm|pc|pt|ex|deg|m?s|g?rad|k?hz| |;)", "$1$2");
+    }
+
+    // Replace 0 0 0 0; with 0.
+    private static String zeroShorthands(String css, PassContext context) {
+        css = css.replaceAll(":0 0 0 0(;|})", ":0$1");
+        css = css.replaceAll(":0 0 0(;|})", ":0$1");
+        return css.replaceAll("(?<!flex):0 0(;|})", ":0$1");
+    }
+
+    // Replace background-position:0; with background-position:0 0;
+    // same for transform-origin
+    private static String zeroPositions(String css, PassContext context) {
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("(?i)(background-position|webkit-mask-position|transform-origin|webkit-transform-origin|moz-transform-origin|o-transform-origin|ms-transform-origin):0(;|})");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            m.appendReplacement(sb, m.group(1).toLowerCase() + ":0 0" + m.group(2));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // Replace 0.6 to .6, but only when preceded by : or a white-space
+    private static String leadingZeroDecimals(String css, PassContext context) {
+        return css.replaceAll("(:|\\s)0+\\.(\\d+)", "$1.$2");
+    }
+
+    // Shorten colors from rgb(51,102,153) to #336699
+    // This makes it more likely that it'll get further compressed in the next step.
+    private static String rgbToHex(String css, PassContext context) {
+        Pattern p = Pattern.compile("rgb\\s*\\(\\s*([0-9,\\s]+)\\s*\\)");
+        Matcher m = p.matcher(css);
+        StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            String[] rgbcolors = m.group(1).split(",");
+            StringBuffer hexcolor = new StringBuffer("#");
+            for (int i = 0; i < rgbcolors.length; i++) {
+                int val = Integer.parseInt(rgbcolors[i]);
+                if (val < 16) {
+                    hexcolor.append("0");
+                }
+
+                // If someone passes an RGB value that's too big to express in two characters, round down.
+                // Probably should throw out a warning here, but generating valid CSS is a bigger concern.
+                if (val > 255) {
+                    val = 255;
+                }
+                hexcolor.append(Integer.toHexString(val));
+            }
+            m.appendReplacement(sb, hexcolor.toString());
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // Shorten colors from #AABBCC to #ABC. Note that we want to make sure
+    // the color is not preceded by either ", " or =. Indeed, the property
+    //     filter: chroma(color="#FFFFFF");
+    // would become
+    //     filter: chroma(color="#FFF");
+    // which makes the filter break in IE.
+    // We also want to make sure we're only compressing #AABBCC patterns inside { }, not id selectors ( #FAABAC {} )
+    // We also want to avoid compressing invalid values (e.g. #AABBCCD to #ABCD)
+    private static String shortHexColors(String css, PassContext context) {
+        Pattern p = Pattern.compile("(\\=\\s*?[\"']?)?" + "#([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])" + "(:?\\}|[^0-9a-fA-F{][^{]*?\\})");
+
+        Matcher m = p.matcher(css);
+        StringBuffer sb = new StringBuffer();
+        int index = 0;
+
+        while (m.find(index)) {
+
+            sb.append(css.substring(index, m.start()));
+
+            boolean isFilter = (m.group(1) != null && !"".equals(m.group(1)));
+
+            if (isFilter) {
+                // Restore, as is. Compression will break filters
+                sb.append(m.group(1) + "#" + m.group(2) + m.group(3) + m.group(4) + m.group(5) + m.group(6) + m.group(7));
+            } else {
+                if( m.group(2).equalsIgnoreCase(m.group(3)) &&
+                    m.group(4).equalsIgnoreCase(m.group(5)) &&
+                    m.group(6).equalsIgnoreCase(m.group(7))) {
+
+                    // #AABBCC pattern
+                    sb.append("#" + (m.group(3) + m.group(5) + m.group(7)).toLowerCase());
+
+                } else {
+
+                    // Non-compressible color, restore, but lower case.
+                    sb.append("#" + (m.group(2) + m.group(3) + m.group(4) + m.group(5) + m.group(6) + m.group(7)).toLowerCase());
+                }
+            }
+
+            index = m.end(7);
+        }
+
+        sb.append(css.substring(index));
+        return sb.toString();
+    }
+
+    private static String colorKeywords(String css, PassContext context) {
+        // Replace #f00 -> red
+        css = css.replaceAll("(:|\\s)(#f00)(;|})", "$1red$3");
+        // Replace other short color keywords
+        css = css.replaceAll("(:|\\s)(#000080)(;|})", "$1navy$3");
+        css = css.replaceAll("(:|\\s)(#808080)(;|})", "$1gray$3");
+        css = css.replaceAll("(:|\\s)(#808000)(;|})", "$1olive$3");
+        css = css.replaceAll("(:|\\s)(#800080)(;|})", "$1purple$3");
+        css = css.replaceAll("(:|\\s)(#c0c0c0)(;|})", "$1silver$3");
+        css = css.replaceAll("(:|\\s)(#008080)(;|})", "$1teal$3");
+        css = css.replaceAll("(:|\\s)(#ffa500)(;|})", "$1orange$3");
+        return css.replaceAll("(:|\\s)(#800000)(;|})", "$1maroon$3");
+    }
+
+    // border: none -> border:0
+    private static String noneToZero(String css, PassContext context) {
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("(?i)(border|border-top|border-right|border-bottom|border-left|outline|background):none(;|})");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            m.appendReplacement(sb, m.group(1).toLowerCase() + ":0" + m.group(2));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // shorter opacity IE filter
+    private static String alphaOpacityFilters(String css, PassContext context) {
+        return css.replaceAll("(?i)progid:DXImageTransform.Microsoft.Alpha\\(Opacity=", "alpha(opacity=");
+    }
+
+    private static String removeEmptyRules(String css, PassContext context) {
+        // Find a fraction that is used for Opera's -o-device-pixel-ratio query
+        // Add token to add the "\" back in later
+        String queryFraction = context.marker("QUERY_FRACTION");
+        css = css.replaceAll("\\(([\\-A-Za-z]+):([0-9]+)\\/([0-9]+)\\)", "($1:$2" + queryFraction + "$3)");
+
+        // Remove empty rules.
+        css = css.replaceAll("[^\\}\\{/;]+\\{\\}", "");
+
+        // Add "\" back to fix Opera -o-device-pixel-ratio query
+        return css.replace(queryFraction, "/");
+    }
+
+    // Replace multiple semi-colons in a row by a single one
+    // See SF bug #1980989
+    private static String collapseSemicolons(String css, PassContext context) {
+        return css.replaceAll(";;+", ";");
+    }
+
+    // restore preserved comments and strings
+    private static String restorePreservedTokens(String css, PassContext context) {
+        return context.getPreservedTokens().restore(css);
+    }
+
+    // Add spaces back in between operators for css calc function
+    // https://developer.mozilla.org/en-US/docs/Web/CSS/calc
+    // Added by Eric Arnol-Martin (earnolmartin@gmail.com)
+    private static String calcOperatorSpaces(String css, PassContext context) {
+        StringBuffer sb = new StringBuffer();
+        Pattern p = Pattern.compile("calc\\([^\\)]*\\)");
+        Matcher m = p.matcher(css);
+        while (m.find()) {
+            String s = m.group();
+
+            s = s.replaceAll("(?<=[-|%|px|em|rem|vw|\\d]+)\\+", " + ");
+            s = s.replaceAll("(?<=[-|%|px|em|rem|vw|\\d]+)\\-", " - ");
+            s = s.replaceAll("(?<=[-|%|px|em|rem|vw|\\d]+)\\*", " * ");
+            s = s.replaceAll("(?<=[-|%|px|em|rem|vw|\\d]+)\\/", " / ");
+
+            m.appendReplacement(sb, s);
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // Insert linebreaks for source control tools that don't like long lines.
+    // This is done after token restoration so that line lengths are accurate.
+    // We track string state to avoid inserting linebreaks inside string literals.
+    private static String lineBreaks(String css, PassContext context) {
+        int linebreakpos = context.getLineBreakPosition();
+        if (linebreakpos < 0) {
+            return css;
+        }
+
+        int i = 0;
+        int linestartpos = 0;
+        StringBuffer sb = new StringBuffer(css);
+        boolean inString = false;
+        char stringChar = 0;
+
+        while (i < sb.length()) {
+            char c = sb.charAt(i);
+
+            // Track whether we're inside a string literal
+            if (!inString && (c == '"' || c == '\'')) {
+                inString = true;
+                stringChar = c;
+            } else if (inString && c == stringChar) {
+                // Check for escaped quote (look back for odd number of backslashes)
+                int backslashCount = 0;
+                int j = i - 1;
+                while (j >= 0 && sb.charAt(j) == '\\') {
+                    backslashCount++;
+                    j--;
+                }
+                if (backslashCount % 2 == 0) {
+                    // Not escaped, end of string
+                    inString = false;
+                }
+            }
+
+            i++;
+
+            // Only insert linebreak at '}' if not inside a string
+            if (c == '}' && !inString && i - linestartpos > linebreakpos) {
+                sb.insert(i, '\n');
+                i++; // Skip the newly inserted newline
+                linestartpos = i; // New line starts after the newline character
+            }
+        }
+
+        return sb.toString();
+    }
+
+    // Trim the final string (for any leading or trailing white spaces)
+    private static String trim(String css, PassContext context) {
+        return css.trim();
+    }
+}
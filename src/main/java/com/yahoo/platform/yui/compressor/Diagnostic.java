@@ -0,0 +1,99 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+/**
+ * A warning or error reported while compressing a file.
+ */
+public final class Diagnostic {
+
+    public enum Severity {
+        WARNING,
+        ERROR
+    }
+
+    /** Code of the warnings reported by the JavaScript parser */
+    public static final String PARSE_WARNING = "parse-warning";
+    /** Code of the syntax errors reported by the JavaScript parser */
+    public static final String PARSE_ERROR = "parse-error";
+    /** Code of the errors that abort the compression */
+    public static final String RUNTIME_ERROR = "runtime-error";
+
+    private final String sourceName;
+    private final int line;
+    private final int column;
+    private final Severity severity;
+    private final String code;
+    private final String message;
+    private final String lineSource;
+
+    public Diagnostic(String sourceName, int line, int column, Severity severity,
+                      String code, String message, String lineSource) {
+        this.sourceName = sourceName;
+        this.line = line;
+        this.column = column;
+        this.severity = severity;
+        this.code = code;
+        this.message = message;
+        this.lineSource = lineSource;
+    }
+
+    /**
+     * @return Name of the file, or null if unknown
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * @return 1-based line number, or a negative value if unknown
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return Column in the line, meaningful only if the line is known
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return Text of the offending line, or null if unknown
+     */
+    public String getLineSource() {
+        return lineSource;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[').append(severity).append("] ");
+        if (sourceName != null) {
+            sb.append(sourceName).append(':');
+        }
+        if (line >= 0) {
+            sb.append(line).append(':').append(column).append(':');
+        }
+        sb.append(message).append(" (").append(code).append(')');
+        return sb.toString();
+    }
+}
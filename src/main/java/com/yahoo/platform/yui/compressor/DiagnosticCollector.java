@@ -0,0 +1,109 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ErrorReporter collecting the diagnostics of one compression task.
+ *
+ * A collector is meant to be used by a single thread, so it does not
+ * synchronize. Use one collector per file when compressing concurrently,
+ * and hand the diagnostics to a consumer, such as {@link #printTo}, once
+ * the task is done.
+ */
+public class DiagnosticCollector implements ErrorReporter {
+
+    private final String sourceName;
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private int errorCount;
+
+    /**
+     * @param sourceName Name of the compressed file, reported when the
+     *        parser does not provide one. May be null.
+     */
+    public DiagnosticCollector(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    public void warning(String message, String sourceName,
+                        int line, String lineSource, int lineOffset) {
+        add(Diagnostic.Severity.WARNING, Diagnostic.PARSE_WARNING,
+            message, sourceName, line, lineSource, lineOffset);
+    }
+
+    public void error(String message, String sourceName,
+                      int line, String lineSource, int lineOffset) {
+        add(Diagnostic.Severity.ERROR, Diagnostic.PARSE_ERROR,
+            message, sourceName, line, lineSource, lineOffset);
+    }
+
+    public EvaluatorException runtimeError(String message, String sourceName,
+                                           int line, String lineSource, int lineOffset) {
+        add(Diagnostic.Severity.ERROR, Diagnostic.RUNTIME_ERROR,
+            message, sourceName, line, lineSource, lineOffset);
+        return new EvaluatorException(message);
+    }
+
+    private void add(Diagnostic.Severity severity, String code, String message,
+                     String sourceName, int line, String lineSource, int lineOffset) {
+        if (sourceName == null) {
+            sourceName = this.sourceName;
+        }
+        diagnostics.add(new Diagnostic(sourceName, line, lineOffset,
+            severity, code, message, lineSource));
+        if (severity == Diagnostic.Severity.ERROR) {
+            errorCount++;
+        }
+    }
+
+    /**
+     * @return The diagnostics in the order they were reported
+     */
+    public List<Diagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+
+    /**
+     * Prints the diagnostics with a single write, so that the messages of
+     * tasks running concurrently are not interleaved.
+     */
+    public void printTo(PrintStream stream) {
+        if (diagnostics.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Diagnostic diagnostic : diagnostics) {
+            String name = diagnostic.getSourceName();
+            if (diagnostic.getSeverity() == Diagnostic.Severity.WARNING) {
+                sb.append("\n[WARNING] in ").append(name).append('\n');
+            } else {
+                sb.append("[ERROR] in ").append(name).append('\n');
+            }
+            sb.append("  ");
+            if (diagnostic.getLine() >= 0) {
+                sb.append(diagnostic.getLine()).append(':')
+                  .append(diagnostic.getColumn()).append(':');
+            }
+            sb.append(diagnostic.getMessage()).append('\n');
+        }
+        stream.print(sb);
+        stream.flush();
+    }
+}
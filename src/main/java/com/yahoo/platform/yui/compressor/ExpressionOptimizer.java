@@ -0,0 +1,193 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import org.mozilla.javascript.Token;
+import org.mozilla.javascript.ast.*;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the expressions that have a shorter equivalent, which the
+ * generator writes instead when the micro optimizations are enabled:
+ *
+ * <ul>
+ * <li>obj["prop"] as obj.prop</li>
+ * <li>true and false as !0 and !1</li>
+ * <li>undefined as void 0, where no variable shadows it</li>
+ * <li>{"key": value} as {key: value}, and {"1": value} as {1: value}</li>
+ * <li>return undefined and return void 0 as return</li>
+ * </ul>
+ *
+ * The AST itself is left as it is, so that the variants generated from
+ * it can each do with or without these rewrites.
+ */
+final class ExpressionOptimizer {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][\\w$]*");
+    private static final Pattern INDEX = Pattern.compile("0|[1-9][0-9]{0,8}");
+
+    private ExpressionOptimizer() {
+    }
+
+    /**
+     * @param root Node whose expressions are rewritten
+     * @param scopeBuilder The scopes root was analyzed into
+     * @return The nodes to rewrite, by identity
+     */
+    static Set<AstNode> plan(AstNode root, ScopeBuilder scopeBuilder) {
+        return plan(root, scopeBuilder, false);
+    }
+
+    /**
+     * @param keepUndefined Whether to leave undefined as it is, e.g. as a
+     *        part of the script that scopeBuilder did not see declares it
+     */
+    static Set<AstNode> plan(AstNode root, ScopeBuilder scopeBuilder, boolean keepUndefined) {
+        Set<AstNode> rewrites = Collections.newSetFromMap(new IdentityHashMap<>());
+        // The nodes are visited from an explicit stack, as deeply nested
+        // code could overflow the Java stack
+        Deque<AstNode> stack = new ArrayDeque<>();
+        List<AstNode> children = new ArrayList<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            AstNode node = stack.pop();
+            if (rewrites(node, scopeBuilder, keepUndefined)) {
+                rewrites.add(node);
+            }
+            node.visit(new NodeVisitor() {
+                public boolean visit(AstNode child) {
+                    if (child != node) {
+                        children.add(child);
+                    }
+                    return child == node;
+                }
+            });
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+            children.clear();
+        }
+        return rewrites;
+    }
+
+    /**
+     * @return Whether the value of a property key written as the string
+     *         can be written without the quotes
+     */
+    static boolean isPlainKey(String value) {
+        return isPropertyName(value) || INDEX.matcher(value).matches();
+    }
+
+    /**
+     * @return Whether the string can follow a dot, as the name of a property
+     */
+    static boolean isPropertyName(String value) {
+        return IDENTIFIER.matcher(value).matches() && !JavaScriptCompressor.reserved.contains(value);
+    }
+
+    private static boolean rewrites(AstNode node, ScopeBuilder scopeBuilder, boolean keepUndefined) {
+        AstNode parent = node.getParent();
+        switch (node.getType()) {
+            case Token.GETELEM:
+                AstNode element = ((ElementGet) node).getElement();
+                return element instanceof StringLiteral &&
+                    isPropertyName(((StringLiteral) element).getValue());
+            case Token.TRUE:
+            case Token.FALSE:
+                return node instanceof KeywordLiteral && takesUnary(node);
+            case Token.NAME:
+                return !keepUndefined && isUndefined((Name) node, scopeBuilder) && takesUnary(node) &&
+                    !isTarget(node);
+            case Token.STRING:
+                return parent instanceof ObjectProperty && ((ObjectProperty) parent).getLeft() == node &&
+                    isPlainKey(((StringLiteral) node).getValue());
+            case Token.RETURN:
+                AstNode value = ((ReturnStatement) node).getReturnValue();
+                if (value instanceof Name) {
+                    return !keepUndefined && isUndefined((Name) value, scopeBuilder);
+                }
+                return value instanceof UnaryExpression && value.getType() == Token.VOID &&
+                    (((UnaryExpression) value).getOperand() instanceof NumberLiteral ||
+                     ((UnaryExpression) value).getOperand() instanceof StringLiteral);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return Whether name is the global undefined, which no variable
+     *         shadows, and no with statement can
+     */
+    private static boolean isUndefined(Name name, ScopeBuilder scopeBuilder) {
+        if (!"undefined".equals(name.getIdentifier()) || scopeBuilder.getIdentifier(name) != null) {
+            return false;
+        }
+        for (AstNode parent = name.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent instanceof WithStatement) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the name is assigned, declared or deleted rather than
+     *         read, or is not a variable
+     */
+    private static boolean isTarget(AstNode name) {
+        AstNode parent = name.getParent();
+        if (parent instanceof Assignment) {
+            return ((Assignment) parent).getLeft() == name;
+        }
+        if (parent instanceof VariableInitializer) {
+            return ((VariableInitializer) parent).getTarget() == name;
+        }
+        if (parent instanceof ObjectProperty) {
+            parent = parent.getParent();
+        }
+        if (parent instanceof DestructuringForm) {
+            return ((DestructuringForm) parent).isDestructuring();
+        }
+        // delete undefined is false, as the global property cannot be
+        // deleted, and delete void 0 is true
+        return parent instanceof UpdateExpression || parent instanceof ForInLoop ||
+            parent instanceof UnaryExpression && parent.getType() == Token.DELPROP ||
+            parent instanceof FunctionNode || parent instanceof CatchClause ||
+            parent instanceof PropertyGet && ((PropertyGet) parent).getProperty() == name ||
+            parent instanceof BreakStatement || parent instanceof ContinueStatement;
+    }
+
+    /**
+     * @return Whether node can be replaced by a unary expression, such as
+     *         !0, without parentheses
+     */
+    private static boolean takesUnary(AstNode node) {
+        AstNode parent = node.getParent();
+        if (parent instanceof PropertyGet) {
+            return ((PropertyGet) parent).getTarget() != node;
+        }
+        if (parent instanceof ElementGet) {
+            return ((ElementGet) parent).getTarget() != node;
+        }
+        if (parent instanceof FunctionCall) {
+            // Also covers new
+            return ((FunctionCall) parent).getTarget() != node;
+        }
+        if (parent instanceof TaggedTemplateLiteral) {
+            return ((TaggedTemplateLiteral) parent).getTarget() != node;
+        }
+        if (parent instanceof InfixExpression && parent.getType() == Token.EXP) {
+            // -1 ** 2 is a syntax error
+            return ((InfixExpression) parent).getLeft() != node;
+        }
+        return !(parent instanceof ObjectProperty && ((ObjectProperty) parent).getLeft() == node);
+    }
+}
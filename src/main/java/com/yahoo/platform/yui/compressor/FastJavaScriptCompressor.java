@@ -0,0 +1,587 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte -  http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc.  All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import org.mozilla.javascript.EvaluatorException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Minifies JavaScript without parsing it. The comments, and the whitespace
+ * the tokens do not need, are removed in a single pass over the input,
+ * which is read and written through small buffers. Local symbols are not
+ * munged and all the semicolons are kept. A line break is kept wherever
+ * automatic semicolon insertion could depend on it.
+ *
+ * The special comments kept by {@link JavaScriptCompressor} are kept too,
+ * but where they appear rather than at the top.
+ *
+ * As in JSMin, whether a slash starts a regular expression is decided from
+ * the previous token, so a regular expression right after the condition of
+ * an if or while statement, e.g. "if (a) /b/.test(c)", is taken for a
+ * division. After a closing brace, the slash is a division if the brace
+ * closes an object literal or the body of a function expression, which is
+ * told from the token before the opening brace, or before the function
+ * keyword. An object literal after the colon of a conditional expression,
+ * e.g. "a ? b : {} / c", is taken for a block.
+ */
+public class FastJavaScriptCompressor {
+
+    private static final int EOF = -1;
+    private static final int BUFFER_SIZE = 8192;
+
+    // Kinds of tokens
+    private static final int NONE = 0;      // No token yet
+    private static final int WORD = 1;      // Identifier, keyword or number
+    private static final int LITERAL = 2;   // String, template or regular expression
+    private static final int CLOSE = 3;     // ) ] }
+    private static final int INCDEC = 4;    // ++ --
+    private static final int OPEN = 5;      // ( [ { and the start of a substitution
+    private static final int OTHER = 6;     // Any other punctuator
+
+    // Keywords after which a slash starts a regular expression
+    static final Set<String> REGEXP_KEYWORDS = new HashSet<>(Arrays.asList(
+        "return", "typeof", "case", "do", "else", "in", "instanceof", "new",
+        "delete", "void", "throw", "yield", "await"));
+
+    private static final Pattern CONDITIONAL = Pattern.compile("/\\*@(cc_on|if|elif|else|end|set|_)");
+
+    private final Reader in;
+    private final char[] input = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean inputEnded;
+    private int line = 1;
+
+    private Writer out;
+    private final StringBuilder output = new StringBuilder();
+    private int linebreakpos;
+    private int column;
+    private char lastWritten;
+
+    // The previous token
+    private int prevKind = NONE;
+    private char prevLast;
+    private boolean prevIsNumber;
+    private boolean prevIsRegExpKeyword;
+    // Whether an expression, rather than a statement, can start after the
+    // previous token
+    private boolean prevStartsExpression;
+    // Whether the previous token is a brace closing an expression
+    private boolean prevClosesExpression;
+    // Whether the previous token closes the parameters of a function
+    // expression
+    private boolean prevClosesParameters;
+    // Whether the function keyword was read, and its parameters not yet
+    private boolean inFunction;
+    private boolean functionIsExpression;
+    // Whether whitespace, or comments, and line terminators were skipped
+    // since the previous token
+    private boolean whitespace;
+    private boolean newline;
+    // Special comments to write before the next token
+    private final List<String> comments = new ArrayList<>();
+    // Open braces in each enclosing template substitution
+    private final Deque<int[]> substitutions = new ArrayDeque<>();
+    // Whether each enclosing brace opens an expression, and each enclosing
+    // parenthesis the parameters of a function expression
+    private final Deque<Boolean> braces = new ArrayDeque<>();
+    private final Deque<Boolean> parens = new ArrayDeque<>();
+    private final StringBuilder word = new StringBuilder();
+
+    public FastJavaScriptCompressor(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the input to its end, writing the minified code to out, which
+     * is left open.
+     *
+     * @param linebreakpos Column after which a line break is inserted at the
+     *        next semicolon, comma or closing brace, or -1
+     * @throws EvaluatorException if a string, template, regular expression
+     *         or comment is not terminated
+     */
+    public void compress(Writer out, int linebreakpos) throws IOException {
+        this.out = out;
+        this.linebreakpos = linebreakpos;
+        try {
+            minify();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void minify() {
+
+        if (peek(0) == '#' && peek(1) == '!') {
+            // Hashbang line
+            while (peek(0) != EOF && !isLineTerminator(peek(0))) {
+                write((char) next());
+            }
+            write('\n');
+        }
+
+        int c;
+        while ((c = peek(0)) != EOF) {
+            if (isLineTerminator(c)) {
+                next();
+                whitespace = true;
+                newline = true;
+            } else if (isWhitespace(c)) {
+                next();
+                whitespace = true;
+            } else if (c == '/' && peek(1) == '/') {
+                skipLineComment();
+            } else if (c == '/' && peek(1) == '*') {
+                readComment();
+            } else if (c == '"' || c == '\'') {
+                readString();
+            } else if (c == '`') {
+                beginToken(LITERAL, '`');
+                write((char) next());
+                readTemplate();
+            } else if (c == '}' && !substitutions.isEmpty() && substitutions.peek()[0] == 0) {
+                // End of a template substitution
+                substitutions.pop();
+                beginToken(LITERAL, '}');
+                write((char) next());
+                readTemplate();
+            } else if (c == '/' && isRegExpAllowed()) {
+                readRegExp();
+            } else if (isWordPart(c)) {
+                readWord();
+            } else {
+                readPunctuator();
+            }
+        }
+
+        for (String comment : comments) {
+            write(comment);
+        }
+        comments.clear();
+        flush();
+    }
+
+    private boolean isRegExpAllowed() {
+        switch (prevKind) {
+            case NONE:
+            case OPEN:
+            case OTHER:
+                return true;
+            case WORD:
+                return prevIsRegExpKeyword;
+            case CLOSE:
+                return prevLast == '}' && !prevClosesExpression;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes what has to separate the previous token from the next one,
+     * then the special comments in between.
+     */
+    private void beginToken(int kind, int first) {
+        if (whitespace && prevKind != NONE && lastWritten != '\n') {
+            if (newline && canEnd(prevKind) && canStart(kind, first)) {
+                write('\n');
+            } else if (needsSpace(first)) {
+                write(' ');
+            }
+        }
+        if (!comments.isEmpty()) {
+            for (String comment : comments) {
+                write(comment);
+            }
+            comments.clear();
+            // The tokens were on different lines, so the comments can end
+            // one as they usually do
+            if (newline) {
+                write('\n');
+            }
+        }
+        whitespace = false;
+        newline = false;
+    }
+
+    private void endToken(int kind, char last) {
+        prevKind = kind;
+        prevLast = last;
+        prevIsNumber = false;
+        prevIsRegExpKeyword = false;
+        prevStartsExpression = kind == OPEN && last != '{' || kind == OTHER && last != ';';
+        prevClosesExpression = false;
+        prevClosesParameters = false;
+    }
+
+    private static boolean canEnd(int kind) {
+        return kind == WORD || kind == LITERAL || kind == CLOSE || kind == INCDEC;
+    }
+
+    private static boolean canStart(int kind, int first) {
+        if (first == '}') {
+            // Continuation of a template
+            return false;
+        }
+        return kind == WORD || kind == LITERAL || kind == INCDEC ||
+            "([{+-!~".indexOf(first) >= 0;
+    }
+
+    private boolean needsSpace(int first) {
+        if (isWordPart(prevLast) && isWordPart(first)) {
+            return true;
+        }
+        // a + +b, a - --b, a / /b/, /a/ * b
+        if ((prevLast == '+' || prevLast == '-') && first == prevLast ||
+                prevLast == '/' && (first == '/' || first == '*')) {
+            return true;
+        }
+        // 1 .toString(), a < !--b, a-- > b
+        return prevIsNumber && first == '.' || prevLast == '<' && first == '!' ||
+            prevKind == INCDEC && prevLast == '-' && first == '>';
+    }
+
+    private void readWord() {
+        word.setLength(0);
+        int c;
+        while ((c = peek(0)) != EOF && isWordPart(c)) {
+            word.append((char) next());
+            if (c == '\\' && peek(0) != EOF) {
+                // Unicode escape, possibly with the code point in braces
+                c = next();
+                word.append((char) c);
+                if (c == 'u' && peek(0) == '{') {
+                    while ((c = peek(0)) != EOF && c != '}') {
+                        word.append((char) next());
+                    }
+                    if (c == '}') {
+                        word.append((char) next());
+                    }
+                }
+            }
+        }
+        boolean afterDot = prevKind == OTHER && prevLast == '.';
+        boolean inExpression = prevStartsExpression;
+        beginToken(WORD, word.charAt(0));
+        write(word);
+        endToken(WORD, word.charAt(word.length() - 1));
+        char first = word.charAt(0);
+        String keyword = word.toString();
+        prevIsNumber = first >= '0' && first <= '9';
+        prevIsRegExpKeyword = !afterDot && REGEXP_KEYWORDS.contains(keyword);
+        prevStartsExpression = prevIsRegExpKeyword && !keyword.equals("do") && !keyword.equals("else");
+        if (!afterDot && keyword.equals("function")) {
+            inFunction = true;
+            functionIsExpression = inExpression;
+        }
+    }
+
+    private void readPunctuator() {
+        char c = (char) next();
+        if ((c == '+' || c == '-') && peek(0) == c) {
+            next();
+            beginToken(INCDEC, c);
+            write(c);
+            write(c);
+            endToken(INCDEC, c);
+            return;
+        }
+
+        boolean arrow = c == '>' && prevKind == OTHER && prevLast == '=' && !whitespace;
+        boolean closesExpression = false;
+        boolean closesParameters = false;
+        int kind;
+        switch (c) {
+            case ')':
+                kind = CLOSE;
+                closesParameters = !parens.isEmpty() && parens.pop();
+                break;
+            case ']':
+                kind = CLOSE;
+                break;
+            case '}':
+                kind = CLOSE;
+                closesExpression = !braces.isEmpty() && braces.pop();
+                if (!substitutions.isEmpty()) {
+                    substitutions.peek()[0]--;
+                }
+                break;
+            case '(':
+                kind = OPEN;
+                parens.push(inFunction && functionIsExpression);
+                inFunction = false;
+                break;
+            case '[':
+                kind = OPEN;
+                break;
+            case '{':
+                kind = OPEN;
+                braces.push(prevStartsExpression || prevClosesParameters);
+                if (!substitutions.isEmpty()) {
+                    substitutions.peek()[0]++;
+                }
+                break;
+            default:
+                kind = OTHER;
+        }
+        if (c != '(' && c != '*') {
+            // Only the name, and the star of a generator, come between the
+            // function keyword and the parameters
+            inFunction = false;
+        }
+        boolean inObject = !braces.isEmpty() && braces.peek();
+        beginToken(kind, c);
+        write(c);
+        endToken(kind, c);
+        prevClosesExpression = closesExpression;
+        prevClosesParameters = closesParameters;
+        if (c == ':') {
+            // The value of a property, rather than a label or a case
+            prevStartsExpression = inObject;
+        } else if (arrow) {
+            // The body of an arrow function
+            prevStartsExpression = false;
+        }
+
+        if ((c == ';' || c == ',' || c == '}') && linebreakpos > 0 && column >= linebreakpos) {
+            write('\n');
+        }
+    }
+
+    private void readString() {
+        int startLine = line;
+        char quote = (char) next();
+        beginToken(LITERAL, quote);
+        write(quote);
+        while (true) {
+            int c = next();
+            if (c == EOF || c == '\n' || c == '\r') {
+                throw error("unterminated string literal", startLine);
+            }
+            write((char) c);
+            if (c == quote) {
+                break;
+            }
+            if (c == '\\') {
+                c = next();
+                if (c == EOF) {
+                    throw error("unterminated string literal", startLine);
+                }
+                write((char) c);
+                if (c == '\r' && peek(0) == '\n') {
+                    write((char) next());
+                }
+            }
+        }
+        endToken(LITERAL, quote);
+    }
+
+    /**
+     * Copies a part of a template, after its opening backquote or the end
+     * of a substitution, up to its end or the next substitution.
+     */
+    private void readTemplate() {
+        int startLine = line;
+        while (true) {
+            int c = next();
+            if (c == EOF) {
+                throw error("unterminated template literal", startLine);
+            }
+            write((char) c);
+            if (c == '`') {
+                endToken(LITERAL, '`');
+                return;
+            }
+            if (c == '\\') {
+                c = next();
+                if (c == EOF) {
+                    throw error("unterminated template literal", startLine);
+                }
+                write((char) c);
+            } else if (c == '$' && peek(0) == '{') {
+                write((char) next());
+                substitutions.push(new int[1]);
+                endToken(OPEN, '{');
+                prevStartsExpression = true;
+                return;
+            }
+        }
+    }
+
+    private void readRegExp() {
+        int startLine = line;
+        beginToken(LITERAL, '/');
+        write((char) next());
+        boolean inClass = false;
+        while (true) {
+            int c = next();
+            if (c == EOF || isLineTerminator(c)) {
+                throw error("unterminated regular expression literal", startLine);
+            }
+            write((char) c);
+            if (c == '\\') {
+                c = next();
+                if (c == EOF || isLineTerminator(c)) {
+                    throw error("unterminated regular expression literal", startLine);
+                }
+                write((char) c);
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                break;
+            }
+        }
+        char last = '/';
+        while (peek(0) != EOF && isWordPart(peek(0))) {
+            last = (char) next();
+            write(last);
+        }
+        endToken(LITERAL, last);
+    }
+
+    private void skipLineComment() {
+        while (peek(0) != EOF && !isLineTerminator(peek(0))) {
+            next();
+        }
+        whitespace = true;
+    }
+
+    private void readComment() {
+        int startLine = line;
+        next();
+        next();
+        // Comments such as /*! ... */ and /*@cc_on ... @*/ are kept
+        StringBuilder special = null;
+        if (peek(0) == '!' || peek(0) == '@') {
+            special = new StringBuilder("/*");
+        }
+        while (true) {
+            int c = next();
+            if (c == EOF) {
+                throw error("unterminated comment", startLine);
+            }
+            if (c == '*' && peek(0) == '/') {
+                next();
+                break;
+            }
+            if (isLineTerminator(c)) {
+                newline = true;
+            }
+            if (special != null) {
+                special.append((char) c);
+            }
+        }
+        whitespace = true;
+        if (special != null && (special.charAt(2) == '!' || CONDITIONAL.matcher(special).lookingAt())) {
+            comments.add(special.append("*/").toString());
+        }
+    }
+
+    private static EvaluatorException error(String message, int line) {
+        return new EvaluatorException(message, null, line);
+    }
+
+    private void write(char c) {
+        output.append(c);
+        column = c == '\n' || c == '\r' ? 0 : column + 1;
+        lastWritten = c;
+        if (output.length() >= BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    private void write(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            write(text.charAt(i));
+        }
+    }
+
+    private void flush() {
+        try {
+            out.write(output.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        output.setLength(0);
+    }
+
+    /**
+     * @return The character k positions ahead, k being 0 or 1, or EOF
+     */
+    private int peek(int k) {
+        if (position + k >= limit && !inputEnded) {
+            fill();
+        }
+        return position + k < limit ? input[position + k] : EOF;
+    }
+
+    private int next() {
+        int c = peek(0);
+        if (c != EOF) {
+            position++;
+            if (c == '\n') {
+                line++;
+            }
+        }
+        return c;
+    }
+
+    private void fill() {
+        System.arraycopy(input, position, input, 0, limit - position);
+        limit -= position;
+        position = 0;
+        try {
+            while (limit < input.length) {
+                int read = in.read(input, limit, input.length - limit);
+                if (read < 0) {
+                    inputEnded = true;
+                    break;
+                }
+                limit += read;
+                if (read > 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isLineTerminator(int c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\u000B' || c == '\f' || c == '\uFEFF' ||
+            c > 127 && Character.getType(c) == Character.SPACE_SEPARATOR;
+    }
+
+    private static boolean isWordPart(int c) {
+        if (c < 128) {
+            return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' ||
+                c == '_' || c == '$' || c == '\\' || c == '#';
+        }
+        return Character.isSurrogate((char) c) || Character.isUnicodeIdentifierPart(c) ||
+            c == '\u200C' || c == '\u200D';
+    }
+}
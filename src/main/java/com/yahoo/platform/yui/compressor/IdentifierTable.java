@@ -0,0 +1,114 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte -  http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc.  All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The identifiers declared in a scope, by name. Iterates in declaration
+ * order, which makes munging deterministic.
+ *
+ * The identifiers are kept in an array in declaration order, indexed by an
+ * open-addressing hash table with linear probing. Unlike Hashtable, it is
+ * not synchronized and allocates no entry objects.
+ */
+final class IdentifierTable implements Iterable<JavaScriptIdentifier> {
+
+    private static final JavaScriptIdentifier[] NO_ENTRIES = new JavaScriptIdentifier[0];
+    private static final int[] NO_SLOTS = new int[0];
+
+    // Identifiers in declaration order
+    private JavaScriptIdentifier[] entries = NO_ENTRIES;
+    // Index + 1 of an identifier in entries, or 0 for an empty slot.
+    // The length is a power of 2, and at least twice the size.
+    private int[] slots = NO_SLOTS;
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    JavaScriptIdentifier get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return entries[index];
+    }
+
+    JavaScriptIdentifier get(String symbol) {
+        if (size == 0) {
+            return null;
+        }
+        int mask = slots.length - 1;
+        for (int i = hash(symbol) & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return null;
+            }
+            JavaScriptIdentifier identifier = entries[slot - 1];
+            if (identifier.getValue().equals(symbol)) {
+                return identifier;
+            }
+        }
+    }
+
+    /**
+     * Adds an identifier whose name is not in the table yet.
+     */
+    void add(JavaScriptIdentifier identifier) {
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(4, size * 2));
+        }
+        if ((size + 1) * 2 > slots.length) {
+            rehash(Math.max(8, slots.length * 2));
+        }
+        entries[size++] = identifier;
+        insert(identifier.getValue(), size);
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            insert(entries[i].getValue(), i + 1);
+        }
+    }
+
+    private void insert(String symbol, int slot) {
+        int mask = slots.length - 1;
+        int i = hash(symbol) & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = slot;
+    }
+
+    private static int hash(String symbol) {
+        int h = symbol.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    public Iterator<JavaScriptIdentifier> iterator() {
+        return new Iterator<JavaScriptIdentifier>() {
+            private int next;
+
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            public JavaScriptIdentifier next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return entries[next++];
+            }
+        };
+    }
+}
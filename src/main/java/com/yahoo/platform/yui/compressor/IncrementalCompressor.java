@@ -0,0 +1,764 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Node;
+import org.mozilla.javascript.ast.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compresses successive versions of a script, e.g. as it is edited, doing
+ * again only the work that the changes require. The code is the same as
+ * the one of {@link JavaScriptCompressor}.
+ *
+ * The script is split into units: its top-level statements, and the
+ * functions of the global scope, which leave holes in the code of their
+ * statement. The code of each unit is remembered along with its source
+ * text, the global symbols it declares or refers to, and the global names
+ * its munged names depend on. When a new version comes, only the part of
+ * the source that differs from the previous version is parsed: the
+ * function holding the changes if there is one, or else the statements
+ * around them. The code of a unit is reused when its text is unchanged and
+ * the global names that matter to its munged names are the same. Only the
+ * other units are analyzed, munged and generated again.
+ */
+public class IncrementalCompressor {
+
+    private final ErrorReporter reporter;
+    private final boolean munge;
+    private final boolean preserveAllSemiColons;
+    private final boolean disableOptimizations;
+    private final Charset charset;
+
+    // The previous version, and its statements in order. Statement i
+    // spans from starts[i] to starts[i + 1], or to the end of the source.
+    private String source = "";
+    private List<Statement> statements = Collections.emptyList();
+    private int[] starts = new int[0];
+    private int reusedUnits;
+    // Positions of the line feeds of the version being compressed
+    private int[] newlines;
+    // Whether a unit of the version being compressed declares undefined in
+    // the global scope, which the other units cannot see
+    private boolean undefinedDeclared;
+
+    /**
+     * @param reporter Receives the warnings and errors of the parser, which
+     *        are only reported for the parts of the source that are parsed.
+     *        May be null.
+     */
+    public IncrementalCompressor(ErrorReporter reporter, boolean munge,
+                                 boolean preserveAllSemiColons) {
+        this(reporter, munge, preserveAllSemiColons, false, null);
+    }
+
+    /**
+     * @param reporter Receives the warnings and errors of the parser, which
+     *        are only reported for the parts of the source that are parsed.
+     *        May be null.
+     * @param disableOptimizations Whether to write the literals and the
+     *        expressions as they are, as with --disable-optimizations
+     * @param charset Charset the code is written in, the characters of
+     *        strings that it cannot encode being escaped, or null to write
+     *        them as they are
+     */
+    public IncrementalCompressor(ErrorReporter reporter, boolean munge,
+                                 boolean preserveAllSemiColons, boolean disableOptimizations,
+                                 Charset charset) {
+        this.reporter = reporter != null ? reporter : new DiagnosticCollector(null);
+        this.munge = munge;
+        this.preserveAllSemiColons = preserveAllSemiColons;
+        this.disableOptimizations = disableOptimizations;
+        this.charset = charset;
+    }
+
+    /**
+     * Compresses the new version of the script into out.
+     *
+     * @throws EvaluatorException if the source cannot be parsed. The
+     *         previous version is then still the one compared to.
+     */
+    public synchronized void compress(String source, Writer out, int linebreakpos)
+            throws IOException, EvaluatorException {
+
+        this.newlines = newlines(source);
+        Update update;
+        try {
+            update = update(source);
+        } catch (EvaluatorException e) {
+            // The changes may reach beyond the part that was parsed, e.g.
+            // with a comment opened there and closed further on
+            update = parseAll(source, true);
+        }
+        try {
+            generate(source, update);
+        } catch (EvaluatorException e) {
+            // A statement parsed again alone does not parse, so it was not
+            // split from the others where it should have been
+            update = parseAll(source, false);
+            generate(source, update);
+        }
+
+        this.source = source;
+        this.statements = update.statements;
+        this.starts = update.starts;
+        this.newlines = null;
+
+        PassPipeline pipeline = PassPipeline.create(CompressorPassProvider.JAVASCRIPT,
+                Collections.emptySet());
+        PassContext context = new PassContext(CompressorPassProvider.JAVASCRIPT, linebreakpos);
+        context.setCommentPreserver(JavaScriptCompressor.scanForSpecialComments(source));
+        if (JavaScriptPasses.canStream(pipeline)) {
+            try (Writer writer = new JavaScriptPasses.StreamingWriter(out, context)) {
+                write(writer);
+            }
+        } else {
+            StringBuilder code = new StringBuilder();
+            write(code);
+            out.write(pipeline.run(code.toString(), context));
+        }
+    }
+
+    /**
+     * @return Number of units of the script, statements and functions,
+     *         whose code was reused by the last call to compress
+     */
+    public synchronized int getReusedUnits() {
+        return reusedUnits;
+    }
+
+    /**
+     * @return Number of units of the script compressed last: its top-level
+     *         statements and the functions of its global scope
+     */
+    public synchronized int getUnits() {
+        int count = statements.size();
+        for (Statement statement : statements) {
+            count += statement.functions.size();
+        }
+        return count;
+    }
+
+    /**
+     * Parses the part of source that differs from the previous version:
+     * the function holding the changes, or else the statements from the
+     * one before the changes to the one after them.
+     */
+    private Update update(String source) {
+        int count = statements.size();
+        int oldLength = this.source.length();
+        int newLength = source.length();
+        if (count == 0 || newLength == 0) {
+            return parseAll(source, false);
+        }
+
+        int prefix = 0;
+        int max = Math.min(oldLength, newLength);
+        while (prefix < max && this.source.charAt(prefix) == source.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            return new Update(statements, starts);
+        }
+        int suffix = 0;
+        while (suffix < max - prefix &&
+                this.source.charAt(oldLength - 1 - suffix) == source.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+
+        Update update = updateFunction(source, prefix, oldLength - suffix, newLength - oldLength);
+        if (update != null) {
+            return update;
+        }
+        // The statements holding the first and last changed characters, and
+        // the one on either side, which the changes may join or split
+        int first = Math.max(statementAt(Math.max(prefix - 1, 0)) - 1, 0);
+        int last = Math.min(statementAt(Math.min(oldLength - suffix, oldLength - 1)) + 1, count - 1);
+        return parse(source, first, last + 1, newLength - oldLength);
+    }
+
+    /**
+     * Parses the function of the previous version in which the characters
+     * from from to to excluded were changed, if there is one and it still
+     * is the same kind of function.
+     *
+     * @return The update, or null
+     */
+    private Update updateFunction(String source, int from, int to, int shift) {
+        if (from >= this.source.length()) {
+            return null;
+        }
+        int index = statementAt(from);
+        Statement statement = statements.get(index);
+        int start = starts[index];
+        for (int i = 0; i < statement.functions.size(); i++) {
+            Function function = statement.functions.get(i);
+            // The first and last characters of the function are unchanged
+            if (start + function.start < from && to < start + function.end) {
+                Function changed = parseFunction(source, start, function.start,
+                        function.end + shift, function.type, true);
+                if (changed == null) {
+                    return null;
+                }
+                int end = index + 1 < starts.length ? starts[index + 1] : this.source.length();
+                List<Statement> result = new ArrayList<>(statements);
+                result.set(index, statement.withFunction(i, changed,
+                        source.substring(start, end + shift)));
+                int[] resultStarts = starts.clone();
+                for (int j = index + 1; j < resultStarts.length; j++) {
+                    resultStarts[j] += shift;
+                }
+                return new Update(result, resultStarts);
+            }
+        }
+        return null;
+    }
+
+    private Update parseAll(String source, boolean reuse) {
+        AstRoot root = JavaScriptCompressor.parse(source, 1, reporter);
+        return merge(source, root, 0, source.length(), 0, statements.size(), 0, reuse);
+    }
+
+    /**
+     * Parses the statements from first to end excluded of the previous
+     * version, as changed in source. The part parsed grows until it ends
+     * with a statement the next one cannot continue.
+     *
+     * @param shift Difference in length between source and the previous version
+     */
+    private Update parse(String source, int first, int end, int shift) {
+        while (true) {
+            int from = starts[first];
+            int to = end < starts.length ? starts[end] + shift : source.length();
+            DiagnosticCollector diagnostics = new DiagnosticCollector(null);
+            AstRoot root = parse(source, from, to, diagnostics);
+            if (end < starts.length && !endsStatement(lastStatement(root), source, to)) {
+                end++;
+                continue;
+            }
+            forwardWarnings(diagnostics);
+            return merge(source, root, from, to, first, end, shift, true);
+        }
+    }
+
+    /**
+     * @return The statements of the previous version, from first to end
+     *         excluded replaced by the statements of root, parsed from the
+     *         part of source between from and to. Unless reuse is false,
+     *         those of the same text as a previous statement are replaced
+     *         by the previous statement.
+     */
+    private Update merge(String source, AstRoot root, int from, int to,
+                         int first, int end, int shift, boolean reuse) {
+        List<AstNode> nodes = new ArrayList<>();
+        List<Integer> parsedStarts = new ArrayList<>();
+        for (Node child : root) {
+            if (child instanceof AstNode) {
+                nodes.add((AstNode) child);
+                parsedStarts.add(parsedStarts.isEmpty() ? from
+                        : from + ((AstNode) child).getAbsolutePosition());
+            }
+        }
+        if (nodes.isEmpty() && from < to) {
+            // Nothing but whitespace and comments
+            nodes.add(null);
+            parsedStarts.add(from);
+        }
+
+        Map<String, Statement> known = new HashMap<>();
+        if (reuse) {
+            for (Statement statement : statements) {
+                known.put(statement.text, statement);
+            }
+        }
+        List<Statement> parsed = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            int start = parsedStarts.get(i);
+            int stop = i + 1 < nodes.size() ? parsedStarts.get(i + 1) : to;
+            String text = source.substring(start, stop);
+            Statement statement = known.get(text);
+            parsed.add(statement != null ? statement : new Statement(text, nodes.get(i), from - start));
+        }
+
+        int count = first + parsed.size() + (statements.size() - end);
+        List<Statement> result = new ArrayList<>(count);
+        int[] resultStarts = new int[count];
+        for (int i = 0; i < first; i++) {
+            result.add(statements.get(i));
+            resultStarts[i] = starts[i];
+        }
+        for (int i = 0; i < parsed.size(); i++) {
+            resultStarts[result.size()] = parsedStarts.get(i);
+            result.add(parsed.get(i));
+        }
+        for (int i = end; i < statements.size(); i++) {
+            resultStarts[result.size()] = starts[i] + shift;
+            result.add(statements.get(i));
+        }
+        return new Update(result, resultStarts);
+    }
+
+    /**
+     * Analyzes, munges and generates the units that are new, or whose
+     * munged names depend on global names that changed.
+     */
+    private void generate(String source, Update update) {
+        List<Statement> current = update.statements;
+        int[] currentStarts = update.starts;
+        for (Statement statement : current) {
+            if (statement.pieces == null) {
+                statement.analyze();
+            } else {
+                for (Function function : statement.functions) {
+                    if (function.code == null) {
+                        function.analyze(null);
+                    }
+                }
+            }
+        }
+
+        undefinedDeclared = false;
+        for (Statement statement : current) {
+            undefinedDeclared |= statement.declaresUndefined;
+            for (Function function : statement.functions) {
+                undefinedDeclared |= function.declaresUndefined;
+            }
+        }
+
+        // The global names that are munged names, in NameSequence order
+        int[] globals = new int[0];
+        if (munge) {
+            List<Unit> units = new ArrayList<>();
+            for (Statement statement : current) {
+                units.add(statement);
+                units.addAll(statement.functions);
+            }
+            int size = 0;
+            for (Unit unit : units) {
+                size += unit.globals.length;
+            }
+            globals = new int[size];
+            int n = 0;
+            for (Unit unit : units) {
+                System.arraycopy(unit.globals, 0, globals, n, unit.globals.length);
+                n += unit.globals.length;
+            }
+            globals = Arrays.stream(globals).sorted().distinct().toArray();
+        }
+
+        int reused = 0;
+        for (int i = 0; i < current.size(); i++) {
+            Statement statement = current.get(i);
+            int start = currentStarts[i];
+            if (statement.pieces != null && statement.mungesTheSame(globals)) {
+                reused++;
+                List<Function> functions = statement.functions;
+                for (int j = 0; j < functions.size(); j++) {
+                    Function function = functions.get(j);
+                    if (function.code != null) {
+                        if (function.mungesTheSame(globals)) {
+                            reused++;
+                            continue;
+                        }
+                        // Parse it again, alone
+                        function = parseFunction(source, start, function.start,
+                                function.end, function.type, false);
+                        if (function == null) {
+                            throw new EvaluatorException("Not a function alone");
+                        }
+                        function.analyze(null);
+                        functions.set(j, function);
+                    }
+                    function.generate(globals);
+                }
+                continue;
+            }
+            if (statement.pieces != null) {
+                // Parse it again, alone
+                int stop = i + 1 < currentStarts.length ? currentStarts[i + 1] : source.length();
+                AstRoot root = parse(source, start, stop, new DiagnosticCollector(null));
+                AstNode node = lastStatement(root);
+                if (node != root.getFirstChild()) {
+                    throw new EvaluatorException("Not a single statement");
+                }
+                statement = new Statement(statement.text, node, 0);
+                statement.analyze();
+                current.set(i, statement);
+            }
+            statement.generate(globals);
+        }
+        this.reusedUnits = reused;
+    }
+
+    private void write(Appendable out) throws IOException {
+        // The end of the code written, enough for the separator check
+        StringBuilder tail = new StringBuilder();
+        for (Statement statement : statements) {
+            for (Object piece : statement.pieces) {
+                String code = piece instanceof String ? (String) piece
+                        : statement.functions.get((Integer) piece).code;
+                if (code.isEmpty()) {
+                    continue;
+                }
+                if (tail.length() > 0 && MungedCodeGenerator.needsSeparator(tail, code)) {
+                    out.append(' ');
+                    tail.append(' ');
+                }
+                out.append(code);
+                tail.append(code, Math.max(code.length() - 2, 0), code.length());
+                tail.delete(0, Math.max(tail.length() - 2, 0));
+            }
+        }
+    }
+
+    /**
+     * @return The index of the statement of the previous version holding
+     *         the character at position
+     */
+    private int statementAt(int position) {
+        int index = Arrays.binarySearch(starts, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Parses the function of the given type between from and to in the
+     * statement of source at start.
+     *
+     * @return The function, or null if that text is not one such function
+     */
+    private Function parseFunction(String source, int start, int from, int to, int type,
+                                   boolean warn) {
+        String text = source.substring(start + from, start + to);
+        boolean statement = type == FunctionNode.FUNCTION_STATEMENT;
+        DiagnosticCollector diagnostics = new DiagnosticCollector(null);
+        AstRoot root;
+        try {
+            // Other functions are expressions
+            root = parse(statement ? text : "(" + text + ")", start + from, diagnostics);
+        } catch (EvaluatorException e) {
+            return null;
+        }
+        AstNode node = lastStatement(root);
+        if (node != root.getFirstChild()) {
+            return null;
+        }
+        if (!statement) {
+            node = node instanceof ExpressionStatement
+                    ? ((ExpressionStatement) node).getExpression() : null;
+            node = node instanceof ParenthesizedExpression
+                    ? ((ParenthesizedExpression) node).getExpression() : null;
+        }
+        if (!(node instanceof FunctionNode)) {
+            return null;
+        }
+        FunctionNode fn = (FunctionNode) node;
+        if (fn.getFunctionType() != type || fn.isMethod() ||
+                fn.getAbsolutePosition() != (statement ? 0 : 1) || fn.getLength() != text.length()) {
+            return null;
+        }
+        if (warn) {
+            forwardWarnings(diagnostics);
+        }
+        return new Function(fn, from, to);
+    }
+
+    private void forwardWarnings(DiagnosticCollector diagnostics) {
+        for (Diagnostic diagnostic : diagnostics.getDiagnostics()) {
+            reporter.warning(diagnostic.getMessage(), diagnostic.getSourceName(),
+                diagnostic.getLine(), diagnostic.getLineSource(), diagnostic.getColumn());
+        }
+    }
+
+    private static AstNode lastStatement(AstRoot root) {
+        Node last = root.getLastChild();
+        return last instanceof AstNode ? (AstNode) last : null;
+    }
+
+    /**
+     * @return Whether the code after position cannot continue statement,
+     *         which ends there
+     */
+    private static boolean endsStatement(AstNode statement, String source, int position) {
+        int end = position;
+        while (end > 0 && Character.isWhitespace(source.charAt(end - 1))) {
+            end--;
+        }
+        if (end > 0 && source.charAt(end - 1) == ';') {
+            return true;
+        }
+        while (statement != null) {
+            if (statement instanceof FunctionNode) {
+                return ((FunctionNode) statement).getFunctionType() == FunctionNode.FUNCTION_STATEMENT;
+            }
+            if (statement instanceof Block || statement instanceof Scope && !(statement instanceof Loop) ||
+                    statement instanceof SwitchStatement || statement instanceof TryStatement) {
+                return true;
+            }
+            if (statement instanceof IfStatement) {
+                IfStatement ifStatement = (IfStatement) statement;
+                statement = ifStatement.getElsePart() != null
+                        ? ifStatement.getElsePart() : ifStatement.getThenPart();
+            } else if (statement instanceof Loop && !(statement instanceof DoLoop)) {
+                statement = ((Loop) statement).getBody();
+            } else if (statement instanceof WithStatement) {
+                statement = ((WithStatement) statement).getStatement();
+            } else if (statement instanceof LabeledStatement) {
+                statement = ((LabeledStatement) statement).getStatement();
+            } else {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private AstRoot parse(String source, int from, int to, ErrorReporter reporter) {
+        return parse(source.substring(from, to), from, reporter);
+    }
+
+    /**
+     * Parses text, found at position in the source.
+     */
+    private AstRoot parse(String text, int position, ErrorReporter reporter) {
+        int line = Arrays.binarySearch(newlines, position);
+        line = line >= 0 ? line + 1 : -line;
+        return JavaScriptCompressor.parse(text, line, reporter);
+    }
+
+    private static int[] newlines(String source) {
+        int count = 0;
+        for (int i = source.indexOf('\n'); i >= 0; i = source.indexOf('\n', i + 1)) {
+            count++;
+        }
+        int[] positions = new int[count];
+        int n = 0;
+        for (int i = source.indexOf('\n'); i >= 0; i = source.indexOf('\n', i + 1)) {
+            positions[n++] = i;
+        }
+        return positions;
+    }
+
+    /**
+     * Code analyzed, munged and generated on its own. Its node and scopes
+     * are only held until its code is generated.
+     */
+    private abstract class Unit {
+        AstNode node;
+        ScopeBuilder scopeBuilder;
+        ScriptOrFnScope globalScope;
+
+        // Indices in the NameSequence of the global symbols of the unit, of
+        // its highest munged name, and of the global names of the script up
+        // to that one, which picking them depended on
+        int[] globals;
+        int highest;
+        int[] dependencies;
+        // Whether the unit declares undefined in the global scope, and
+        // whether undefined was kept as it is in its code
+        boolean declaresUndefined;
+        boolean keptUndefined;
+
+        /**
+         * @param functions Receives the functions of the global scope, left
+         *        out of the unit, unless null
+         */
+        void analyze(List<FunctionNode> functions) {
+            scopeBuilder = new ScopeBuilder();
+            if (node != null) {
+                globalScope = scopeBuilder.buildStatementScopeTree(node, functions);
+            } else {
+                globalScope = scopeBuilder.getGlobalScope();
+            }
+            List<Integer> indices = new ArrayList<>();
+            for (JavaScriptIdentifier identifier : globalScope.getIdentifiers()) {
+                int index = NameSequence.indexOf(identifier.getValue());
+                if (index >= 0) {
+                    indices.add(index);
+                }
+            }
+            globals = indices.stream().mapToInt(Integer::intValue).sorted().toArray();
+            declaresUndefined = globalScope.getIdentifier("undefined") != null;
+        }
+
+        MungedCodeGenerator munge(int[] scriptGlobals) {
+            highest = -1;
+            if (munge) {
+                globalScope.munge(scriptGlobals);
+                highest = globalScope.getHighestMungedIndex();
+            }
+            dependencies = Arrays.copyOf(scriptGlobals, countUpTo(scriptGlobals, highest));
+            MungedCodeGenerator generator = new MungedCodeGenerator(scopeBuilder, munge,
+                preserveAllSemiColons);
+            generator.setCompactLiterals(!disableOptimizations, charset);
+            keptUndefined = undefinedDeclared;
+            if (node != null && !disableOptimizations) {
+                generator.setRewrites(ExpressionOptimizer.plan(node, scopeBuilder, keptUndefined));
+            }
+            return generator;
+        }
+
+        void release() {
+            node = null;
+            scopeBuilder = null;
+            globalScope = null;
+        }
+
+        /**
+         * @return Whether the munged names would be the same with the
+         *         given global names of the script, and so would the code
+         */
+        boolean mungesTheSame(int[] scriptGlobals) {
+            int count = countUpTo(scriptGlobals, highest);
+            return keptUndefined == undefinedDeclared && count == dependencies.length &&
+                Arrays.equals(dependencies, 0, count, scriptGlobals, 0, count);
+        }
+
+        void copyTo(Unit unit) {
+            unit.globals = globals;
+            unit.highest = highest;
+            unit.dependencies = dependencies;
+            unit.declaresUndefined = declaresUndefined;
+            unit.keptUndefined = keptUndefined;
+        }
+    }
+
+    /**
+     * A top-level statement, with the whitespace and comments that follow
+     * it, and the functions of the global scope within it.
+     */
+    private final class Statement extends Unit {
+        final String text;
+        // Position of the node relative to the text, until analyzed
+        private final int offset;
+        List<Function> functions;
+        // The code, as Strings and the indices of the functions in between
+        List<Object> pieces;
+
+        Statement(String text, AstNode node, int offset) {
+            this.text = text;
+            this.node = node;
+            this.offset = offset;
+        }
+
+        void analyze() {
+            List<FunctionNode> nodes = new ArrayList<>();
+            analyze(nodes);
+            functions = new ArrayList<>(nodes.size());
+            for (FunctionNode fn : nodes) {
+                int start = offset + fn.getAbsolutePosition();
+                Function function = new Function(fn, start, start + fn.getLength());
+                function.analyze(null);
+                functions.add(function);
+            }
+        }
+
+        void generate(int[] scriptGlobals) {
+            MungedCodeGenerator generator = munge(scriptGlobals);
+            Map<AstNode, Integer> holes = new IdentityHashMap<>();
+            for (int i = 0; i < functions.size(); i++) {
+                holes.put(functions.get(i).node, i);
+            }
+            pieces = new ArrayList<>();
+            if (node != null) {
+                for (Object piece : generator.generateStatement(node, holes.keySet())) {
+                    pieces.add(piece instanceof String ? piece : holes.get(piece));
+                }
+            }
+            release();
+            for (Function function : functions) {
+                function.generate(scriptGlobals);
+            }
+        }
+
+        /**
+         * @return This statement, with the text given, where function i was
+         *         changed to function
+         */
+        Statement withFunction(int i, Function function, String text) {
+            Statement statement = new Statement(text, null, 0);
+            copyTo(statement);
+            statement.pieces = pieces;
+            statement.functions = new ArrayList<>(functions);
+            statement.functions.set(i, function);
+            int shift = function.end - functions.get(i).end;
+            for (int j = 0; j < functions.size(); j++) {
+                Function other = functions.get(j);
+                if (other.start > function.start) {
+                    statement.functions.set(j, other.moved(shift));
+                }
+            }
+            return statement;
+        }
+    }
+
+    /**
+     * A function of the global scope, which is not a method, getter or
+     * setter.
+     */
+    private final class Function extends Unit {
+        // Position relative to the text of the statement
+        final int start;
+        final int end;
+        final int type;
+        String code;
+
+        Function(FunctionNode node, int start, int end) {
+            this.node = node;
+            this.start = start;
+            this.end = end;
+            this.type = node.getFunctionType();
+        }
+
+        private Function(Function function, int shift) {
+            this.start = function.start + shift;
+            this.end = function.end + shift;
+            this.type = function.type;
+            this.code = function.code;
+            function.copyTo(this);
+        }
+
+        void generate(int[] scriptGlobals) {
+            code = munge(scriptGlobals).generateNode(node);
+            release();
+        }
+
+        Function moved(int shift) {
+            return new Function(this, shift);
+        }
+    }
+
+    /**
+     * @return The number of the sorted indices that are at most max
+     */
+    private static int countUpTo(int[] indices, int max) {
+        int index = Arrays.binarySearch(indices, max);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private static final class Update {
+        final List<Statement> statements;
+        final int[] starts;
+
+        Update(List<Statement> statements, int[] starts) {
+            this.statements = statements;
+            this.starts = starts;
+        }
+    }
+}
@@ -12,84 +12,37 @@ import org.mozilla.javascript.*;
 import org.mozilla.javascript.ast.*;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Simplified JavaScript compressor using Rhino 1.8.0 API
  *
  * This is a minimal implementation to verify compatibility with Rhino 1.8.0.
  * Full functionality will be added incrementally.
+ *
+ * The AST and the scopes of the source are held until {@link #close()},
+ * after which only the results (diagnostics, pass statistics and source
+ * hash) remain available.
  */
-public class JavaScriptCompressor {
+public class JavaScriptCompressor implements AutoCloseable {
 
-    // Static fields for variable name munging (used by ScriptOrFnScope)
-    static final ArrayList ones;
-    static final ArrayList twos;
-    static final ArrayList threes;
-    static final Set builtin = new HashSet();
     static final Map literals = new HashMap();
+
+    // Names variables are never munged to (used by NameSequence)
+    static final Set builtin = new HashSet();
     static final Set reserved = new HashSet();
 
     static {
-        // Initialize short variable names for munging
         // This list contains all the 3 characters or less built-in global
         // symbols available in a browser.
         builtin.add("NaN");
         builtin.add("top");
 
-        ones = new ArrayList();
-        for (char c = 'a'; c <= 'z'; c++)
-            ones.add(Character.toString(c));
-        for (char c = 'A'; c <= 'Z'; c++)
-            ones.add(Character.toString(c));
-
-        twos = new ArrayList();
-        for (int i = 0; i < ones.size(); i++) {
-            String one = (String) ones.get(i);
-            for (char c = 'a'; c <= 'z'; c++)
-                twos.add(one + Character.toString(c));
-            for (char c = 'A'; c <= 'Z'; c++)
-                twos.add(one + Character.toString(c));
-            for (char c = '0'; c <= '9'; c++)
-                twos.add(one + Character.toString(c));
-        }
-
-        threes = new ArrayList();
-        for (int i = 0; i < twos.size(); i++) {
-            String two = (String) twos.get(i);
-            for (char c = 'a'; c <= 'z'; c++)
-                threes.add(two + Character.toString(c));
-            for (char c = 'A'; c <= 'Z'; c++)
-                threes.add(two + Character.toString(c));
-            for (char c = '0'; c <= '9'; c++)
-                threes.add(two + Character.toString(c));
-        }
-
-        // Remove two-letter JavaScript reserved words and built-in globals
-        twos.remove("as");
-        twos.remove("is");
-        twos.remove("do");
-        twos.remove("if");
-        twos.remove("in");
-        // ES6+ two-letter keywords
-        twos.remove("of");
-        twos.removeAll(builtin);
-
-        // Remove three-letter JavaScript reserved words and built-in globals
-        threes.remove("for");
-        threes.remove("int");
-        threes.remove("new");
-        threes.remove("try");
-        threes.remove("use");
-        threes.remove("var");
-        // ES6+ three-letter keywords
-        threes.remove("let");
-        threes.remove("get");
-        threes.remove("set");
-        threes.removeAll(builtin);
-
         // Initialize reserved words set
         reserved.add("abstract");
         reserved.add("boolean");
@@ -167,78 +120,78 @@ public class JavaScriptCompressor {
     private static final java.util.regex.Pattern SPECIAL_COMMENT_PATTERN =
         java.util.regex.Pattern.compile("/\\*(!|@cc_on|@if|@elif|@else|@end|@set|@_)([\\s\\S]*?)\\*/");
 
-    private final CompilerEnvirons compilerEnv;
     private final ErrorReporter errorReporter;
     private final CommentPreserver commentPreserver;
     private AstRoot ast;
     private ScopeBuilder scopeBuilder;
     private ScriptOrFnScope globalScope;
+    private boolean munged;
+    // Expressions written in a shorter form by the optimized variants,
+    // found once they are first generated
+    private Set<AstNode> rewrites;
+    private boolean closed;
+    private final String sourceHash;
+    private Collection<String> disabledPasses = Collections.emptySet();
+    private boolean parallelGeneration;
+    private NamingStrategy namingStrategy = NamingStrategy.FREQUENCY;
+    private boolean frequencyAlphabet;
+    private final boolean parallelAnalysis;
+    private List<PassStatistics> passStatistics = Collections.emptyList();
 
     public JavaScriptCompressor(Reader in, ErrorReporter reporter)
             throws IOException, EvaluatorException {
+        this(in, reporter, false);
+    }
 
-        // Use default error reporter if none provided
-        if (reporter == null) {
-            reporter = new ErrorReporter() {
-                public void warning(String message, String sourceName,
-                                  int line, String lineSource, int lineOffset) {
-                    // Silent by default
-                }
-
-                public void error(String message, String sourceName,
-                                int line, String lineSource, int lineOffset) {
-                    System.err.println("Error: " + message);
-                }
+    /**
+     * @param parallelAnalysis Whether the functions of the global scope are
+     *        analyzed, and later munged, concurrently in the common fork/join
+     *        pool. The munged names are the same.
+     */
+    public JavaScriptCompressor(Reader in, ErrorReporter reporter, boolean parallelAnalysis)
+            throws IOException, EvaluatorException {
 
-                public EvaluatorException runtimeError(String message, String sourceName,
-                                                      int line, String lineSource, int lineOffset) {
-                    return new EvaluatorException(message);
-                }
-            };
+        this.parallelAnalysis = parallelAnalysis;
+        // Collect the diagnostics if no error reporter is provided
+        if (reporter == null) {
+            reporter = new DiagnosticCollector(null);
         }
 
         this.errorReporter = reporter;
-        this.commentPreserver = new CommentPreserver();
-
-        // Read the source into a string buffer for comment scanning and parsing
-        StringBuilder sourceCode = new StringBuilder();
-        char[] buffer = new char[4096];
-        int read;
-        while ((read = in.read(buffer)) != -1) {
-            sourceCode.append(buffer, 0, read);
-        }
-        String source = sourceCode.toString();
 
-        // Scan for special comments before parsing
-        scanForSpecialComments(source);
+        // Read the source into a string for comment scanning and parsing
+        String source = ParserContext.get().read(in);
+        this.sourceHash = AnalysisArtifact.hash(source);
 
-        // Setup compiler environment - DON'T record comments to avoid them in toSource()
-        this.compilerEnv = new CompilerEnvirons();
-        this.compilerEnv.setRecordingComments(false);
-        this.compilerEnv.setRecordingLocalJsDocComments(false);
-        // Use ES6 language version for better ES6+ syntax support
-        this.compilerEnv.setLanguageVersion(Context.VERSION_ES6);
-        this.compilerEnv.setGenerateDebugInfo(false);
-        this.compilerEnv.setErrorReporter(reporter);
+        // Scan for special comments before parsing
+        this.commentPreserver = scanForSpecialComments(source);
 
         // Parse the JavaScript
-        Parser parser = new Parser(this.compilerEnv);
         try {
-            this.ast = parser.parse(new java.io.StringReader(source), null, 1);
+            this.ast = parse(source, 1, reporter);
 
             // Build scope tree for variable tracking and munging
             this.scopeBuilder = new ScopeBuilder();
-            this.globalScope = this.scopeBuilder.buildScopeTree(this.ast);
+            this.globalScope = this.scopeBuilder.buildScopeTree(this.ast,
+                    parallelAnalysis ? ForkJoinPool.commonPool() : null);
 
         } catch (Exception e) {
             throw new EvaluatorException("Error parsing JavaScript: " + e.getMessage());
         }
     }
 
+    /**
+     * Parses source, whose first line is the given line of the file
+     */
+    static AstRoot parse(String source, int lineno, ErrorReporter reporter) {
+        return ParserContext.get().parse(source, lineno, reporter);
+    }
+
     /**
      * Scan source code for special comments that should be preserved
      */
-    private void scanForSpecialComments(String source) {
+    static CommentPreserver scanForSpecialComments(String source) {
+        CommentPreserver commentPreserver = new CommentPreserver();
         java.util.regex.Matcher matcher = SPECIAL_COMMENT_PATTERN.matcher(source);
 
         while (matcher.find()) {
@@ -259,6 +212,107 @@ public class JavaScriptCompressor {
                 );
             }
         }
+        return commentPreserver;
+    }
+
+    /**
+     * @param disabledPasses Names of the optional passes to skip
+     * @throws IllegalArgumentException if a required pass is disabled, or
+     *         a pass of that name does not exist
+     */
+    public void setDisabledPasses(Collection<String> disabledPasses) {
+        if (disabledPasses == null) {
+            disabledPasses = Collections.emptySet();
+        }
+        // Fail now rather than in the middle of compress()
+        PassPipeline.create(CompressorPassProvider.JAVASCRIPT, disabledPasses);
+        this.disabledPasses = disabledPasses;
+    }
+
+    /**
+     * @param parallelGeneration Whether the code of large functions is
+     *        generated concurrently, in the common fork/join pool. The code
+     *        is the same, but is no longer streamed to the writers.
+     */
+    public void setParallelGeneration(boolean parallelGeneration) {
+        this.parallelGeneration = parallelGeneration;
+    }
+
+    /**
+     * @param namingStrategy How the munged names are given to the local
+     *        symbols. It has no effect once they are munged, by the first
+     *        munged compression or analysis artifact.
+     */
+    public void setNamingStrategy(NamingStrategy namingStrategy) {
+        this.namingStrategy = namingStrategy;
+    }
+
+    /**
+     * @param frequencyAlphabet Whether the munged names are made of the
+     *        letters most frequent in the rest of the code first, which
+     *        gzip compresses better, instead of a-z, A-Z. It has no effect
+     *        once the local symbols are munged.
+     */
+    public void setFrequencyAlphabet(boolean frequencyAlphabet) {
+        this.frequencyAlphabet = frequencyAlphabet;
+    }
+
+    /**
+     * @return Statistics of the passes run by the last call to compress,
+     *         for its last variant when several were generated
+     */
+    public List<PassStatistics> getPassStatistics() {
+        return passStatistics;
+    }
+
+    /**
+     * @return Hex encoded SHA-256 hash of the source, the key of its
+     *         {@link AnalysisArtifact}
+     */
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    /**
+     * Munges the local symbols if not done yet, and returns the result of
+     * the analysis so it can be reused by {@link #useAnalysisArtifact}.
+     */
+    public AnalysisArtifact getAnalysisArtifact() {
+        ensureOpen();
+        ensureMunged();
+        return AnalysisArtifact.capture(sourceHash, namingStrategy, frequencyAlphabet,
+                globalScope);
+    }
+
+    /**
+     * Reuses the munged names of an artifact computed from the same source,
+     * so that compress() does not munge again. The artifact is ignored when
+     * it was computed from another source or with other naming options, or
+     * does not match the scopes of this one.
+     *
+     * @return true if the artifact was used
+     */
+    public synchronized boolean useAnalysisArtifact(AnalysisArtifact artifact) {
+        ensureOpen();
+        if (this.munged || this.globalScope == null ||
+                !sourceHash.equals(artifact.getSourceHash()) ||
+                artifact.getNamingStrategy() != namingStrategy ||
+                artifact.isFrequencyAlphabet() != frequencyAlphabet) {
+            return false;
+        }
+        this.munged = artifact.applyTo(this.globalScope);
+        return this.munged;
+    }
+
+    /**
+     * @return The warnings and errors reported so far, if no error reporter
+     *         was given to the constructor or if it is a DiagnosticCollector
+     */
+    public List<Diagnostic> getDiagnostics() {
+        if (errorReporter instanceof DiagnosticCollector) {
+            return ((DiagnosticCollector) errorReporter).getDiagnostics();
+        }
+        return Collections.emptyList();
     }
 
     // 6-parameter version (for backward compatibility)
@@ -277,57 +331,66 @@ public class JavaScriptCompressor {
                         boolean preserveUnknownHints)
             throws IOException {
 
-        try {
-            String compressed;
+        OutputVariant variant = new OutputVariant(out, mungemap, linebreakpos,
+                munge, preserveAllSemiColons, disableOptimizations);
+        compress(Collections.singletonList(variant), false);
+    }
 
-            if (this.ast != null) {
-                // Perform variable munging if requested
-                if (munge) {
-                    this.globalScope.munge();
-                }
+    /**
+     * Generates several outputs from the single parse and scope analysis
+     * done by the constructor. Local symbols are munged once, so all the
+     * munged variants use the same names.
+     *
+     * Variants generated one at a time are streamed to their writer while
+     * they are generated, so the writer may have received part of the
+     * code when an exception is thrown. Concurrently generated variants
+     * are held in memory until they are all done.
+     *
+     * @param variants Outputs to generate, written in order
+     * @param parallel Whether the variants are generated concurrently
+     * @throws IllegalStateException if the compressor is closed
+     */
+    public void compress(List<OutputVariant> variants, boolean parallel)
+            throws IOException {
+
+        ensureOpen();
 
-                // Generate code with munged variable names
-                MungedCodeGenerator generator = new MungedCodeGenerator(this.scopeBuilder, munge);
-                compressed = generator.generate(this.ast);
-
-                // Extract string literals to protect them from whitespace compression
-                java.util.List<String> stringLiterals = new java.util.ArrayList<>();
-                compressed = extractStringLiterals(compressed, stringLiterals);
-
-                // Remove extra whitespace
-                compressed = compressed.replaceAll("\\s+", " ");
-                compressed = compressed.replaceAll(" \\{", "{");
-                compressed = compressed.replaceAll("\\{ ", "{");
-                compressed = compressed.replaceAll(" \\}", "}");
-                compressed = compressed.replaceAll("\\} ", "}");
-                compressed = compressed.replaceAll(" \\(", "(");
-                compressed = compressed.replaceAll("\\( ", "(");
-                compressed = compressed.replaceAll(" \\)", ")");
-                compressed = compressed.replaceAll("\\) ", ")");
-                compressed = compressed.replaceAll(" ;", ";");
-                compressed = compressed.replaceAll("; ", ";");
-                compressed = compressed.replaceAll(" ,", ",");
-                compressed = compressed.replaceAll(", ", ",");
-
-                // Restore string literals
-                compressed = restoreStringLiterals(compressed, stringLiterals);
-
-                // Insert preserved comments
-                compressed = commentPreserver.insertComments(compressed);
-
-                // Add line breaks if requested
-                if (linebreakpos > 0) {
-                    compressed = addLineBreaks(compressed, linebreakpos);
+        try {
+            for (OutputVariant variant : variants) {
+                if (variant.isMunge()) {
+                    ensureMunged();
+                    break;
+                }
+            }
+            for (OutputVariant variant : variants) {
+                if (!variant.isDisableOptimizations() && this.rewrites == null) {
+                    this.rewrites = ExpressionOptimizer.plan(this.ast, this.scopeBuilder);
                 }
+            }
+
+            // The AST and the scopes are only read from now on
+            List<String> outputs = null;
+            if (parallel && variants.size() > 1) {
+                outputs = variants.parallelStream()
+                        .map(this::generate)
+                        .collect(java.util.stream.Collectors.toList());
+            }
 
-                out.write(compressed);
+            for (int i = 0; i < variants.size(); i++) {
+                OutputVariant variant = variants.get(i);
+                if (outputs != null) {
+                    variant.getOut().write(outputs.get(i));
+                } else {
+                    write(variant);
+                }
 
                 // Write munge map if requested
-                if (munge && mungemap != null) {
+                if (variant.isMunge() && variant.getMungemap() != null) {
                     StringBuffer mapping = new StringBuffer();
                     this.globalScope.getFullMapping(mapping, "");
-                    mungemap.write(mapping.toString());
+                    variant.getMungemap().write(mapping.toString());
                 }
+                this.passStatistics = variant.getPassStatistics();
             }
 
         } catch (Exception e) {
@@ -335,89 +398,150 @@ public class JavaScriptCompressor {
         }
     }
 
-    private String addLineBreaks(String code, int linebreakpos) {
-        if (linebreakpos <= 0 || code.length() <= linebreakpos) {
-            return code;
-        }
-
-        StringBuilder result = new StringBuilder();
-        int length = code.length();
+    /**
+     * Releases the AST and the scopes, which take many times the size of
+     * the source. The compressor can no longer compress once closed, nor
+     * produce an analysis artifact. It must not be closed while compressing,
+     * and closing it again has no effect.
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        this.ast = null;
+        this.scopeBuilder = null;
+        this.globalScope = null;
+        this.rewrites = null;
+    }
 
-        for (int i = 0; i < length; i += linebreakpos) {
-            int end = Math.min(i + linebreakpos, length);
-            result.append(code, i, end);
-            if (end < length) {
-                result.append('\n');
-            }
+    private synchronized void ensureOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("The compressor is closed");
         }
+    }
 
-        return result.toString();
+    private synchronized void ensureMunged() {
+        // Munging again would pick different names, as the names
+        // assigned the first time are then in use.
+        if (!this.munged) {
+            NameSequence order = frequencyAlphabet ? frequencyOrder() : NameSequence.DEFAULT;
+            this.globalScope.munge(namingStrategy, order,
+                    parallelAnalysis ? ForkJoinPool.commonPool() : null);
+            this.munged = true;
+        }
     }
 
     /**
-     * Extract string literals from the code and replace them with placeholders.
-     * This protects string contents from being modified by whitespace compression.
-     *
-     * @param code The JavaScript code
-     * @param stringLiterals List to store the extracted string literals
-     * @return Code with string literals replaced by placeholders
+     * @return The order of the names from the letters most frequent in the
+     *         code, leaving out the names of the symbols to munge
      */
-    private String extractStringLiterals(String code, java.util.List<String> stringLiterals) {
-        StringBuilder result = new StringBuilder();
-        int length = code.length();
-        int i = 0;
-
-        while (i < length) {
-            char c = code.charAt(i);
-
-            // Check for string literal (single or double quote)
-            if (c == '"' || c == '\'') {
-                char quoteChar = c;
-                StringBuilder literal = new StringBuilder();
-                literal.append(c);
-                i++;
-
-                // Find the end of the string literal, handling escapes
-                boolean escaped = false;
-                while (i < length) {
-                    char ch = code.charAt(i);
-                    literal.append(ch);
-
-                    if (escaped) {
-                        escaped = false;
-                    } else if (ch == '\\') {
-                        escaped = true;
-                    } else if (ch == quoteChar) {
-                        i++;
-                        break;
+    private NameSequence frequencyOrder() {
+        int[] counts = new int[128];
+        Writer counter = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                for (int i = off; i < off + len; i++) {
+                    if (cbuf[i] < counts.length) {
+                        counts[cbuf[i]]++;
                     }
-                    i++;
                 }
+            }
 
-                // Store the literal and add a placeholder
-                stringLiterals.add(literal.toString());
-                result.append("___STRING_LITERAL_" + (stringLiterals.size() - 1) + "___");
-            } else {
-                result.append(c);
-                i++;
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            new MungedCodeGenerator(this.scopeBuilder, false).generate(this.ast, counter);
+        } catch (IOException e) {
+            // The counter does not throw
+            throw new IllegalStateException(e);
+        }
+
+        Deque<ScriptOrFnScope> scopes = new ArrayDeque<>(this.globalScope.getSubScopes());
+        while (!scopes.isEmpty()) {
+            ScriptOrFnScope scope = scopes.pop();
+            if (!scope.isMarkedForMunging()) {
+                continue;
+            }
+            for (JavaScriptIdentifier identifier : scope.getIdentifiers()) {
+                if (identifier.isMarkedForMunging()) {
+                    String name = identifier.getValue();
+                    for (int i = 0; i < name.length(); i++) {
+                        if (name.charAt(i) < counts.length) {
+                            counts[name.charAt(i)] -= identifier.getRefcount();
+                        }
+                    }
+                }
             }
+            scopes.addAll(scope.getSubScopes());
         }
+        return NameSequence.byFrequency(counts);
+    }
 
-        return result.toString();
+    private String generate(OutputVariant variant) {
+        // Generate code with munged variable names
+        MungedCodeGenerator generator = new MungedCodeGenerator(this.scopeBuilder,
+                variant.isMunge(), variant.isPreserveAllSemiColons());
+        generator.setCompactLiterals(!variant.isDisableOptimizations(), charset(variant.getOut()));
+        generator.setRewrites(variant.isDisableOptimizations() ? null : this.rewrites);
+        String compressed = parallelGeneration
+                ? generator.generate(this.ast, ForkJoinPool.commonPool())
+                : generator.generate(this.ast);
+
+        // Post-process the generated code
+        PassPipeline pipeline = createPipeline();
+        compressed = pipeline.run(compressed, createPassContext(variant));
+        variant.setPassStatistics(pipeline.getStatistics());
+        return compressed;
     }
 
     /**
-     * Restore string literals that were replaced with placeholders.
-     *
-     * @param code Code with placeholders
-     * @param stringLiterals List of extracted string literals
-     * @return Code with string literals restored
+     * Generates the code of a variant straight into its writer, unless
+     * custom passes need the whole code at once or it is generated in
+     * parallel.
+     */
+    private void write(OutputVariant variant) throws IOException {
+        PassPipeline pipeline = createPipeline();
+        if (parallelGeneration || !JavaScriptPasses.canStream(pipeline)) {
+            variant.getOut().write(generate(variant));
+            return;
+        }
+        MungedCodeGenerator generator = new MungedCodeGenerator(this.scopeBuilder,
+                variant.isMunge(), variant.isPreserveAllSemiColons());
+        generator.setCompactLiterals(!variant.isDisableOptimizations(), charset(variant.getOut()));
+        generator.setRewrites(variant.isDisableOptimizations() ? null : this.rewrites);
+        JavaScriptPasses.StreamingWriter writer = new JavaScriptPasses.StreamingWriter(
+                variant.getOut(), createPassContext(variant));
+        generator.generate(this.ast, writer);
+        variant.setPassStatistics(writer.getStatistics());
+    }
+
+    /**
+     * @return The charset out encodes the code in, or null if unknown
      */
-    private String restoreStringLiterals(String code, java.util.List<String> stringLiterals) {
-        String result = code;
-        for (int i = 0; i < stringLiterals.size(); i++) {
-            result = result.replace("___STRING_LITERAL_" + i + "___", stringLiterals.get(i));
+    private static Charset charset(Writer out) {
+        if (out instanceof OutputStreamWriter) {
+            try {
+                return Charset.forName(((OutputStreamWriter) out).getEncoding());
+            } catch (IllegalArgumentException e) {
+                // Not a name Charset knows
+            }
         }
-        return result;
+        return null;
+    }
+
+    private PassPipeline createPipeline() {
+        return PassPipeline.create(CompressorPassProvider.JAVASCRIPT, this.disabledPasses);
+    }
+
+    private PassContext createPassContext(OutputVariant variant) {
+        PassContext context = new PassContext(
+            CompressorPassProvider.JAVASCRIPT, variant.getLineBreakPosition());
+        context.setCommentPreserver(commentPreserver);
+        return context;
     }
 }
@@ -15,9 +15,15 @@ import org.mozilla.javascript.Token;
  */
 class JavaScriptIdentifier extends JavaScriptToken {
 
+    // Values of mungedIndex that are not an index in the NameSequence
+    private static final int NOT_MUNGED = -1;
+    private static final int KEPT = -2;
+
+    private final ScriptOrFnScope declaredScope;
     private int refcount = 0;
-    private String mungedValue;
-    private ScriptOrFnScope declaredScope;
+    // Order of the first reference among those of the scope tree walk
+    private int firstUse = Integer.MAX_VALUE;
+    private int mungedIndex = NOT_MUNGED;
     private boolean markedForMunging = true;
 
     JavaScriptIdentifier(String value, ScriptOrFnScope declaredScope) {
@@ -29,12 +35,41 @@ class JavaScriptIdentifier extends JavaScriptToken {
         return declaredScope;
     }
 
+    /**
+     * @param value The original name, a name of the NameSequence, or null
+     */
     void setMungedValue(String value) {
-        mungedValue = value;
+        if (value == null) {
+            mungedIndex = NOT_MUNGED;
+        } else if (NameSequence.indexOf(value) >= 0) {
+            mungedIndex = NameSequence.indexOf(value);
+        } else if (value.equals(getValue())) {
+            mungedIndex = KEPT;
+        } else {
+            throw new IllegalArgumentException("Not a munged name: " + value);
+        }
     }
 
     String getMungedValue() {
-        return mungedValue;
+        if (mungedIndex >= 0) {
+            return NameSequence.get(mungedIndex);
+        }
+        return mungedIndex == KEPT ? getValue() : null;
+    }
+
+    /**
+     * @param index Index of the munged name in the NameSequence
+     */
+    void setMungedIndex(int index) {
+        mungedIndex = index;
+    }
+
+    /**
+     * @return Index of the munged name in the NameSequence, or a negative
+     *         value if the identifier was not munged or kept its name
+     */
+    int getMungedIndex() {
+        return mungedIndex;
     }
 
     void preventMunging() {
@@ -45,11 +80,20 @@ class JavaScriptIdentifier extends JavaScriptToken {
         return markedForMunging;
     }
 
-    void incrementRefcount() {
+    /**
+     * @param order Order of the reference among those of the scope tree
+     *        walk, which meets them in source order
+     */
+    void incrementRefcount(int order) {
         refcount++;
+        firstUse = Math.min(firstUse, order);
     }
 
     int getRefcount() {
         return refcount;
     }
+
+    int getFirstUse() {
+        return firstUse;
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The built-in passes run on the code generated from the JavaScript AST,
+ * in the order they run. The generator already emits the minimal
+ * whitespace, so these passes only lay out the result.
+ */
+final class JavaScriptPasses {
+
+    static final List<CompressorPass> PASSES = Collections.unmodifiableList(Arrays.asList(
+        new SimplePass("insert-preserved-comments", 100, true, JavaScriptPasses::insertPreservedComments),
+        new SimplePass("line-breaks", 200, true, JavaScriptPasses::lineBreaks)
+    ));
+
+    private JavaScriptPasses() {
+    }
+
+    /**
+     * @return Whether the passes of pipeline can run on code written in
+     *         pieces by a {@link StreamingWriter}, which is the case when
+     *         it only has the built-in passes
+     */
+    static boolean canStream(PassPipeline pipeline) {
+        return PASSES.equals(pipeline.getPasses());
+    }
+
+    private static String insertPreservedComments(String code, PassContext context) {
+        CommentPreserver commentPreserver = context.getCommentPreserver();
+        return commentPreserver != null ? commentPreserver.insertComments(code) : code;
+    }
+
+    // Add line breaks if requested
+    private static String lineBreaks(String code, PassContext context) {
+        return LineBreakingWriter.insertLineBreaks(code, context.getLineBreakPosition());
+    }
+
+    /**
+     * Runs the built-in passes on code written in pieces, as the generator
+     * streams it: the preserved comments are written first, then line
+     * breaks are inserted as the code goes through. The result is the same
+     * as running the passes on the whole code.
+     */
+    static final class StreamingWriter extends Writer {
+
+        private final LineBreakingWriter out;
+        private final int commentsLength;
+        private int codeLength;
+
+        StreamingWriter(Writer out, PassContext context) throws IOException {
+            this.out = new LineBreakingWriter(out, context.getLineBreakPosition());
+            String comments = insertPreservedComments("", context);
+            this.commentsLength = comments.length();
+            write(comments);
+            // Only count what the generator writes
+            this.codeLength = 0;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            codeLength += len;
+            out.write(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Flushes, but leaves the underlying writer open.
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        /**
+         * @return Statistics of the passes, without their time, which is
+         *         part of the time spent generating the code
+         */
+        List<PassStatistics> getStatistics() {
+            int withComments = codeLength + commentsLength;
+            return Collections.unmodifiableList(Arrays.asList(
+                new PassStatistics(PASSES.get(0).getName(), 0, codeLength, withComments),
+                new PassStatistics(PASSES.get(1).getName(), 0, withComments, withComments + out.getLineBreaks())));
+        }
+    }
+}
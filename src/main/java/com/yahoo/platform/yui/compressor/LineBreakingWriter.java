@@ -0,0 +1,448 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+
+/**
+ * Inserts line breaks into minified JavaScript as it is written, after the
+ * first semicolon, comma or closing brace at or past the given column.
+ * Strings, templates, regular expressions and comments are followed
+ * through the pieces written, so a line break never ends up inside them.
+ *
+ * Whether a slash starts a regular expression is decided from the code
+ * before it, which is enough for the code of the generator: a slash after
+ * the condition of an if, for, while or with statement starts one, and so
+ * does a slash after a closing brace, unless the brace closes an object
+ * literal or the body of a function expression.
+ */
+final class LineBreakingWriter extends Writer {
+
+    // Where the last character written is
+    private static final int CODE = 0;
+    private static final int STRING = 1;        // In a '...' or "..." string
+    private static final int TEMPLATE = 2;      // In the characters of a template
+    private static final int REGEXP = 3;
+    private static final int REGEXP_CLASS = 4;  // In a [...] class of a regular expression
+    private static final int SLASH = 5;         // After a slash that may start a comment
+    private static final int BLOCK_COMMENT = 6;
+    private static final int LINE_COMMENT = 7;
+
+    private final Writer out;
+    private final int linebreakpos;
+    private int column;
+    private int lineBreaks;
+    private boolean breakPending;
+
+    private int state = CODE;
+    private char quote;
+    private boolean escaped;
+    private boolean star;
+    // Whether the pending slash starts a regular expression, if no comment
+    private boolean slashStartsRegExp;
+
+    // The last character of code that is not whitespace
+    private char last;
+    // The identifier, keyword or number ending at last, if any
+    private final StringBuilder word = new StringBuilder();
+    private boolean wordIsProperty;
+    // Whether an expression, rather than a statement, can start where word
+    // starts
+    private boolean wordStartsExpression;
+    // Whether the function keyword was read, and its parameters not yet
+    private boolean inFunction;
+    private boolean functionIsExpression;
+    private boolean lastClosedCondition;
+    private boolean lastClosedParameters;
+    // Whether last is the > of an arrow
+    private boolean lastIsArrow;
+    // Whether last is a brace closing an expression
+    private boolean lastClosedExpression;
+    // Whether last is the slash closing a regular expression, rather than
+    // a division
+    private boolean lastClosedRegExp;
+    private boolean incDec;
+    // Whether whitespace follows last
+    private boolean spaced;
+    // Whether each open parenthesis holds the condition of a statement
+    private final BitSet conditions = new BitSet();
+    // Whether each open parenthesis holds the parameters of a function
+    // expression
+    private final BitSet parameters = new BitSet();
+    private int parentheses;
+    // Whether each open brace opens an expression
+    private final BitSet braces = new BitSet();
+    private int braceDepth;
+    // Open braces in each enclosing template substitution
+    private final Deque<int[]> substitutions = new ArrayDeque<>();
+
+    /**
+     * @param linebreakpos Column at or past which a line break is inserted,
+     *        or -1 to write the code as it is
+     */
+    LineBreakingWriter(Writer out, int linebreakpos) {
+        this.out = out;
+        this.linebreakpos = linebreakpos;
+    }
+
+    /**
+     * @return The code with line breaks inserted
+     */
+    static String insertLineBreaks(String code, int linebreakpos) {
+        if (linebreakpos <= 0 || code.length() <= linebreakpos) {
+            return code;
+        }
+        StringWriter result = new StringWriter(code.length() + code.length() / linebreakpos);
+        try (LineBreakingWriter writer = new LineBreakingWriter(result, linebreakpos)) {
+            writer.write(code);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return The number of line breaks inserted so far
+     */
+    int getLineBreaks() {
+        return lineBreaks;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (linebreakpos <= 0) {
+            out.write(cbuf, off, len);
+            return;
+        }
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            char c = cbuf[i];
+            if (breakPending) {
+                // A line break is only added when more code follows it
+                breakPending = false;
+                if (c != '\n') {
+                    out.write(cbuf, start, i - start);
+                    out.write('\n');
+                    start = i;
+                    lineBreaks++;
+                    column = 0;
+                }
+            }
+            column = c == '\n' ? 0 : column + 1;
+            if (scan(c) && column >= linebreakpos) {
+                breakPending = true;
+            }
+        }
+        out.write(cbuf, start, end - start);
+    }
+
+    /**
+     * Follows the code through c.
+     *
+     * @return Whether a line break can follow c
+     */
+    private boolean scan(char c) {
+        switch (state) {
+            case STRING:
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == quote) {
+                    endLiteral(c);
+                }
+                return false;
+            case TEMPLATE:
+                // star stands for a $ right before c here
+                boolean dollar = star;
+                star = false;
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '`') {
+                    endLiteral(c);
+                } else if (c == '{' && dollar) {
+                    substitutions.push(new int[1]);
+                    state = CODE;
+                    // An expression follows, as after a parenthesis
+                    last = '(';
+                    word.setLength(0);
+                } else {
+                    star = c == '$';
+                }
+                return false;
+            case REGEXP:
+            case REGEXP_CLASS:
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '[') {
+                    state = REGEXP_CLASS;
+                } else if (c == ']' && state == REGEXP_CLASS) {
+                    state = REGEXP;
+                } else if (c == '/' && state == REGEXP) {
+                    endLiteral(c);
+                }
+                return false;
+            case BLOCK_COMMENT:
+                if (c == '/' && star) {
+                    state = CODE;
+                }
+                star = c == '*';
+                return false;
+            case LINE_COMMENT:
+                if (c == '\n' || c == '\r') {
+                    state = CODE;
+                }
+                return false;
+            case SLASH:
+                if (c == '*') {
+                    state = BLOCK_COMMENT;
+                    star = false;
+                    return false;
+                }
+                if (c == '/') {
+                    state = LINE_COMMENT;
+                    return false;
+                }
+                if (slashStartsRegExp) {
+                    state = REGEXP;
+                    escaped = false;
+                    return scan(c);
+                }
+                // A division
+                state = CODE;
+                last = '/';
+                lastClosedRegExp = false;
+                word.setLength(0);
+                incDec = false;
+                break;
+            default:
+                break;
+        }
+        return scanCode(c);
+    }
+
+    private boolean scanCode(char c) {
+        if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            spaced = true;
+            return false;
+        }
+        boolean adjacent = !spaced;
+        spaced = false;
+        if (isIdentifierChar(c) || (c == '.' && adjacent && isNumber())) {
+            if (!adjacent || word.length() == 0) {
+                if (isFunctionKeyword()) {
+                    // The name of the function follows
+                    inFunction = true;
+                    functionIsExpression = wordStartsExpression;
+                } else if (last != '*') {
+                    inFunction = false;
+                }
+                wordStartsExpression = opensExpression();
+                word.setLength(0);
+                wordIsProperty = last == '.';
+            }
+            word.append(c);
+            last = c;
+            return false;
+        }
+        // Whether c ends a ++ or --
+        boolean update = adjacent && (c == '+' || c == '-') && last == c && !incDec;
+        incDec = update;
+        if (c == '(' || c == '*') {
+            if (isFunctionKeyword()) {
+                inFunction = true;
+                functionIsExpression = wordStartsExpression;
+            }
+        } else {
+            inFunction = false;
+        }
+        if (c == '/') {
+            slashStartsRegExp = startsRegExp();
+            state = SLASH;
+            return false;
+        }
+
+        boolean breakable = false;
+        switch (c) {
+            case '\'':
+            case '"':
+                state = STRING;
+                quote = c;
+                escaped = false;
+                return false;
+            case '`':
+                state = TEMPLATE;
+                escaped = false;
+                star = false;
+                return false;
+            case '(':
+                conditions.set(parentheses, isIdentifierChar(last) && !wordIsProperty &&
+                    isConditionKeyword(word));
+                parameters.set(parentheses++, inFunction && functionIsExpression);
+                inFunction = false;
+                break;
+            case ')':
+                if (parentheses > 0) {
+                    lastClosedCondition = conditions.get(--parentheses);
+                    lastClosedParameters = parameters.get(parentheses);
+                }
+                break;
+            case '{':
+                boolean expression = last == ')' ? lastClosedParameters : opensExpression();
+                braces.set(braceDepth++, expression);
+                if (!substitutions.isEmpty()) {
+                    substitutions.peek()[0]++;
+                }
+                break;
+            case '}':
+                if (!substitutions.isEmpty() && substitutions.peek()[0]-- == 0) {
+                    // The end of a substitution, the template goes on
+                    substitutions.pop();
+                    state = TEMPLATE;
+                    escaped = false;
+                    star = false;
+                    return false;
+                }
+                lastClosedExpression = braceDepth > 0 && braces.get(--braceDepth);
+                breakable = true;
+                break;
+            case ';':
+            case ',':
+                breakable = true;
+                break;
+            default:
+                break;
+        }
+        lastIsArrow = c == '>' && adjacent && last == '=';
+        last = c;
+        word.setLength(0);
+        return breakable;
+    }
+
+    private void endLiteral(char c) {
+        state = CODE;
+        last = c;
+        lastClosedRegExp = c == '/';
+        word.setLength(0);
+        incDec = false;
+        spaced = false;
+    }
+
+    private boolean startsRegExp() {
+        if (isIdentifierChar(last) || last == '.') {
+            // After a word it is a division, unless the word is a keyword
+            // preceding an expression
+            return !wordIsProperty && FastJavaScriptCompressor.REGEXP_KEYWORDS.contains(word.toString());
+        }
+        switch (last) {
+            case 0:
+                return true;
+            case '}':
+                return !lastClosedExpression;
+            case ')':
+                return lastClosedCondition;
+            case ']':
+            case '\'':
+            case '"':
+            case '`':
+                return false;
+            case '/':
+                // A regular expression is an operand, a division an operator
+                return !lastClosedRegExp;
+            case '+':
+            case '-':
+                // a++ / b
+                return !incDec;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return Whether an expression, rather than a statement, can start
+     *         after last, e.g. an object literal rather than a block
+     */
+    private boolean opensExpression() {
+        if (isIdentifierChar(last) || last == '.') {
+            String keyword = word.toString();
+            return !wordIsProperty && FastJavaScriptCompressor.REGEXP_KEYWORDS.contains(keyword) &&
+                !keyword.equals("do") && !keyword.equals("else");
+        }
+        switch (last) {
+            case 0:
+            case '{':
+            case '}':
+            case ';':
+            case ')':
+            case ']':
+            case '\'':
+            case '"':
+            case '`':
+                return false;
+            case '/':
+                return !lastClosedRegExp;
+            case ':':
+                // The value of a property, rather than a label or a case
+                return braceDepth > 0 && braces.get(braceDepth - 1);
+            case '>':
+                // The body of an arrow function is a block
+                return !lastIsArrow;
+            case '+':
+            case '-':
+                return !incDec;
+            default:
+                return true;
+        }
+    }
+
+    private boolean isFunctionKeyword() {
+        return !wordIsProperty && isIdentifierChar(last) && word.toString().equals("function");
+    }
+
+    private boolean isNumber() {
+        return word.length() > 0 && isIdentifierChar(last) &&
+            word.charAt(0) >= '0' && word.charAt(0) <= '9';
+    }
+
+    private static boolean isConditionKeyword(CharSequence word) {
+        String w = word.toString();
+        return w.equals("if") || w.equals("while") || w.equals("for") || w.equals("with");
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return c < 128 ?
+            (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+            (c >= '0' && c <= '9') || c == '$' || c == '_' || c == '\\' :
+            Character.isJavaIdentifierPart(c);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Flushes, but leaves the underlying writer open.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
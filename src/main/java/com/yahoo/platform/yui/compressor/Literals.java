@@ -0,0 +1,199 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import org.mozilla.javascript.ScriptRuntime;
+
+import java.nio.charset.CharsetEncoder;
+
+/**
+ * Writes number and string literals, in their shortest equivalent form
+ * when compacting: 1000 as 1e3, 0.5 as .5, large integers in hex when
+ * shorter, and strings between the quotes that need the fewest escapes.
+ */
+final class Literals {
+
+    // Integers up to this one are exact, and so is their hex form
+    private static final double MAX_EXACT_INTEGER = 9007199254740991.0;
+
+    private Literals() {
+    }
+
+    /**
+     * @param source The literal as written in the source
+     * @param value Its value
+     * @return The shortest literal of value, or source if it is as short
+     */
+    static String number(String source, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // Past the largest double, there is no shorter literal
+            return source;
+        }
+
+        // The shortest digits that read back as value, as JavaScript
+        // prints it: value is digits * 10^exponent
+        String printed = ScriptRuntime.toString(value);
+        int e = printed.indexOf('e');
+        String mantissa = e >= 0 ? printed.substring(0, e) : printed;
+        int exponent = e >= 0 ? Integer.parseInt(printed.substring(e + 1).replace("+", "")) : 0;
+        int point = mantissa.indexOf('.');
+        if (point >= 0) {
+            exponent -= mantissa.length() - point - 1;
+            mantissa = mantissa.substring(0, point) + mantissa.substring(point + 1);
+        }
+        int start = 0;
+        while (start < mantissa.length() - 1 && mantissa.charAt(start) == '0') {
+            start++;
+        }
+        int end = mantissa.length();
+        while (end > start + 1 && mantissa.charAt(end - 1) == '0') {
+            end--;
+            exponent++;
+        }
+        String digits = mantissa.substring(start, end);
+
+        String best;
+        if (digits.equals("0")) {
+            best = "0";
+        } else {
+            best = plain(digits, exponent);
+            best = shorter(best, exponent == 0 ? best : digits + "e" + exponent);
+            if (digits.length() > 1) {
+                best = shorter(best, digits.charAt(0) + "." + digits.substring(1) +
+                    "e" + (exponent + digits.length() - 1));
+            }
+            if (exponent >= 0 && value <= MAX_EXACT_INTEGER) {
+                best = shorter(best, "0x" + Long.toHexString((long) value));
+            }
+        }
+        return best.length() < source.length() ? best : source;
+    }
+
+    private static String plain(String digits, int exponent) {
+        StringBuilder result = new StringBuilder(digits);
+        if (exponent >= 0) {
+            for (int i = 0; i < exponent; i++) {
+                result.append('0');
+            }
+        } else if (-exponent < digits.length()) {
+            result.insert(digits.length() + exponent, '.');
+        } else {
+            for (int i = digits.length(); i < -exponent; i++) {
+                result.insert(0, '0');
+            }
+            result.insert(0, '.');
+        }
+        return result.toString();
+    }
+
+    private static String shorter(String best, String candidate) {
+        return candidate.length() < best.length() ? candidate : best;
+    }
+
+    /**
+     * @return The quote of the string literal needing the fewest escapes,
+     *         original if both need as many
+     */
+    static char quoteFor(String value, char original) {
+        int doubles = 0;
+        int singles = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                doubles++;
+            } else if (c == '\'') {
+                singles++;
+            }
+        }
+        if (doubles == singles) {
+            return original;
+        }
+        return doubles < singles ? '"' : '\'';
+    }
+
+    /**
+     * Control characters, the line terminators U+2028 and U+2029, and
+     * unpaired surrogates are always escaped.
+     *
+     * @param encoder Encoder of the charset the code is written in, the
+     *        characters it cannot encode being escaped, or null to write
+     *        the other characters as they are
+     * @return The string literal of value, between the given quotes
+     */
+    static String string(String value, char quote, CharsetEncoder encoder) {
+        StringBuilder literal = new StringBuilder(value.length() + 2);
+        literal.append(quote);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\r':
+                    literal.append("\\r");
+                    break;
+                case '\t':
+                    literal.append("\\t");
+                    break;
+                case '\b':
+                    literal.append("\\b");
+                    break;
+                case '\f':
+                    literal.append("\\f");
+                    break;
+                case '"':
+                case '\'':
+                    if (c == quote) {
+                        literal.append('\\');
+                    }
+                    literal.append(c);
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        escape(literal, c);
+                    } else if (c < 0x80) {
+                        literal.append(c);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < value.length() &&
+                            Character.isLowSurrogate(value.charAt(i + 1))) {
+                        String pair = value.substring(i, i + 2);
+                        if (encoder == null || encoder.canEncode(pair)) {
+                            literal.append(pair);
+                        } else {
+                            escape(literal, c);
+                            escape(literal, value.charAt(i + 1));
+                        }
+                        i++;
+                    } else if (Character.isSurrogate(c)) {
+                        // Unpaired, it has no encoding
+                        escape(literal, c);
+                    } else if (encoder == null || encoder.canEncode(c)) {
+                        literal.append(c);
+                    } else {
+                        escape(literal, c);
+                    }
+                    break;
+            }
+        }
+        literal.append(quote);
+        return literal.toString();
+    }
+
+    private static void escape(StringBuilder literal, char c) {
+        String hex = Integer.toHexString(c);
+        int digits = c < 0x100 ? 2 : 4;
+        literal.append(c < 0x100 ? "\\x" : "\\u");
+        for (int i = hex.length(); i < digits; i++) {
+            literal.append('0');
+        }
+        literal.append(hex);
+    }
+}
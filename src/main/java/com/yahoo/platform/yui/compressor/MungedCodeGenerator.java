@@ -11,7 +11,15 @@ package com.yahoo.platform.yui.compressor;
 import org.mozilla.javascript.Node;
 import org.mozilla.javascript.Token;
 import org.mozilla.javascript.ast.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Generates minified JavaScript code with munged variable names.
@@ -19,27 +27,303 @@ import java.util.*;
  */
 public class MungedCodeGenerator {
 
+    // Nesting depth past which visitNode leaves nodes to the work stack
+    private static final int MAX_DEPTH = 256;
+    // Output size past which it is written out at the next statement end
+    private static final int FLUSH_SIZE = 8192;
+    // Source length from which functions are generated by a task of their own
+    private static final int SPLIT_SIZE = 8192;
+
     private ScopeBuilder scopeBuilder;
     private boolean munge;
+    private boolean preserveAllSemiColons;
     private StringBuilder output;
 
+    // Depth of the current visitNode call
+    private int depth;
+    // Output preceding the current one, when nodes were deferred: Strings,
+    // and Deferred holes to be filled with the output of their node
+    private List<Object> pieces;
+    private Deque<Deferred> deferred = new ArrayDeque<>();
+    // Destination of the output while it is streamed, or null
+    private Writer writer;
+    private char[] flushBuffer;
+    // Whether large functions are generated by forked tasks
+    private boolean splitting;
+    // Nodes left as holes by generateStatement(), or null
+    private Set<? extends AstNode> holes;
+    // Whether literals are written in their shortest form, and the charset
+    // of the output, if known
+    private boolean compactLiterals;
+    private Charset charset;
+    private CharsetEncoder encoder;
+    // Nodes written in a shorter equivalent form, see ExpressionOptimizer
+    private Set<AstNode> rewrites = Collections.emptySet();
+
     public MungedCodeGenerator(ScopeBuilder scopeBuilder, boolean munge) {
+        this(scopeBuilder, munge, true);
+    }
+
+    /**
+     * @param preserveAllSemiColons false to omit the semicolon terminating
+     *        the last statement of a block
+     */
+    public MungedCodeGenerator(ScopeBuilder scopeBuilder, boolean munge,
+                               boolean preserveAllSemiColons) {
         this.scopeBuilder = scopeBuilder;
         this.munge = munge;
+        this.preserveAllSemiColons = preserveAllSemiColons;
         this.output = new StringBuilder();
     }
 
+    /**
+     * Writes the number and string literals in their shortest equivalent
+     * form. The characters of strings that charset cannot encode are
+     * escaped.
+     *
+     * @param charset Charset the code is written in, or null if the
+     *        characters are written as they are
+     */
+    void setCompactLiterals(boolean compactLiterals, Charset charset) {
+        this.compactLiterals = compactLiterals;
+        this.charset = charset;
+        this.encoder = null;
+    }
+
+    /**
+     * @param rewrites Nodes to write in a shorter equivalent form, as
+     *        planned by {@link ExpressionOptimizer#plan}, or null for none
+     */
+    void setRewrites(Set<AstNode> rewrites) {
+        this.rewrites = rewrites != null ? rewrites : Collections.emptySet();
+    }
+
     public String generate(AstRoot root) {
+        writer = null;
+        return generateRemaining(root);
+    }
+
+    /**
+     * Writes the code to out as it is generated. The output is written out
+     * at statement ends once it exceeds a few kilobytes, so only about that
+     * much, plus the statement being generated, is held in memory.
+     */
+    public void generate(AstRoot root, Writer out) throws IOException {
+        writer = out;
+        try {
+            out.write(generateRemaining(root));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            writer = null;
+        }
+    }
+
+    /**
+     * Generates the code in pool, where the functions of at least a few
+     * kilobytes of source are generated concurrently, each by a task of
+     * its own. The code is the same as the one generated sequentially.
+     * The scopes must not be modified meanwhile, e.g. by munging.
+     */
+    public String generate(AstRoot root, ForkJoinPool pool) {
+        writer = null;
+        splitting = true;
+        try {
+            return pool.invoke(new RecursiveTask<String>() {
+                @Override
+                protected String compute() {
+                    return generateRemaining(root);
+                }
+            });
+        } finally {
+            splitting = false;
+        }
+    }
+
+    /**
+     * Generates a statement of the script, with the semicolon that follows
+     * it, as generate() does within the code of the whole script. The given
+     * nodes are left out, each leaving a hole in the pieces returned, where
+     * the node itself is. The pieces are joined as by join().
+     */
+    List<Object> generateStatement(AstNode statement, Set<? extends AstNode> nodes) {
+        writer = null;
+        holes = nodes;
+        List<Object> result = new ArrayList<>();
+        try {
+            Deque<Iterator<Object>> stack = new ArrayDeque<>();
+            stack.push(generatePieces(statement).iterator());
+            while (!stack.isEmpty()) {
+                Iterator<Object> it = stack.peek();
+                if (!it.hasNext()) {
+                    stack.pop();
+                } else {
+                    Object piece = it.next();
+                    if (!(piece instanceof Deferred)) {
+                        result.add(piece);
+                    } else if (((Deferred) piece).pieces != null) {
+                        stack.push(((Deferred) piece).pieces.iterator());
+                    } else {
+                        result.add(((Deferred) piece).node);
+                    }
+                }
+            }
+        } finally {
+            holes = null;
+        }
+        if (needsSemicolon(statement)) {
+            result.add(";");
+        }
+        return result;
+    }
+
+    /**
+     * Generates a node alone, as generate() does within the code of the
+     * whole script.
+     */
+    String generateNode(AstNode node) {
+        writer = null;
+        List<Object> result = generatePieces(node);
+        return result.size() == 1 ? (String) result.get(0) : join(result);
+    }
+
+    /**
+     * @return The code not written out yet
+     */
+    private String generateRemaining(AstRoot root) {
+        List<Object> result = generatePieces(root);
+        return result.size() == 1 ? (String) result.get(0) : join(result);
+    }
+
+    private List<Object> generatePieces(AstNode node) {
         output.setLength(0);
-        visitNode(root);
-        return output.toString();
+        depth = 0;
+        pieces = null;
+        deferred.clear();
+
+        visitNode(node);
+        // Deferred nodes are generated apart, and joined at the end
+        writer = null;
+        List<Object> result = takePieces();
+
+        // Generate the nodes that were too deeply nested, each starting
+        // again at depth 0, until none are left
+        while (!deferred.isEmpty()) {
+            Deferred hole = deferred.pop();
+            visitNode(hole.node);
+            hole.pieces = takePieces();
+        }
+        return result;
     }
 
     private void visitNode(AstNode node) {
         if (node == null) {
             return;
         }
+        if (holes != null && holes.contains(node)) {
+            addHole(node);
+            return;
+        }
+        if (depth >= MAX_DEPTH) {
+            // Leave a hole in the output instead of recursing any deeper
+            deferred.push(addHole(node));
+            return;
+        }
+        if (splitting && depth > 0 && node instanceof FunctionNode &&
+                node.getLength() >= SPLIT_SIZE) {
+            addHole(node).task = new Chunk(node).fork();
+            return;
+        }
+        depth++;
+        visitNodeOfType(node);
+        depth--;
+    }
+
+    private Deferred addHole(AstNode node) {
+        if (pieces == null) {
+            pieces = new ArrayList<>();
+        }
+        pieces.add(output.toString());
+        output.setLength(0);
+        Deferred hole = new Deferred(node);
+        pieces.add(hole);
+        return hole;
+    }
 
+    /**
+     * Writes out the output so far when streaming, once it is large enough.
+     * Called at statement ends, but not while nodes are deferred, as their
+     * holes have to be filled before the output that follows them.
+     */
+    private void statementEnd() {
+        int end = output.length() - 2;
+        if (writer == null || pieces != null || end < FLUSH_SIZE) {
+            return;
+        }
+        // The last characters are kept for emit() to look at
+        if (flushBuffer == null || flushBuffer.length < end) {
+            flushBuffer = new char[end];
+        }
+        output.getChars(0, end, flushBuffer, 0);
+        try {
+            writer.write(flushBuffer, 0, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        output.delete(0, end);
+    }
+
+    /**
+     * @return The output since the last call, as pieces
+     */
+    private List<Object> takePieces() {
+        List<Object> result = pieces != null ? pieces : new ArrayList<>(1);
+        result.add(output.toString());
+        output.setLength(0);
+        pieces = null;
+        return result;
+    }
+
+    /**
+     * Concatenates output pieces, filling the holes. The separator check of
+     * emit() is repeated at the edges of the holes, where the pieces were
+     * generated apart.
+     */
+    private String join(List<Object> result) {
+        StringBuilder sb = new StringBuilder();
+        Deque<Iterator<Object>> stack = new ArrayDeque<>();
+        stack.push(result.iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Object> it = stack.peek();
+            if (!it.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Object piece = it.next();
+            if (piece instanceof Deferred) {
+                Deferred hole = (Deferred) piece;
+                if (hole.pieces == null) {
+                    hole.pieces = hole.task.join();
+                }
+                stack.push(hole.pieces.iterator());
+            } else {
+                String text = (String) piece;
+                if (!text.isEmpty()) {
+                    if (sb.length() > 0 && needsSeparator(sb, text)) {
+                        sb.append(' ');
+                    }
+                    sb.append(text);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private void visitNodeOfType(AstNode node) {
+        if (!rewrites.isEmpty() && rewrites.contains(node)) {
+            visitRewrite(node);
+            return;
+        }
         int type = node.getType();
 
         switch (type) {
@@ -98,7 +382,7 @@ public class MungedCodeGenerator {
                 visitSwitchStatement((SwitchStatement) node);
                 break;
             case Token.CASE:
-                visitSwitchCase((SwitchCase) node);
+                visitSwitchCase((SwitchCase) node, false);
                 break;
             case Token.BREAK:
                 visitBreakStatement((BreakStatement) node);
@@ -124,22 +408,22 @@ public class MungedCodeGenerator {
 
             // Literals
             case Token.NUMBER:
-                output.append(((NumberLiteral) node).getValue());
+                emit(numberLiteral((NumberLiteral) node));
                 break;
             case Token.STRING:
                 visitStringLiteral((StringLiteral) node);
                 break;
             case Token.TRUE:
-                output.append("true");
+                emit("true");
                 break;
             case Token.FALSE:
-                output.append("false");
+                emit("false");
                 break;
             case Token.NULL:
-                output.append("null");
+                emit("null");
                 break;
             case Token.THIS:
-                output.append("this");
+                emit("this");
                 break;
             case Token.REGEXP:
                 visitRegExpLiteral((RegExpLiteral) node);
@@ -277,13 +561,13 @@ public class MungedCodeGenerator {
                 visitUnaryExpression((UnaryExpression) node, "-");
                 break;
             case Token.TYPEOF:
-                visitKeywordUnary((UnaryExpression) node, "typeof ");
+                visitKeywordUnary((UnaryExpression) node, "typeof");
                 break;
             case Token.VOID:
-                visitKeywordUnary((UnaryExpression) node, "void ");
+                visitKeywordUnary((UnaryExpression) node, "void");
                 break;
             case Token.DELPROP:
-                visitKeywordUnary((UnaryExpression) node, "delete ");
+                visitKeywordUnary((UnaryExpression) node, "delete");
                 break;
 
             // Increment/Decrement
@@ -300,10 +584,10 @@ public class MungedCodeGenerator {
                 visitConditionalExpression((ConditionalExpression) node);
                 break;
             case Token.IN:
-                visitInfixExpression((InfixExpression) node, " in ");
+                visitInfixExpression((InfixExpression) node, "in");
                 break;
             case Token.INSTANCEOF:
-                visitInfixExpression((InfixExpression) node, " instanceof ");
+                visitInfixExpression((InfixExpression) node, "instanceof");
                 break;
 
             // Member access
@@ -347,7 +631,7 @@ public class MungedCodeGenerator {
                     System.err.println("Warning: Using toSource() for unsupported node type: " +
                         type + " (" + node.getClass().getSimpleName() + ")");
                 }
-                output.append(node.toSource());
+                emitSource(node.toSource());
                 break;
         }
     }
@@ -357,8 +641,9 @@ public class MungedCodeGenerator {
             if (child instanceof AstNode) {
                 visitNode((AstNode) child);
                 if (needsSemicolon((AstNode) child)) {
-                    output.append(";");
+                    emit(";");
                 }
+                statementEnd();
             }
         }
     }
@@ -372,25 +657,24 @@ public class MungedCodeGenerator {
 
         // Generator function
         if (fn.isGenerator()) {
-            output.append("function*");
+            emit("function*");
         } else {
-            output.append("function");
+            emit("function");
         }
 
         // Function name
         Name fnName = fn.getFunctionName();
         if (fnName != null) {
-            output.append(" ");
-            output.append(fnName.getIdentifier());
+            emit(getMungedName(fnName));
         }
 
-        output.append("(");
+        emit("(");
 
         // Parameters
         List<AstNode> params = fn.getParams();
         visitParameterList(params, fn);
 
-        output.append(")");
+        emit(")");
 
         // Body
         AstNode body = fn.getBody();
@@ -405,15 +689,14 @@ public class MungedCodeGenerator {
         // Parameters
         if (params.size() == 1 && params.get(0) instanceof Name) {
             // Single parameter without parentheses (may need them for munging consistency)
-            String paramName = ((Name) params.get(0)).getIdentifier();
-            output.append(getMungedName(paramName, arrow));
+            emit(getMungedName((Name) params.get(0)));
         } else {
-            output.append("(");
+            emit("(");
             visitParameterList(params, arrow);
-            output.append(")");
+            emit(")");
         }
 
-        output.append("=>");
+        emit("=>");
 
         // Body
         AstNode body = arrow.getBody();
@@ -430,11 +713,18 @@ public class MungedCodeGenerator {
 
     private void visitParameterList(List<AstNode> params, FunctionNode fn) {
         for (int i = 0; i < params.size(); i++) {
-            if (i > 0) output.append(",");
+            if (i > 0) emit(",");
             AstNode param = params.get(i);
+            if (i == params.size() - 1 && fn.hasRestParameter()) {
+                emit("...");
+            }
             if (param instanceof Name) {
-                String paramName = ((Name) param).getIdentifier();
-                output.append(getMungedName(paramName, fn));
+                emit(getMungedName((Name) param));
+                AstNode defaultValue = getDefaultValue(fn, ((Name) param).getIdentifier());
+                if (defaultValue != null) {
+                    emit("=");
+                    visitNode(defaultValue);
+                }
             } else {
                 // Complex parameter (destructuring, default value, rest)
                 visitNode(param);
@@ -442,6 +732,23 @@ public class MungedCodeGenerator {
         }
     }
 
+    /**
+     * Default values of simple parameters are kept apart from the parameter
+     * list, as (name, value) pairs
+     */
+    private static AstNode getDefaultValue(FunctionNode fn, String paramName) {
+        List<Object> defaultParams = fn.getDefaultParams();
+        if (defaultParams != null) {
+            for (int i = 0; i + 1 < defaultParams.size(); i += 2) {
+                if (paramName.equals(defaultParams.get(i))
+                        && defaultParams.get(i + 1) instanceof AstNode) {
+                    return (AstNode) defaultParams.get(i + 1);
+                }
+            }
+        }
+        return null;
+    }
+
     private void visitName(Name name) {
         String identifier = name.getIdentifier();
 
@@ -451,45 +758,34 @@ public class MungedCodeGenerator {
             PropertyGet pg = (PropertyGet) parent;
             if (pg.getProperty() == name) {
                 // This is a property name, don't munge it
-                output.append(identifier);
-                return;
-            }
-        }
-
-        // Check if this is an object property key
-        if (parent instanceof ObjectProperty) {
-            ObjectProperty prop = (ObjectProperty) parent;
-            if (prop.getLeft() == name && !prop.isShorthand()) {
-                // This is a property key, don't munge it
-                output.append(identifier);
+                emit(identifier);
                 return;
             }
         }
 
         // Munge the variable name
-        output.append(getMungedName(identifier, name));
+        emit(getMungedName(name));
     }
 
     private void visitVariableDeclaration(VariableDeclaration varDecl) {
         int declType = varDecl.getType();
         if (declType == Token.LET) {
-            output.append("let ");
+            emit("let");
         } else if (declType == Token.CONST) {
-            output.append("const ");
+            emit("const");
         } else {
-            output.append("var ");
+            emit("var");
         }
 
         List<VariableInitializer> variables = varDecl.getVariables();
         for (int i = 0; i < variables.size(); i++) {
-            if (i > 0) output.append(",");
+            if (i > 0) emit(",");
 
             VariableInitializer vi = variables.get(i);
             AstNode target = vi.getTarget();
 
             if (target instanceof Name) {
-                String varName = ((Name) target).getIdentifier();
-                output.append(getMungedName(varName, varDecl));
+                emit(getMungedName((Name) target));
             } else {
                 // Destructuring pattern
                 visitNode(target);
@@ -497,7 +793,7 @@ public class MungedCodeGenerator {
 
             AstNode initializer = vi.getInitializer();
             if (initializer != null) {
-                output.append("=");
+                emit("=");
                 visitNode(initializer);
             }
         }
@@ -508,240 +804,251 @@ public class MungedCodeGenerator {
     }
 
     private void visitReturnStatement(ReturnStatement ret) {
-        output.append("return");
+        emit("return");
         AstNode value = ret.getReturnValue();
         if (value != null) {
-            output.append(" ");
             visitNode(value);
         }
     }
 
     private void visitIfStatement(IfStatement ifStmt) {
-        output.append("if(");
+        emit("if(");
         visitNode(ifStmt.getCondition());
-        output.append(")");
+        emit(")");
 
         AstNode thenPart = ifStmt.getThenPart();
         boolean needsBraces = !(thenPart instanceof Block);
-        if (needsBraces) output.append("{");
+        if (needsBraces) emit("{");
         visitNode(thenPart);
-        if (needsBraces && needsSemicolon(thenPart)) output.append(";");
-        if (needsBraces) output.append("}");
+        if (needsBraces && needsSemicolon(thenPart) && preserveAllSemiColons) emit(";");
+        if (needsBraces) emit("}");
 
         AstNode elsePart = ifStmt.getElsePart();
         if (elsePart != null) {
-            output.append("else");
+            emit("else");
             if (elsePart instanceof IfStatement) {
-                output.append(" ");
                 visitNode(elsePart);
             } else {
                 boolean elseNeedsBraces = !(elsePart instanceof Block);
-                if (elseNeedsBraces) output.append("{");
+                if (elseNeedsBraces) emit("{");
                 visitNode(elsePart);
-                if (elseNeedsBraces && needsSemicolon(elsePart)) output.append(";");
-                if (elseNeedsBraces) output.append("}");
+                if (elseNeedsBraces && needsSemicolon(elsePart) && preserveAllSemiColons) emit(";");
+                if (elseNeedsBraces) emit("}");
             }
         }
     }
 
     private void visitForLoop(ForLoop forLoop) {
-        output.append("for(");
+        emit("for(");
 
         AstNode initializer = forLoop.getInitializer();
         if (initializer != null) {
             visitNode(initializer);
         }
-        output.append(";");
+        emit(";");
 
         AstNode condition = forLoop.getCondition();
         if (condition != null) {
             visitNode(condition);
         }
-        output.append(";");
+        emit(";");
 
         AstNode increment = forLoop.getIncrement();
         if (increment != null) {
             visitNode(increment);
         }
-        output.append(")");
+        emit(")");
 
         AstNode body = forLoop.getBody();
         visitLoopBody(body);
     }
 
     private void visitForInLoop(ForInLoop forIn) {
-        output.append("for(");
+        emit("for(");
         visitNode(forIn.getIterator());
         if (forIn.isForOf()) {
-            output.append(" of ");
+            emit("of");
         } else if (forIn.isForEach()) {
-            output.append(" each in ");
+            emit("each");
+            emit("in");
         } else {
-            output.append(" in ");
+            emit("in");
         }
         visitNode(forIn.getIteratedObject());
-        output.append(")");
+        emit(")");
 
         AstNode body = forIn.getBody();
         visitLoopBody(body);
     }
 
     private void visitWhileLoop(WhileLoop whileLoop) {
-        output.append("while(");
+        emit("while(");
         visitNode(whileLoop.getCondition());
-        output.append(")");
+        emit(")");
 
         AstNode body = whileLoop.getBody();
         visitLoopBody(body);
     }
 
     private void visitDoLoop(DoLoop doLoop) {
-        output.append("do");
+        emit("do");
 
         AstNode body = doLoop.getBody();
         if (body instanceof Block) {
             visitNode(body);
         } else {
-            output.append("{");
+            emit("{");
             visitNode(body);
-            if (needsSemicolon(body)) output.append(";");
-            output.append("}");
+            if (needsSemicolon(body) && preserveAllSemiColons) emit(";");
+            emit("}");
         }
 
-        output.append("while(");
+        emit("while(");
         visitNode(doLoop.getCondition());
-        output.append(")");
+        emit(")");
     }
 
     private void visitLoopBody(AstNode body) {
         if (body instanceof Block) {
             visitNode(body);
         } else if (body instanceof EmptyStatement) {
-            output.append(";");
+            emit(";");
         } else {
-            output.append("{");
+            emit("{");
             visitNode(body);
-            if (needsSemicolon(body)) output.append(";");
-            output.append("}");
+            if (needsSemicolon(body) && preserveAllSemiColons) emit(";");
+            emit("}");
         }
     }
 
     private void visitSwitchStatement(SwitchStatement switchStmt) {
-        output.append("switch(");
+        emit("switch(");
         visitNode(switchStmt.getExpression());
-        output.append("){");
+        emit("){");
 
-        for (SwitchCase caseNode : switchStmt.getCases()) {
-            visitSwitchCase(caseNode);
+        List<SwitchCase> cases = switchStmt.getCases();
+        for (int i = 0; i < cases.size(); i++) {
+            visitSwitchCase(cases.get(i), i == cases.size() - 1);
         }
 
-        output.append("}");
+        emit("}");
     }
 
-    private void visitSwitchCase(SwitchCase caseNode) {
+    private void visitSwitchCase(SwitchCase caseNode, boolean lastCase) {
         AstNode expression = caseNode.getExpression();
         if (expression == null) {
-            output.append("default:");
+            emit("default:");
         } else {
-            output.append("case ");
+            emit("case");
             visitNode(expression);
-            output.append(":");
+            emit(":");
         }
 
         List<AstNode> statements = caseNode.getStatements();
         if (statements != null) {
-            for (AstNode stmt : statements) {
+            for (int i = 0; i < statements.size(); i++) {
+                AstNode stmt = statements.get(i);
                 visitNode(stmt);
-                if (needsSemicolon(stmt)) {
-                    output.append(";");
+                if (needsSemicolon(stmt) &&
+                        (preserveAllSemiColons || !lastCase || i < statements.size() - 1)) {
+                    emit(";");
                 }
             }
         }
     }
 
     private void visitBreakStatement(BreakStatement breakStmt) {
-        output.append("break");
+        emit("break");
         Name label = breakStmt.getBreakLabel();
         if (label != null) {
-            output.append(" ");
-            output.append(label.getIdentifier());
+            emit(label.getIdentifier());
         }
     }
 
     private void visitContinueStatement(ContinueStatement contStmt) {
-        output.append("continue");
+        emit("continue");
         Name label = contStmt.getLabel();
         if (label != null) {
-            output.append(" ");
-            output.append(label.getIdentifier());
+            emit(label.getIdentifier());
         }
     }
 
     private void visitThrowStatement(ThrowStatement throwStmt) {
-        output.append("throw ");
+        emit("throw");
         visitNode(throwStmt.getExpression());
     }
 
     private void visitTryStatement(TryStatement tryStmt) {
-        output.append("try");
+        emit("try");
         visitNode(tryStmt.getTryBlock());
 
         for (CatchClause clause : tryStmt.getCatchClauses()) {
-            output.append("catch(");
+            emit("catch(");
             Name varName = clause.getVarName();
             if (varName != null) {
-                output.append(getMungedName(varName.getIdentifier(), clause));
+                emit(getMungedName(varName));
             }
-            output.append(")");
+            emit(")");
             visitNode(clause.getBody());
         }
 
         AstNode finallyBlock = tryStmt.getFinallyBlock();
         if (finallyBlock != null) {
-            output.append("finally");
+            emit("finally");
             visitNode(finallyBlock);
         }
     }
 
     private void visitLabeledStatement(LabeledStatement labeled) {
         for (Label label : labeled.getLabels()) {
-            output.append(label.getName());
-            output.append(":");
+            emit(label.getName());
+            emit(":");
         }
         visitNode(labeled.getStatement());
     }
 
     private void visitWithStatement(WithStatement withStmt) {
-        output.append("with(");
+        emit("with(");
         visitNode(withStmt.getExpression());
-        output.append(")");
+        emit(")");
         visitNode(withStmt.getStatement());
     }
 
     private void visitBlock(Block block) {
-        output.append("{");
+        emit("{");
         for (Node child : block) {
             if (child instanceof AstNode) {
                 visitNode((AstNode) child);
-                if (needsSemicolon((AstNode) child)) {
-                    output.append(";");
+                if (needsSemicolon((AstNode) child) &&
+                        (preserveAllSemiColons || child.getNext() != null)) {
+                    emit(";");
                 }
+                statementEnd();
             }
         }
-        output.append("}");
+        emit("}");
     }
 
     private void visitScope(Scope scope) {
-        output.append("{");
+        emit("{");
         for (Node child : scope) {
             if (child instanceof AstNode) {
                 visitNode((AstNode) child);
-                if (needsSemicolon((AstNode) child)) {
-                    output.append(";");
+                if (needsSemicolon((AstNode) child) &&
+                        (preserveAllSemiColons || child.getNext() != null)) {
+                    emit(";");
                 }
+                statementEnd();
             }
         }
-        output.append("}");
+        emit("}");
+    }
+
+    private String numberLiteral(NumberLiteral number) {
+        if (!compactLiterals) {
+            return number.getValue();
+        }
+        return Literals.number(number.getValue(), number.getNumber());
     }
 
     private void visitStringLiteral(StringLiteral str) {
@@ -751,71 +1058,36 @@ public class MungedCodeGenerator {
         if (quoteChar != '"' && quoteChar != '\'') {
             quoteChar = '"';
         }
+        if (value == null) {
+            value = "";
+        }
 
-        output.append(quoteChar);
-
-        if (value != null) {
-            for (int i = 0; i < value.length(); i++) {
-                char c = value.charAt(i);
-                switch (c) {
-                    case '\\':
-                        output.append("\\\\");
-                        break;
-                    case '\n':
-                        output.append("\\n");
-                        break;
-                    case '\r':
-                        output.append("\\r");
-                        break;
-                    case '\t':
-                        output.append("\\t");
-                        break;
-                    case '\b':
-                        output.append("\\b");
-                        break;
-                    case '\f':
-                        output.append("\\f");
-                        break;
-                    case '"':
-                        if (quoteChar == '"') {
-                            output.append("\\\"");
-                        } else {
-                            output.append(c);
-                        }
-                        break;
-                    case '\'':
-                        if (quoteChar == '\'') {
-                            output.append("\\'");
-                        } else {
-                            output.append(c);
-                        }
-                        break;
-                    default:
-                        output.append(c);
-                        break;
+        CharsetEncoder stringEncoder = null;
+        if (compactLiterals) {
+            quoteChar = Literals.quoteFor(value, quoteChar);
+            if (charset != null) {
+                if (encoder == null) {
+                    encoder = charset.newEncoder();
                 }
+                stringEncoder = encoder;
             }
         }
-
-        output.append(quoteChar);
+        emit(Literals.string(value, quoteChar, stringEncoder));
     }
 
     private void visitRegExpLiteral(RegExpLiteral regexp) {
-        output.append("/");
-        output.append(regexp.getValue());
-        output.append("/");
         String flags = regexp.getFlags();
-        if (flags != null) {
-            output.append(flags);
-        }
+        emit("/" + regexp.getValue() + "/" + (flags != null ? flags : ""));
     }
 
     private void visitTemplateLiteral(TemplateLiteral template) {
-        output.append('`');
+        // The characters of a template are emitted as they are, only the
+        // start of the template needs to be separated from the previous token
+        emit("`");
         List<AstNode> elements = template.getElements();
         for (AstNode element : elements) {
             if (element instanceof TemplateCharacters) {
-                output.append(((TemplateCharacters) element).getValue());
+                output.append(((TemplateCharacters) element).getRawValue());
             } else {
                 output.append("${");
                 visitNode(element);
@@ -838,29 +1110,29 @@ public class MungedCodeGenerator {
         boolean needsLeftParen = needsParentheses(left, expr, true);
         boolean needsRightParen = needsParentheses(right, expr, false);
 
-        if (needsLeftParen) output.append("(");
+        if (needsLeftParen) emit("(");
         visitNode(left);
-        if (needsLeftParen) output.append(")");
+        if (needsLeftParen) emit(")");
 
-        output.append(operator);
+        emit(operator);
 
-        if (needsRightParen) output.append("(");
+        if (needsRightParen) emit("(");
         visitNode(right);
-        if (needsRightParen) output.append(")");
+        if (needsRightParen) emit(")");
     }
 
     private void visitUnaryExpression(UnaryExpression expr, String operator) {
-        output.append(operator);
+        emit(operator);
         AstNode operand = expr.getOperand();
         boolean needsParen = operand instanceof InfixExpression ||
                             operand instanceof ConditionalExpression;
-        if (needsParen) output.append("(");
+        if (needsParen) emit("(");
         visitNode(operand);
-        if (needsParen) output.append(")");
+        if (needsParen) emit(")");
     }
 
     private void visitKeywordUnary(UnaryExpression expr, String keyword) {
-        output.append(keyword);
+        emit(keyword);
         visitNode(expr.getOperand());
     }
 
@@ -869,50 +1141,50 @@ public class MungedCodeGenerator {
         AstNode operand = expr.getOperand();
 
         if (expr.isPrefix()) {
-            output.append(operator);
+            emit(operator);
             visitNode(operand);
         } else {
             visitNode(operand);
-            output.append(operator);
+            emit(operator);
         }
     }
 
     private void visitConditionalExpression(ConditionalExpression expr) {
         visitNode(expr.getTestExpression());
-        output.append("?");
+        emit("?");
         visitNode(expr.getTrueExpression());
-        output.append(":");
+        emit(":");
         visitNode(expr.getFalseExpression());
     }
 
     private void visitFunctionCall(FunctionCall call) {
         visitNode(call.getTarget());
-        output.append("(");
+        emit("(");
 
         List<AstNode> args = call.getArguments();
         for (int i = 0; i < args.size(); i++) {
-            if (i > 0) output.append(",");
+            if (i > 0) emit(",");
             visitNode(args.get(i));
         }
 
-        output.append(")");
+        emit(")");
     }
 
     private void visitNewExpression(NewExpression newExpr) {
-        output.append("new ");
+        emit("new");
         visitNode(newExpr.getTarget());
 
         List<AstNode> args = newExpr.getArguments();
         if (args != null && !args.isEmpty()) {
-            output.append("(");
+            emit("(");
             for (int i = 0; i < args.size(); i++) {
-                if (i > 0) output.append(",");
+                if (i > 0) emit(",");
                 visitNode(args.get(i));
             }
-            output.append(")");
+            emit(")");
         } else if (newExpr.getInitializer() == null) {
             // Include empty parentheses for clarity
-            output.append("()");
+            emit("()");
         }
 
         AstNode initializer = newExpr.getInitializer();
@@ -921,83 +1193,134 @@ public class MungedCodeGenerator {
         }
     }
 
+    /**
+     * Writes the shorter form of a node the ExpressionOptimizer found
+     */
+    private void visitRewrite(AstNode node) {
+        switch (node.getType()) {
+            case Token.GETELEM:
+                ElementGet eg = (ElementGet) node;
+                visitPropertyTarget(eg.getTarget());
+                emit(((StringLiteral) eg.getElement()).getValue());
+                break;
+            case Token.TRUE:
+                emit("!0");
+                break;
+            case Token.FALSE:
+                emit("!1");
+                break;
+            case Token.NAME:
+                emit("void 0");
+                break;
+            case Token.STRING:
+                emit(((StringLiteral) node).getValue());
+                break;
+            case Token.RETURN:
+                emit("return");
+                break;
+            default:
+                throw new IllegalStateException("No rewrite of " + Token.typeToName(node.getType()));
+        }
+    }
+
+    /**
+     * Writes the target of a property access, followed by the dot
+     */
+    private void visitPropertyTarget(AstNode target) {
+        visitNode(target);
+        if (target instanceof NumberLiteral && isDecimalInteger(numberLiteral((NumberLiteral) target))) {
+            // 1.toString() would read the dot as a decimal point
+            output.append(' ');
+        }
+        emit(".");
+    }
+
     private void visitPropertyGet(PropertyGet pg) {
-        visitNode(pg.getTarget());
-        output.append(".");
+        visitPropertyTarget(pg.getTarget());
         AstNode property = pg.getProperty();
         if (property instanceof Name) {
-            output.append(((Name) property).getIdentifier());
+            emit(((Name) property).getIdentifier());
         } else {
-            output.append(property.toSource());
+            emitSource(property.toSource());
         }
     }
 
     private void visitElementGet(ElementGet eg) {
         visitNode(eg.getTarget());
-        output.append("[");
+        emit("[");
         visitNode(eg.getElement());
-        output.append("]");
+        emit("]");
     }
 
     private void visitObjectLiteral(ObjectLiteral obj) {
-        output.append("{");
+        emit("{");
         List<ObjectProperty> props = obj.getElements();
         for (int i = 0; i < props.size(); i++) {
-            if (i > 0) output.append(",");
+            if (i > 0) emit(",");
             ObjectProperty prop = props.get(i);
 
             // Check for shorthand property
             if (prop.isShorthand()) {
                 AstNode left = prop.getLeft();
                 if (left instanceof Name) {
-                    output.append(getMungedName(((Name) left).getIdentifier(), prop));
+                    // {a} becomes {a:b} once the variable is munged
+                    String identifier = ((Name) left).getIdentifier();
+                    String mungedName = getMungedName((Name) left);
+                    emit(identifier);
+                    if (!mungedName.equals(identifier)) {
+                        emit(":");
+                        emit(mungedName);
+                    }
                 } else {
                     visitNode(left);
                 }
             } else if (prop.isGetterMethod()) {
-                output.append("get ");
+                emit("get");
                 visitNode(prop.getLeft());
                 AstNode right = prop.getRight();
                 if (right instanceof FunctionNode) {
                     FunctionNode fn = (FunctionNode) right;
-                    output.append("(");
+                    emit("(");
                     visitParameterList(fn.getParams(), fn);
-                    output.append(")");
+                    emit(")");
                     visitNode(fn.getBody());
                 }
             } else if (prop.isSetterMethod()) {
-                output.append("set ");
+                emit("set");
                 visitNode(prop.getLeft());
                 AstNode right = prop.getRight();
                 if (right instanceof FunctionNode) {
                     FunctionNode fn = (FunctionNode) right;
-                    output.append("(");
+                    emit("(");
                     visitParameterList(fn.getParams(), fn);
-                    output.append(")");
+                    emit(")");
                     visitNode(fn.getBody());
                 }
             } else {
                 // Regular property
                 AstNode key = prop.getLeft();
                 if (key instanceof ComputedPropertyKey) {
-                    output.append("[");
+                    emit("[");
                     visitNode(((ComputedPropertyKey) key).getExpression());
-                    output.append("]");
+                    emit("]");
+                } else if (key instanceof Name) {
+                    // Property keys are never munged
+                    emit(((Name) key).getIdentifier());
                 } else {
                     visitNode(key);
                 }
-                output.append(":");
+                emit(":");
                 visitNode(prop.getRight());
             }
         }
-        output.append("}");
+        emit("}");
     }
 
     private void visitArrayLiteral(ArrayLiteral arr) {
-        output.append("[");
+        emit("[");
         List<AstNode> elements = arr.getElements();
         for (int i = 0; i < elements.size(); i++) {
-            if (i > 0) output.append(",");
+            if (i > 0) emit(",");
             AstNode element = elements.get(i);
             if (element instanceof EmptyExpression) {
                 // Elision - just leave empty
@@ -1005,22 +1328,177 @@ public class MungedCodeGenerator {
                 visitNode(element);
             }
         }
-        output.append("]");
+        emit("]");
     }
 
     private void visitParenthesizedExpression(ParenthesizedExpression paren) {
-        output.append("(");
+        emit("(");
         visitNode(paren.getExpression());
-        output.append(")");
+        emit(")");
     }
 
     private void visitYield(Yield yield) {
         if (yield.getValue() != null) {
-            output.append("yield ");
+            emit("yield");
             visitNode(yield.getValue());
         } else {
-            output.append("yield");
+            emit("yield");
+        }
+    }
+
+    /**
+     * Appends a token, preceded by a space only when the token would
+     * otherwise merge with the end of the output.
+     */
+    private void emit(String token) {
+        if (token.isEmpty()) {
+            return;
         }
+        if (output.length() > 0 && needsSeparator(output, token)) {
+            output.append(' ');
+        }
+        output.append(token);
+    }
+
+    static boolean needsSeparator(CharSequence text, String token) {
+        char last = text.charAt(text.length() - 1);
+        char next = token.charAt(0);
+        if (isIdentifierChar(last) && isIdentifierChar(next)) {
+            // a in b, return x, typeof y, 1 in c
+            return true;
+        }
+        if ((last == '+' || last == '-') && next == last) {
+            // a+ +b, a- -b, a+ ++b
+            return true;
+        }
+        if (last == '/' && (next == '/' || next == '*')) {
+            // a/ /re/ would start a comment
+            return true;
+        }
+        if (last == '!' && token.startsWith("--") && text.length() > 1 &&
+                text.charAt(text.length() - 2) == '<') {
+            // a<! --b would start an HTML comment
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return c < 128 ?
+            (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+            (c >= '0' && c <= '9') || c == '$' || c == '_' || c == '\\' :
+            Character.isJavaIdentifierPart(c);
+    }
+
+    private static boolean isDecimalInteger(String number) {
+        if (number == null || number.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Emits source code produced by Rhino for a node the generator does not
+     * handle, without the whitespace that can be dropped.
+     */
+    private void emitSource(String source) {
+        emit(compactSource(source));
+    }
+
+    static String compactSource(String source) {
+        StringBuilder sb = new StringBuilder(source.length());
+        int length = source.length();
+        int i = 0;
+        boolean pendingSpace = false;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+
+            int end;
+            if (c == '"' || c == '\'' || c == '`') {
+                end = skipQuoted(source, i, c);
+            } else if (c == '/' && startsRegExp(sb)) {
+                end = skipQuoted(source, i, '/');
+                while (end < length && isIdentifierChar(source.charAt(end))) {
+                    end++; // flags
+                }
+            } else {
+                end = i + 1;
+            }
+
+            if (pendingSpace && sb.length() > 0) {
+                char last = sb.charAt(sb.length() - 1);
+                if ((isIdentifierChar(last) && isIdentifierChar(c)) ||
+                        ((last == '+' || last == '-' || last == '/') && c == last)) {
+                    sb.append(' ');
+                }
+            }
+            pendingSpace = false;
+            sb.append(source, i, end);
+            i = end;
+        }
+        return sb.toString();
+    }
+
+    private static boolean startsRegExp(StringBuilder preceding) {
+        int i = preceding.length() - 1;
+        if (i < 0) {
+            return true;
+        }
+        char last = preceding.charAt(i);
+        if (isIdentifierChar(last)) {
+            // After an identifier it is a division, unless the identifier
+            // is a keyword preceding an expression
+            int start = i;
+            while (start > 0 && isIdentifierChar(preceding.charAt(start - 1))) {
+                start--;
+            }
+            String word = preceding.substring(start, i + 1);
+            return word.equals("return") || word.equals("typeof") ||
+                   word.equals("case") || word.equals("in") ||
+                   word.equals("of") || word.equals("void") ||
+                   word.equals("delete") || word.equals("throw") ||
+                   word.equals("yield") || word.equals("instanceof");
+        }
+        return last != ')' && last != ']' && last != '}';
+    }
+
+    /**
+     * @return Index after the quoted section starting at start
+     */
+    private static int skipQuoted(String source, int start, char quote) {
+        int i = start + 1;
+        boolean inClass = false;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (quote == '/') {
+                if (c == '[') {
+                    inClass = true;
+                } else if (c == ']') {
+                    inClass = false;
+                } else if (c == '/' && !inClass) {
+                    return i + 1;
+                }
+            } else if (c == quote) {
+                return i + 1;
+            }
+            i++;
+        }
+        return source.length();
     }
 
     private boolean needsSemicolon(AstNode node) {
@@ -1056,45 +1534,50 @@ public class MungedCodeGenerator {
     /**
      * Get the munged name for a variable, or the original name if munging is disabled
      */
-    private String getMungedName(String originalName, AstNode context) {
-        if (!munge) {
-            return originalName;
-        }
-
-        ScriptOrFnScope scope = findScopeForVariable(originalName, context);
-        if (scope != null) {
-            JavaScriptIdentifier id = scope.getIdentifier(originalName);
-            if (id != null) {
-                String mungedValue = id.getMungedValue();
-                if (mungedValue != null) {
-                    return mungedValue;
-                }
+    private String getMungedName(Name name) {
+        if (munge) {
+            JavaScriptIdentifier id = scopeBuilder.getIdentifier(name);
+            if (id != null && id.getMungedValue() != null) {
+                return id.getMungedValue();
             }
         }
+        return name.getIdentifier();
+    }
+
+    /**
+     * A node left to the work stack or to a forked task, and its output
+     * once generated
+     */
+    private static final class Deferred {
+        final AstNode node;
+        List<Object> pieces;
+        ForkJoinTask<List<Object>> task;
 
-        return originalName;
+        Deferred(AstNode node) {
+            this.node = node;
+        }
     }
 
     /**
-     * Find the scope that declares a given variable
+     * Generates a function with a generator of its own
      */
-    private ScriptOrFnScope findScopeForVariable(String name, AstNode context) {
-        AstNode current = context;
-        while (current != null) {
-            if (current instanceof FunctionNode || current instanceof AstRoot) {
-                ScriptOrFnScope scope = scopeBuilder.getScopeForNode(current);
-                if (scope != null) {
-                    ScriptOrFnScope searchScope = scope;
-                    while (searchScope != null) {
-                        if (searchScope.getIdentifier(name) != null) {
-                            return searchScope;
-                        }
-                        searchScope = searchScope.getParentScope();
-                    }
-                }
-            }
-            current = current.getParent();
+    private final class Chunk extends RecursiveTask<List<Object>> {
+        private static final long serialVersionUID = 1L;
+
+        private final AstNode node;
+
+        Chunk(AstNode node) {
+            this.node = node;
+        }
+
+        @Override
+        protected List<Object> compute() {
+            MungedCodeGenerator generator = new MungedCodeGenerator(
+                scopeBuilder, munge, preserveAllSemiColons);
+            generator.setCompactLiterals(compactLiterals, charset);
+            generator.rewrites = rewrites;
+            generator.splitting = true;
+            return generator.generatePieces(node);
         }
-        return scopeBuilder.getGlobalScope();
     }
 }
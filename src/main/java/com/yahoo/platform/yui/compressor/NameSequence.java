@@ -0,0 +1,286 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte -  http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc.  All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The names variables are munged to, in the order they are handed out:
+ * the one-letter names, then the two-letter names, and so on. A name is
+ * known by its index in this sequence.
+ *
+ * The names are computed on demand. The first letter is one of a-z, A-Z
+ * and the others one of a-z, A-Z, 0-9, in that order. Reserved words and
+ * a few built-in globals are skipped.
+ *
+ * An instance is another order of the same names, from other orders of
+ * these letters. The munging then hands out its names in turn, by rank,
+ * but still knows a name by its index in the sequence.
+ */
+final class NameSequence {
+
+    private static final String FIRST = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String OTHERS = FIRST + "0123456789";
+
+    // Longest name handed out; the sequence up to this length fits in an int
+    private static final int MAX_LENGTH = 5;
+
+    // Position in the unfiltered sequence of the first name of each length
+    private static final long[] OFFSETS = new long[MAX_LENGTH + 2];
+
+    // The names that are skipped
+    private static final Set<String> SKIPPED_NAMES = new HashSet<>();
+
+    // Number of names in the sequence
+    private static final int SIZE;
+
+    // Only the names of up to three characters are cached; the longer
+    // ones are rarely handed out
+    private static final int CACHE_LIMIT = 1 << 18;
+    private static final Object LOCK = new Object();
+    private static volatile String[] cache = new String[64];
+
+    // Ranks of the names up to two characters, of which orders keep a table
+    private static final int TABLE_LIMIT = FIRST.length() * (1 + OTHERS.length());
+
+    static {
+        long count = FIRST.length();
+        for (int length = 1; length <= MAX_LENGTH + 1; length++) {
+            OFFSETS[length] = OFFSETS[length - 1] + (length == 1 ? 0 : count);
+            if (length > 1) {
+                count *= OTHERS.length();
+            }
+        }
+
+        for (Object word : JavaScriptCompressor.reserved) {
+            SKIPPED_NAMES.add((String) word);
+        }
+        for (Object word : JavaScriptCompressor.builtin) {
+            SKIPPED_NAMES.add((String) word);
+        }
+        SKIPPED_NAMES.add("as");
+        SKIPPED_NAMES.add("is");
+        SKIPPED_NAMES.add("use");
+        SKIPPED_NAMES.add("eval");
+    }
+
+    /**
+     * The sequence itself, in which the rank of a name is its index
+     */
+    static final NameSequence DEFAULT = new NameSequence(FIRST, OTHERS);
+
+    static {
+        SIZE = (int) (OFFSETS[MAX_LENGTH + 1] - DEFAULT.skipped.length);
+    }
+
+    private final String first;
+    private final String others;
+    // Positions in the unfiltered order of the skipped names, sorted
+    private final long[] skipped;
+    // Index of the name of each rank, and rank of the name of each index,
+    // for the names up to two characters. Null for the sequence itself.
+    private final int[] indices;
+    private final int[] ranks;
+
+    private NameSequence(String first, String others) {
+        this.first = first;
+        this.others = others;
+
+        long[] positions = new long[SKIPPED_NAMES.size()];
+        int n = 0;
+        for (String word : SKIPPED_NAMES) {
+            long position = position(word);
+            if (position >= 0) {
+                positions[n++] = position;
+            }
+        }
+        this.skipped = Arrays.copyOf(positions, n);
+        Arrays.sort(this.skipped);
+
+        if (first.equals(FIRST) && others.equals(OTHERS)) {
+            this.indices = null;
+            this.ranks = null;
+        } else {
+            int tableSize = TABLE_LIMIT;
+            for (long position : skipped) {
+                if (position < TABLE_LIMIT) {
+                    tableSize--;
+                }
+            }
+            this.indices = new int[tableSize];
+            this.ranks = new int[indices.length];
+            for (int rank = 0; rank < indices.length; rank++) {
+                // The names up to two characters, skipped or not, are the
+                // same in any order
+                int index = indexOf(nameAt(rank));
+                indices[rank] = index;
+                ranks[index] = rank;
+            }
+        }
+    }
+
+    /**
+     * @param counts The number of occurrences of each character, by its
+     *        code, in the code the names go into
+     * @return The order of the names from the most frequent letters
+     */
+    static NameSequence byFrequency(int[] counts) {
+        return new NameSequence(byFrequency(FIRST, counts), byFrequency(OTHERS, counts));
+    }
+
+    private static String byFrequency(String letters, int[] counts) {
+        Character[] sorted = new Character[letters.length()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = letters.charAt(i);
+        }
+        // Stable, so the letters of the same count keep their order
+        Arrays.sort(sorted, Comparator.comparingInt((Character c) -> -counts[c]));
+        StringBuilder result = new StringBuilder(sorted.length);
+        for (Character c : sorted) {
+            result.append(c.charValue());
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return The index in the sequence of the name of the given rank in
+     *         this order
+     */
+    int indexAt(int rank) {
+        if (indices == null) {
+            return rank;
+        }
+        return rank < indices.length ? indices[rank] : indexOf(nameAt(rank));
+    }
+
+    /**
+     * @return The rank in this order of the name at the given index in the
+     *         sequence
+     */
+    int rankOf(int index) {
+        if (ranks == null) {
+            return index;
+        }
+        return index < ranks.length ? ranks[index] : rank(get(index));
+    }
+
+    /**
+     * @return Number of names in the sequence
+     */
+    static int size() {
+        return SIZE;
+    }
+
+    static String get(int index) {
+        if (index < 0 || index >= SIZE) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        String[] names = cache;
+        if (index < names.length && names[index] != null) {
+            return names[index];
+        }
+        String name = DEFAULT.nameAt(index);
+        if (index >= CACHE_LIMIT) {
+            return name;
+        }
+        synchronized (LOCK) {
+            names = cache;
+            if (index >= names.length) {
+                names = Arrays.copyOf(names, Math.max(index + 1, names.length * 2));
+            }
+            names[index] = name;
+            cache = names;
+        }
+        return name;
+    }
+
+    /**
+     * @return The index of the name, or -1 if variables are never munged to it
+     */
+    static int indexOf(String name) {
+        return DEFAULT.rank(name);
+    }
+
+    /**
+     * @return The rank of the name in this order, or -1 if variables are
+     *         never munged to it
+     */
+    private int rank(String name) {
+        long position = position(name);
+        if (position < 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(skipped, position);
+        if (index >= 0) {
+            return -1;
+        }
+        // binarySearch returns -(number of smaller elements) - 1
+        return (int) (position + index + 1);
+    }
+
+    private String nameAt(int rank) {
+        return name(skip(rank));
+    }
+
+    /**
+     * @return The position in the unfiltered order of the name of the
+     *         given rank
+     */
+    private long skip(int rank) {
+        long position = rank;
+        for (long skippedPosition : skipped) {
+            if (skippedPosition > position) {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * @return The position of the name in the unfiltered order, or -1 if
+     *         it is not of the form of the names in the sequence
+     */
+    private long position(String name) {
+        int length = name.length();
+        if (length == 0 || length > MAX_LENGTH) {
+            return -1;
+        }
+        long position = first.indexOf(name.charAt(0));
+        if (position < 0) {
+            return -1;
+        }
+        for (int i = 1; i < length; i++) {
+            int digit = others.indexOf(name.charAt(i));
+            if (digit < 0) {
+                return -1;
+            }
+            position = position * others.length() + digit;
+        }
+        return OFFSETS[length] + position;
+    }
+
+    private String name(long position) {
+        int length = 1;
+        while (position >= OFFSETS[length + 1]) {
+            length++;
+        }
+        long value = position - OFFSETS[length];
+        char[] chars = new char[length];
+        for (int i = length - 1; i > 0; i--) {
+            chars[i] = others.charAt((int) (value % others.length()));
+            value /= others.length();
+        }
+        chars[0] = first.charAt((int) value);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+/**
+ * How the munged names picked by a scope are given to its identifiers.
+ * Either way a scope picks the same names, the first ones of the
+ * NameSequence that its containing scopes leave free.
+ */
+public enum NamingStrategy {
+
+    /**
+     * The shortest names go to the most referenced identifiers, which
+     * makes the smallest code before gzip.
+     */
+    FREQUENCY,
+
+    /**
+     * The names go to the parameters by position, then to the other
+     * identifiers in the order of their first use, whatever their number
+     * of references. Functions of the same structure then get the same
+     * names and the same code, which gzip compresses better.
+     */
+    CANONICAL
+}
@@ -0,0 +1,82 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One output generated by {@link JavaScriptCompressor#compress(List, boolean)}.
+ * All the variants of a compressor share its parse and scope analysis.
+ */
+public class OutputVariant {
+
+    private final Writer out;
+    private final Writer mungemap;
+    private final int linebreakpos;
+    private final boolean munge;
+    private final boolean preserveAllSemiColons;
+    private final boolean disableOptimizations;
+    private List<PassStatistics> passStatistics = Collections.emptyList();
+
+    /**
+     * @param out Destination of the compressed code
+     * @param mungemap Destination of the munged identifiers mapping, may be null
+     * @param linebreakpos Column after which a line break is inserted, or -1
+     * @param munge Whether local symbols are obfuscated
+     * @param preserveAllSemiColons Whether to keep the semicolons before a '}'
+     * @param disableOptimizations Whether to disable the micro optimizations
+     */
+    public OutputVariant(Writer out, Writer mungemap, int linebreakpos,
+                         boolean munge, boolean preserveAllSemiColons,
+                         boolean disableOptimizations) {
+        this.out = out;
+        this.mungemap = mungemap;
+        this.linebreakpos = linebreakpos;
+        this.munge = munge;
+        this.preserveAllSemiColons = preserveAllSemiColons;
+        this.disableOptimizations = disableOptimizations;
+    }
+
+    public Writer getOut() {
+        return out;
+    }
+
+    public Writer getMungemap() {
+        return mungemap;
+    }
+
+    public int getLineBreakPosition() {
+        return linebreakpos;
+    }
+
+    public boolean isMunge() {
+        return munge;
+    }
+
+    public boolean isPreserveAllSemiColons() {
+        return preserveAllSemiColons;
+    }
+
+    public boolean isDisableOptimizations() {
+        return disableOptimizations;
+    }
+
+    /**
+     * @return Statistics of the passes run to generate this variant
+     */
+    public List<PassStatistics> getPassStatistics() {
+        return passStatistics;
+    }
+
+    void setPassStatistics(List<PassStatistics> passStatistics) {
+        this.passStatistics = passStatistics;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.ast.AstRoot;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The parser setup of a thread, configured once and reused by every
+ * script it compresses: the compiler environment, and the buffer the
+ * source is read through. Compressing many small scripts, e.g. inline
+ * scripts, or the files of a batch, then only costs a new Parser each,
+ * which Rhino does not allow to reuse.
+ */
+final class ParserContext {
+
+    private static final ThreadLocal<ParserContext> CURRENT =
+        ThreadLocal.withInitial(ParserContext::new);
+
+    private final CompilerEnvirons compilerEnv = new CompilerEnvirons();
+    private final char[] buffer = new char[4096];
+
+    private ParserContext() {
+        // DON'T record comments to avoid them in toSource()
+        compilerEnv.setRecordingComments(false);
+        compilerEnv.setRecordingLocalJsDocComments(false);
+        // Use ES6 language version for better ES6+ syntax support
+        compilerEnv.setLanguageVersion(Context.VERSION_ES6);
+        compilerEnv.setGenerateDebugInfo(false);
+    }
+
+    /**
+     * @return The context of the current thread
+     */
+    static ParserContext get() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Parses source, whose first line is the given line of the file
+     */
+    AstRoot parse(String source, int lineno, ErrorReporter reporter) {
+        // The reporter may itself compress a script on this thread
+        ErrorReporter previous = compilerEnv.getErrorReporter();
+        compilerEnv.setErrorReporter(reporter);
+        try {
+            return new Parser(compilerEnv).parse(source, null, lineno);
+        } finally {
+            compilerEnv.setErrorReporter(previous);
+        }
+    }
+
+    /**
+     * @return The whole content of in
+     */
+    String read(Reader in) throws IOException {
+        StringBuilder source = new StringBuilder();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            source.append(buffer, 0, read);
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+/**
+ * State shared by the passes of a single compression.
+ */
+public class PassContext {
+
+    private final String type;
+    private final int linebreakpos;
+    private final String namespace;
+    private final Placeholders preservedTokens;
+    private final Placeholders comments;
+    private CommentPreserver commentPreserver;
+
+    public PassContext(String type, int linebreakpos) {
+        this(type, linebreakpos, "");
+    }
+
+    /**
+     * @param source Text given to the first pass, which the placeholders and
+     *        markers of this context are guaranteed not to occur in
+     */
+    public PassContext(String type, int linebreakpos, String source) {
+        this.type = type;
+        this.linebreakpos = linebreakpos;
+        this.namespace = Placeholders.uniquePrefix("___YUICSSMIN_", source);
+        this.preservedTokens = new Placeholders(namespace + "PRESERVED_TOKEN_");
+        this.comments = new Placeholders(namespace + "PRESERVE_CANDIDATE_COMMENT_");
+    }
+
+    /**
+     * @return Pipeline type, see {@link CompressorPassProvider}
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return Column after which a line break is inserted, or a negative value
+     */
+    public int getLineBreakPosition() {
+        return linebreakpos;
+    }
+
+    /**
+     * @return Values (strings, comments, ...) replaced by placeholders until
+     *         they are restored at the end of the pipeline
+     */
+    public Placeholders getPreservedTokens() {
+        return preservedTokens;
+    }
+
+    /**
+     * @return Comment bodies collected from the CSS source
+     */
+    public Placeholders getComments() {
+        return comments;
+    }
+
+    /**
+     * @return Text that does not occur in the source, for a pass to mark
+     *         something temporarily
+     */
+    public String marker(String name) {
+        return namespace + name + "___";
+    }
+
+    /**
+     * @return Special comments to emit with the JavaScript output, or null
+     */
+    public CommentPreserver getCommentPreserver() {
+        return commentPreserver;
+    }
+
+    void setCommentPreserver(CommentPreserver commentPreserver) {
+        this.commentPreserver = commentPreserver;
+    }
+}
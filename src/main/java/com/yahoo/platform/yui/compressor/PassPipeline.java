@@ -0,0 +1,132 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.util.*;
+
+/**
+ * Ordered list of passes for one compression, with per-pass timing.
+ */
+final class PassPipeline {
+
+    private static final CompressorPassProvider BUILTIN = new BuiltinPassProvider();
+
+    // Providers discovered through the ServiceLoader, by class loader
+    private static final Map<ClassLoader, List<CompressorPassProvider>> providers =
+        new WeakHashMap<>();
+
+    private final List<CompressorPass> passes;
+    private final List<PassStatistics> statistics = new ArrayList<>();
+
+    private PassPipeline(List<CompressorPass> passes) {
+        this.passes = passes;
+    }
+
+    /**
+     * Creates the pipeline of the given type from the built-in passes and
+     * the passes of every provider found on the class path.
+     *
+     * @param type Pipeline type, see {@link CompressorPassProvider}
+     * @param disabledPasses Names of the passes to skip, may be null
+     * @throws IllegalArgumentException if a required pass is disabled, or
+     *         a pass of that name does not exist
+     */
+    static PassPipeline create(String type, Collection<String> disabledPasses) {
+        List<CompressorPass> candidates = getPasses(type);
+        if (disabledPasses != null) {
+            Set<String> names = getPassNames(type);
+            for (String name : disabledPasses) {
+                if (!names.contains(name)) {
+                    throw new IllegalArgumentException("Unknown pass " + name +
+                        ", the passes are: " + String.join(", ", names));
+                }
+            }
+        }
+
+        List<CompressorPass> passes = new ArrayList<>(candidates.size());
+        for (CompressorPass pass : candidates) {
+            if (disabledPasses != null && disabledPasses.contains(pass.getName())) {
+                if (pass.isRequired()) {
+                    throw new IllegalArgumentException("The " + pass.getName() +
+                        " pass is required and cannot be disabled");
+                }
+                continue;
+            }
+            passes.add(pass);
+        }
+        return new PassPipeline(passes);
+    }
+
+    /**
+     * @return The names of the passes of the given type, in order
+     */
+    static Set<String> getPassNames(String type) {
+        Set<String> names = new LinkedHashSet<>();
+        for (CompressorPass pass : getPasses(type)) {
+            names.add(pass.getName());
+        }
+        return names;
+    }
+
+    private static List<CompressorPass> getPasses(String type) {
+        List<CompressorPass> passes = new ArrayList<>(BUILTIN.getPasses(type));
+        for (CompressorPassProvider provider : getProviders()) {
+            passes.addAll(provider.getPasses(type));
+        }
+        // List.sort is stable, so passes with the same order keep the order
+        // in which the providers were found.
+        passes.sort(Comparator.comparingInt(CompressorPass::getOrder));
+        return passes;
+    }
+
+    private static List<CompressorPassProvider> getProviders() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = PassPipeline.class.getClassLoader();
+        }
+        synchronized (providers) {
+            List<CompressorPassProvider> result = providers.get(loader);
+            if (result == null) {
+                result = new ArrayList<>();
+                for (CompressorPassProvider provider :
+                        ServiceLoader.load(CompressorPassProvider.class, loader)) {
+                    // The built-in provider is registered too, but always runs
+                    if (!(provider instanceof BuiltinPassProvider)) {
+                        result.add(provider);
+                    }
+                }
+                providers.put(loader, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Runs every pass in order, recording its statistics.
+     */
+    String run(String input, PassContext context) {
+        String result = input;
+        for (CompressorPass pass : passes) {
+            long start = System.nanoTime();
+            String output = pass.apply(result, context);
+            statistics.add(new PassStatistics(pass.getName(),
+                System.nanoTime() - start, result.length(), output.length()));
+            result = output;
+        }
+        return result;
+    }
+
+    List<CompressorPass> getPasses() {
+        return Collections.unmodifiableList(passes);
+    }
+
+    List<PassStatistics> getStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+}
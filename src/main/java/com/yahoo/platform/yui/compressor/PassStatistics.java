@@ -0,0 +1,55 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+/**
+ * Time spent and size change of a single pass run.
+ */
+public class PassStatistics {
+
+    private final String name;
+    private final long elapsedNanos;
+    private final int inputLength;
+    private final int outputLength;
+
+    PassStatistics(String name, long elapsedNanos, int inputLength, int outputLength) {
+        this.name = name;
+        this.elapsedNanos = elapsedNanos;
+        this.inputLength = inputLength;
+        this.outputLength = outputLength;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public int getInputLength() {
+        return inputLength;
+    }
+
+    public int getOutputLength() {
+        return outputLength;
+    }
+
+    /**
+     * @return Number of characters added (positive) or removed (negative)
+     */
+    public int getDelta() {
+        return outputLength - inputLength;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-32s %9.3f ms %+9d", name, elapsedNanos / 1e6, getDelta());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Values taken out of the text being compressed, each replaced by a
+ * placeholder of the form {@code <prefix><index>___}.
+ *
+ * All the placeholders are restored in a single left-to-right pass, and the
+ * prefix is chosen so that it does not occur in the source, so text from
+ * the source can never be mistaken for a placeholder.
+ */
+public final class Placeholders {
+
+    private static final String SUFFIX = "___";
+
+    private final String prefix;
+    private final List<String> values;
+
+    /**
+     * @param prefix Start of the placeholders, which must not occur in the
+     *        text they are inserted into, see {@link #uniquePrefix}
+     */
+    public Placeholders(String prefix) {
+        this(prefix, new ArrayList<String>());
+    }
+
+    Placeholders(String prefix, List<String> values) {
+        this.prefix = prefix;
+        this.values = values;
+    }
+
+    /**
+     * Returns the given base, followed by a nonce if needed so that the
+     * result does not occur in the source. Placeholders whose prefix starts
+     * with the result cannot be confused with text from the source.
+     *
+     * @param base Start of the prefix, e.g. "___YUICSSMIN_"
+     */
+    public static String uniquePrefix(String base, String source) {
+        if (!source.contains(base)) {
+            return base;
+        }
+        StringBuilder sb = new StringBuilder(base);
+        do {
+            sb.append('X');
+        } while (source.contains(sb));
+        return sb.append('_').toString();
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Stores a value.
+     *
+     * @return The placeholder standing for the value
+     */
+    public String add(String value) {
+        values.add(value);
+        return placeholder(values.size() - 1);
+    }
+
+    public String placeholder(int index) {
+        return prefix + index + SUFFIX;
+    }
+
+    public String get(int index) {
+        return values.get(index);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public List<String> getValues() {
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * @return The index of the placeholder starting at the given position,
+     *         or -1 if there is none
+     */
+    public int indexAt(CharSequence text, int position) {
+        int i = position + prefix.length();
+        if (i > text.length() || !text.subSequence(position, i).toString().equals(prefix)) {
+            return -1;
+        }
+        int index = 0;
+        int start = i;
+        while (i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            index = index * 10 + (text.charAt(i) - '0');
+            i++;
+            if (index >= values.size()) {
+                return -1;
+            }
+        }
+        if (i == start || !startsWith(text, SUFFIX, i)) {
+            return -1;
+        }
+        return index;
+    }
+
+    /**
+     * @return The length of the placeholder of the given index
+     */
+    public int length(int index) {
+        return prefix.length() + String.valueOf(index).length() + SUFFIX.length();
+    }
+
+    /**
+     * Replaces every placeholder by its value. A value holding placeholders
+     * of values stored before it is restored as well.
+     */
+    public String restore(String text) {
+        if (values.isEmpty() || text.indexOf(prefix) < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        restore(text, values.size(), sb);
+        return sb.toString();
+    }
+
+    private void restore(String text, int limit, StringBuilder sb) {
+        int copied = 0;
+        int position = text.indexOf(prefix);
+        while (position >= 0) {
+            int index = indexAt(text, position);
+            if (index >= 0 && index < limit) {
+                sb.append(text, copied, position);
+                String value = values.get(index);
+                if (value.indexOf(prefix) >= 0) {
+                    // Values only hold placeholders stored before them,
+                    // which guarantees the recursion ends.
+                    restore(value, index, sb);
+                } else {
+                    sb.append(value);
+                }
+                copied = position + length(index);
+                position = text.indexOf(prefix, copied);
+            } else {
+                position = text.indexOf(prefix, position + 1);
+            }
+        }
+        sb.append(text, copied, text.length());
+    }
+
+    private static boolean startsWith(CharSequence text, String s, int offset) {
+        if (offset + s.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (text.charAt(offset + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -11,6 +11,9 @@ package com.yahoo.platform.yui.compressor;
 import org.mozilla.javascript.Node;
 import org.mozilla.javascript.ast.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
 
 /**
  * Builds scope tree from Rhino 1.8.0 AST for variable obfuscation.
@@ -20,6 +23,9 @@ public class ScopeBuilder {
 
     private ScriptOrFnScope globalScope;
     private Map<AstNode, ScriptOrFnScope> scopeMap = new HashMap<>();
+    private Map<Name, JavaScriptIdentifier> resolvedNames = new IdentityHashMap<>();
+
+    private static final Pattern HINTS = Pattern.compile("\\s*[\\w$]+\\s*:\\s*\\w+\\s*(,\\s*[\\w$]+\\s*:\\s*\\w+\\s*)*");
 
     public ScopeBuilder() {
         this.globalScope = new ScriptOrFnScope(0, null);
@@ -29,216 +35,618 @@ public class ScopeBuilder {
      * Build scope tree from AST
      */
     public ScriptOrFnScope buildScopeTree(AstRoot root) {
+        return buildScopeTree(root, null);
+    }
+
+    /**
+     * Builds the scope tree, analyzing the functions of the global scope
+     * concurrently in pool, if not null. The scopes of these functions only
+     * depend on the global scope, which is completed afterwards in the
+     * order of the sequential analysis, so the result is the same.
+     */
+    public ScriptOrFnScope buildScopeTree(AstRoot root, ForkJoinPool pool) {
         scopeMap.put(root, globalScope);
-        visitNode(root, globalScope, 0);
-        return globalScope;
+        return build(root, pool, null);
     }
 
-    private void visitNode(AstNode node, ScriptOrFnScope currentScope, int braceNesting) {
-        if (node == null) {
-            return;
+    /**
+     * Builds the scope tree of a statement of the script, or of a function
+     * of the global scope, as if it were the only one. The global scope
+     * then holds the symbols it declares there, or refers to without
+     * declaring them.
+     *
+     * @param functions If not null, receives the functions of the global
+     *        scope, which are left out of the tree. Methods, getters and
+     *        setters are not, as their code only parses within their object,
+     *        nor are the functions within a with statement, whose names may
+     *        refer to the properties of its object.
+     */
+    ScriptOrFnScope buildStatementScopeTree(AstNode statement, List<FunctionNode> functions) {
+        return build(statement, null, functions);
+    }
+
+    private ScriptOrFnScope build(AstNode root, ForkJoinPool pool, List<FunctionNode> functions) {
+        Walk top = new Walk(pool != null, scopeMap, resolvedNames);
+        top.skipped = functions;
+        top.visitAll(Collections.singletonList(new Visit(root, globalScope, 0)));
+        if (!top.functions.isEmpty()) {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(top.functions);
+                }
+            });
+            for (Walk function : top.functions) {
+                scopeMap.putAll(function.scopes);
+                resolvedNames.putAll(function.resolved);
+            }
         }
 
-        // Handle function declarations and expressions (including arrow functions)
-        if (node instanceof FunctionNode) {
-            FunctionNode fn = (FunctionNode) node;
+        // Complete the global scope with the declarations, then the hints,
+        // then the references, each in source order
+        top.declareGlobals();
+        top.processHints();
+        top.resolveNames();
+        return globalScope;
+    }
+
+    /**
+     * Walks the whole tree, or a function of the global scope. Declarations
+     * in the global scope, and references to it, are recorded to be
+     * applied in order once every walk is done.
+     */
+    private final class Walk extends RecursiveAction {
 
-            // Create new scope for this function
-            ScriptOrFnScope fnScope = new ScriptOrFnScope(braceNesting + 1, currentScope);
-            scopeMap.put(fn, fnScope);
+        private static final long serialVersionUID = 1L;
 
-            // Declare function parameters as variables
-            List<AstNode> params = fn.getParams();
-            for (AstNode param : params) {
-                declareParameterIdentifiers(param, fnScope);
+        // Whether the functions of the global scope get walks of their own
+        private final boolean split;
+        private final List<Visit> start;
+        private final Map<AstNode, ScriptOrFnScope> scopes;
+        private final Map<Name, JavaScriptIdentifier> resolved;
+        private final List<Walk> functions = new ArrayList<>();
+
+        // Symbols to declare in the global scope, or the walks of the
+        // functions whose symbols come next
+        private final List<Object> declarations = new ArrayList<>();
+        // Same, for the symbols declared by the hints of a function walk
+        private final List<Object> hintDeclarations = new ArrayList<>();
+        // Where declarations in the global scope go, or null to apply them
+        private List<Object> log = declarations;
+
+        // Function bodies whose hints are processed once the tree is
+        // visited, or function walks
+        private final List<Object> pendingHints = new ArrayList<>();
+
+        // Name nodes waiting to be resolved, or function walks, with the
+        // scope they appear in. Resolution happens once every declaration
+        // has been seen, so that hoisted var and function declarations are
+        // found.
+        private final List<Object> pendingNames = new ArrayList<>();
+        private final List<ScriptOrFnScope> pendingScopes = new ArrayList<>();
+        // Names of a function walk left to resolve in the global scope
+        private final List<Name> globalNames = new ArrayList<>();
+        // Where the functions of the global scope go instead of being
+        // walked, or null
+        private List<FunctionNode> skipped;
+
+        Walk(boolean split, Map<AstNode, ScriptOrFnScope> scopes,
+             Map<Name, JavaScriptIdentifier> resolved) {
+            this.split = split;
+            this.start = null;
+            this.scopes = scopes;
+            this.resolved = resolved;
+        }
+
+        Walk(List<Visit> start) {
+            this.split = false;
+            this.start = start;
+            this.scopes = new HashMap<>();
+            this.resolved = new IdentityHashMap<>();
+        }
+
+        /**
+         * Walks a function of the global scope, resolving the references to
+         * its own scopes.
+         */
+        @Override
+        protected void compute() {
+            visitAll(start);
+            log = hintDeclarations;
+            for (Object hint : pendingHints) {
+                Visit visit = (Visit) hint;
+                processHints(visit.node, visit.scope);
             }
+            for (int i = 0; i < pendingNames.size(); i++) {
+                Name name = (Name) pendingNames.get(i);
+                JavaScriptIdentifier id = findIdentifier(name.getIdentifier(),
+                    pendingScopes.get(i), globalScope);
+                if (id != null) {
+                    id.incrementRefcount(i);
+                    resolved.put(name, id);
+                } else {
+                    globalNames.add(name);
+                }
+            }
+        }
 
-            // Visit function body with new scope
-            AstNode body = fn.getBody();
-            if (body != null) {
-                visitNode(body, fnScope, braceNesting + 1);
+        void visitAll(List<Visit> visits) {
+            // The nodes are visited from an explicit stack rather than
+            // recursively, so that deeply nested code cannot overflow the
+            // Java stack.
+            Deque<Visit> stack = new ArrayDeque<>();
+            List<Visit> children = new ArrayList<>();
+            for (int i = visits.size() - 1; i >= 0; i--) {
+                stack.push(visits.get(i));
+            }
+            while (!stack.isEmpty()) {
+                Visit visit = stack.pop();
+                if (skipped != null && visit.scope == globalScope &&
+                        visit.node instanceof FunctionNode && standsAlone((FunctionNode) visit.node)) {
+                    skipped.add((FunctionNode) visit.node);
+                    continue;
+                }
+                visitNode(visit.node, visit.scope, visit.braceNesting, children);
+                if (split && visit.node instanceof FunctionNode && visit.scope == globalScope) {
+                    // Leave the inside of the function to a walk of its own
+                    Walk function = new Walk(new ArrayList<>(children));
+                    functions.add(function);
+                    declarations.add(function);
+                    pendingHints.add(function);
+                    pendingNames.add(function);
+                    pendingScopes.add(null);
+                    children.clear();
+                    continue;
+                }
+                // Push in reverse so that the children are visited in order
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+                children.clear();
             }
-            return;
         }
 
-        // Handle variable declarations
-        if (node instanceof VariableDeclaration) {
-            VariableDeclaration varDecl = (VariableDeclaration) node;
-            List<VariableInitializer> variables = varDecl.getVariables();
+        void declareGlobals() {
+            for (Object declaration : declarations) {
+                if (declaration instanceof Walk) {
+                    ((Walk) declaration).declareGlobals();
+                } else {
+                    globalScope.declareIdentifier((String) declaration);
+                }
+            }
+        }
 
-            for (VariableInitializer vi : variables) {
-                AstNode target = vi.getTarget();
-                // Handle both simple names and destructuring patterns
-                declareVariableIdentifiers(target, currentScope);
+        void processHints() {
+            log = null;
+            for (Object hint : pendingHints) {
+                if (hint instanceof Walk) {
+                    for (Object declaration : ((Walk) hint).hintDeclarations) {
+                        globalScope.declareIdentifier((String) declaration);
+                    }
+                } else {
+                    Visit visit = (Visit) hint;
+                    processHints(visit.node, visit.scope);
+                }
+            }
+        }
 
-                // Visit initializer
-                AstNode initializer = vi.getInitializer();
-                if (initializer != null) {
-                    visitNode(initializer, currentScope, braceNesting);
+        void resolveNames() {
+            for (int i = 0; i < pendingNames.size(); i++) {
+                Object name = pendingNames.get(i);
+                if (name instanceof Walk) {
+                    for (Name global : ((Walk) name).globalNames) {
+                        resolveName(global, globalScope, i);
+                    }
+                } else {
+                    resolveName((Name) name, pendingScopes.get(i), i);
                 }
             }
-            return;
         }
 
-        // Handle for-in and for-of loops
-        if (node instanceof ForInLoop) {
-            ForInLoop forIn = (ForInLoop) node;
+        private void resolveName(Name name, ScriptOrFnScope scope, int order) {
+            String symbol = name.getIdentifier();
+            JavaScriptIdentifier id = findIdentifier(symbol, scope, null);
+            if (id != null) {
+                id.incrementRefcount(order);
+                resolved.put(name, id);
+            } else if (NameSequence.indexOf(symbol) >= 0) {
+                // An undeclared symbol that could be a munged name.
+                // Declaring it in the global scope, which is never munged,
+                // keeps the local variables from being renamed to it.
+                globalScope.declareIdentifier(symbol);
+            }
+        }
+
+        /**
+         * Visits a node, adding the child nodes left to visit to the given list.
+         */
+        private void visitNode(AstNode node, ScriptOrFnScope currentScope, int braceNesting,
+                               List<Visit> children) {
+
+            // Handle function declarations and expressions (including arrow functions)
+            if (node instanceof FunctionNode) {
+                FunctionNode fn = (FunctionNode) node;
+
+                // Create new scope for this function
+                ScriptOrFnScope fnScope = new ScriptOrFnScope(braceNesting + 1, currentScope);
+                scopes.put(fn, fnScope);
+
+                // A function statement binds its name in the enclosing scope,
+                // a named function expression only inside itself. Function
+                // names are kept, but declaring them keeps the variables of
+                // these scopes from being renamed to them.
+                Name fnName = fn.getFunctionName();
+                if (fnName != null) {
+                    ScriptOrFnScope nameScope =
+                        fn.getFunctionType() == FunctionNode.FUNCTION_STATEMENT ? currentScope : fnScope;
+                    if (nameScope == globalScope) {
+                        // Global symbols are never munged anyway
+                        declare(nameScope, fnName.getIdentifier());
+                    } else {
+                        keepName(nameScope.declareIdentifier(fnName.getIdentifier()));
+                    }
+                    addPendingName(fnName, nameScope);
+                }
+
+                // Declare function parameters as variables
+                List<AstNode> params = fn.getParams();
+                for (AstNode param : params) {
+                    declareParameterIdentifiers(param, fnScope);
+                    children.add(new Visit(param, fnScope, braceNesting + 1));
+                }
+
+                // Default values of simple parameters are kept apart from the
+                // parameters, as (name, value) pairs
+                List<Object> defaultParams = fn.getDefaultParams();
+                if (defaultParams != null) {
+                    for (Object value : defaultParams) {
+                        if (value instanceof AstNode) {
+                            children.add(new Visit((AstNode) value, fnScope, braceNesting + 1));
+                        }
+                    }
+                }
+
+                // Visit function body with new scope
+                AstNode body = fn.getBody();
+                if (body != null) {
+                    children.add(new Visit(body, fnScope, braceNesting + 1));
+                    pendingHints.add(new Visit(body, fnScope, braceNesting + 1));
+                }
+                return;
+            }
+
+            // Blocks declaring let or const, loops doing so in their head,
+            // and catch clauses get a scope of their own, so that disjoint
+            // blocks can reuse the same names
+            if (declaresLexically(node)) {
+                ScriptOrFnScope blockScope = new ScriptOrFnScope(braceNesting, currentScope, true);
+                scopes.put(node, blockScope);
+                if (node instanceof CatchClause) {
+                    declare(blockScope, ((CatchClause) node).getVarName().getIdentifier());
+                }
+                if (node instanceof SwitchStatement) {
+                    // The cases share a scope, the expression is outside of it
+                    SwitchStatement switchStatement = (SwitchStatement) node;
+                    children.add(new Visit(switchStatement.getExpression(), currentScope, braceNesting));
+                    for (SwitchCase switchCase : switchStatement.getCases()) {
+                        children.add(new Visit(switchCase, blockScope, braceNesting));
+                    }
+                } else {
+                    visitChildren(node, blockScope, braceNesting, children);
+                }
+                return;
+            }
 
-            // The iterator may declare variables (e.g., "for (let x of arr)")
-            AstNode iterator = forIn.getIterator();
-            if (iterator instanceof VariableDeclaration) {
-                VariableDeclaration varDecl = (VariableDeclaration) iterator;
+            // Handle variable declarations
+            if (node instanceof VariableDeclaration) {
+                VariableDeclaration varDecl = (VariableDeclaration) node;
                 for (VariableInitializer vi : varDecl.getVariables()) {
-                    declareVariableIdentifiers(vi.getTarget(), currentScope);
+                    // Handle both simple names and destructuring patterns
+                    declareVariableIdentifiers(vi.getTarget(), currentScope, varDecl.isVar());
                 }
-            } else {
-                visitNode(iterator, currentScope, braceNesting);
+                // The targets and initializers are visited below
             }
 
-            // Visit the iterated object
-            visitNode(forIn.getIteratedObject(), currentScope, braceNesting);
+            // Property keys are not variables, except in shorthand {a}.
+            // In patterns such as {a = 1}, the key is also the left side
+            // of the default value, where it is visited.
+            if (node instanceof ObjectProperty) {
+                ObjectProperty prop = (ObjectProperty) node;
+                AstNode left = prop.getLeft();
+                if (prop.isShorthand() || left instanceof ComputedPropertyKey) {
+                    children.add(new Visit(left, currentScope, braceNesting));
+                }
+                if (prop.getRight() != null && prop.getRight() != left) {
+                    children.add(new Visit(prop.getRight(), currentScope, braceNesting));
+                }
+                return;
+            }
+
+            // Handle name references (variable usage)
+            if (node instanceof Name) {
+                Name name = (Name) node;
+                if (isVariableName(name)) {
+                    addPendingName(name, currentScope);
+                }
+                return;
+            }
 
-            // Visit the loop body
-            visitNode(forIn.getBody(), currentScope, braceNesting);
-            return;
+            visitChildren(node, currentScope, braceNesting, children);
         }
 
-        // Handle try-catch blocks (catch parameter creates a new binding)
-        if (node instanceof TryStatement) {
-            TryStatement tryStmt = (TryStatement) node;
+        /**
+         * Adds the child nodes of node, which appear in scope, to the list.
+         */
+        private void visitChildren(AstNode node, ScriptOrFnScope scope, int braceNesting,
+                                   List<Visit> children) {
+            // Most expressions keep their operands in fields rather than in
+            // the Node child list, but visit() reaches all of them.
+            node.visit(new NodeVisitor() {
+                public boolean visit(AstNode child) {
+                    if (child == node) {
+                        return true;
+                    }
+                    children.add(new Visit(child, scope, braceNesting));
+                    return false;
+                }
+            });
+        }
 
-            // Visit try block
-            visitNode(tryStmt.getTryBlock(), currentScope, braceNesting);
+        /**
+         * Handles the hints found in the directive prologue of a function, e.g.
+         * "a:nomunge, b:nomunge" to keep the variables a and b from being munged
+         */
+        private void processHints(AstNode body, ScriptOrFnScope scope) {
+            for (Node child = body.getFirstChild(); child != null; child = child.getNext()) {
+                if (!(child instanceof ExpressionStatement)
+                        || !(((ExpressionStatement) child).getExpression() instanceof StringLiteral)) {
+                    break;
+                }
+                String value = ((StringLiteral) ((ExpressionStatement) child).getExpression()).getValue();
+                if (!HINTS.matcher(value).matches()) {
+                    continue;
+                }
+                for (String hint : value.split(",")) {
+                    int idx = hint.indexOf(':');
+                    String variableName = hint.substring(0, idx).trim();
+                    String variableType = hint.substring(idx + 1).trim();
+                    scope.addHint(variableName, variableType);
+                    if ("nomunge".equals(variableType)) {
+                        keepName(scope, variableName);
+                    }
+                }
+            }
+        }
 
-            // Handle catch clauses - catch variable is scoped to catch block
-            for (CatchClause clause : tryStmt.getCatchClauses()) {
-                Name varName = clause.getVarName();
-                if (varName != null) {
-                    // Declare catch variable in current scope for munging
-                    currentScope.declareIdentifier(varName.getIdentifier());
+        /**
+         * Keeps the symbol of a function from being munged, with the let
+         * and const of the same name in the blocks of the function
+         */
+        private void keepName(ScriptOrFnScope scope, String symbol) {
+            JavaScriptIdentifier id = scope.getIdentifier(symbol);
+            if (id != null) {
+                keepName(id);
+            }
+            for (ScriptOrFnScope subScope : scope.getSubScopes()) {
+                if (subScope.isBlock()) {
+                    keepName(subScope, symbol);
                 }
-                visitNode(clause.getBody(), currentScope, braceNesting);
             }
+        }
+
+        /**
+         * Keeps an identifier from being munged. The other variables must not
+         * be renamed to it either, as that would shadow it or be shadowed by it.
+         * Declaring it in the global scope, which every scope avoids, takes care
+         * of that.
+         */
+        private void keepName(JavaScriptIdentifier id) {
+            id.preventMunging();
+            if (NameSequence.indexOf(id.getValue()) >= 0) {
+                declare(globalScope, id.getValue());
+            }
+        }
 
-            // Visit finally block
-            AstNode finallyBlock = tryStmt.getFinallyBlock();
-            if (finallyBlock != null) {
-                visitNode(finallyBlock, currentScope, braceNesting);
+        private void declare(ScriptOrFnScope scope, String symbol) {
+            if (scope == globalScope && log != null) {
+                log.add(symbol);
+            } else {
+                scope.declareIdentifier(symbol);
             }
-            return;
         }
 
-        // Handle name references (variable usage)
-        if (node instanceof Name) {
-            Name name = (Name) node;
-            String identifier = name.getIdentifier();
-
-            // Don't mark property names as identifiers
-            AstNode parent = name.getParent();
-            if (parent instanceof PropertyGet) {
-                PropertyGet pg = (PropertyGet) parent;
-                AstNode property = pg.getProperty();
-                if (property instanceof Name &&
-                    ((Name) property).getIdentifier().equals(identifier) &&
-                    property.getAbsolutePosition() == name.getAbsolutePosition()) {
-                    return; // This is a property access, not a variable reference
+        /**
+         * Declares a var in the script or function that scope is part of
+         */
+        private void declareVar(ScriptOrFnScope scope, String symbol) {
+            ScriptOrFnScope varScope = scope.getVarScope();
+            declare(varScope, symbol);
+            // Only a catch parameter can have the same name in a block in
+            // between, and the var then assigns the parameter. Both must
+            // keep the same name.
+            for (; scope != varScope; scope = scope.getParentScope()) {
+                JavaScriptIdentifier id = scope.getIdentifier(symbol);
+                if (id != null) {
+                    keepName(id);
+                    if (varScope != globalScope) {
+                        keepName(varScope.getIdentifier(symbol));
+                    }
                 }
             }
+        }
+
+        private void addPendingName(Name name, ScriptOrFnScope scope) {
+            pendingNames.add(name);
+            pendingScopes.add(scope);
+        }
 
-            // Don't mark object property keys as variable references
-            if (parent instanceof ObjectProperty) {
-                ObjectProperty prop = (ObjectProperty) parent;
-                if (prop.getLeft() == name && !prop.isShorthand()) {
-                    return; // This is a property key, not a variable reference
+        /**
+         * Declare identifiers from a parameter (handles destructuring)
+         */
+        private void declareParameterIdentifiers(AstNode param, ScriptOrFnScope scope) {
+            if (param instanceof Name) {
+                declare(scope, ((Name) param).getIdentifier());
+            } else if (param instanceof ArrayLiteral) {
+                // Array destructuring pattern
+                ArrayLiteral arr = (ArrayLiteral) param;
+                for (AstNode element : arr.getElements()) {
+                    // Skip null or empty elements (e.g., [a, , b])
+                    if (element != null && !(element instanceof EmptyExpression)) {
+                        declareParameterIdentifiers(element, scope);
+                    }
+                }
+            } else if (param instanceof ObjectLiteral) {
+                // Object destructuring pattern
+                ObjectLiteral obj = (ObjectLiteral) param;
+                for (ObjectProperty prop : obj.getElements()) {
+                    // The value (right side) contains the binding
+                    declareParameterIdentifiers(prop.getRight(), scope);
                 }
+            } else if (param instanceof Assignment) {
+                // Default parameter value
+                Assignment assign = (Assignment) param;
+                declareParameterIdentifiers(assign.getLeft(), scope);
             }
+            // Note: Rest parameters (...args) are handled as Name nodes
+        }
 
-            // Mark the identifier as referenced
-            JavaScriptIdentifier id = findIdentifier(identifier, currentScope);
-            if (id != null) {
-                id.incrementRefcount();
+        /**
+         * Declare identifiers from a variable declaration target (handles destructuring)
+         *
+         * @param var Whether the declaration is a var rather than a let or
+         *        const, which goes in the script or function scope
+         */
+        private void declareVariableIdentifiers(AstNode target, ScriptOrFnScope scope, boolean var) {
+            if (target instanceof Name) {
+                declareVariable(scope, ((Name) target).getIdentifier(), var);
+            } else if (target instanceof ArrayLiteral) {
+                // Array destructuring: const [a, b] = arr
+                ArrayLiteral arr = (ArrayLiteral) target;
+                for (AstNode element : arr.getElements()) {
+                    if (element != null && !(element instanceof EmptyExpression)) {
+                        declareVariableIdentifiers(element, scope, var);
+                    }
+                }
+            } else if (target instanceof ObjectLiteral) {
+                // Object destructuring: const {a, b} = obj
+                ObjectLiteral obj = (ObjectLiteral) target;
+                for (ObjectProperty prop : obj.getElements()) {
+                    if (prop.isShorthand()) {
+                        // Shorthand: {a} is both key and binding
+                        if (prop.getLeft() instanceof Name) {
+                            declareVariable(scope, ((Name) prop.getLeft()).getIdentifier(), var);
+                        }
+                    } else {
+                        // Regular: {a: b} - b is the binding
+                        declareVariableIdentifiers(prop.getRight(), scope, var);
+                    }
+                }
+            } else if (target instanceof Assignment) {
+                // Default value: const [a = 1] = arr
+                Assignment assign = (Assignment) target;
+                declareVariableIdentifiers(assign.getLeft(), scope, var);
             }
-            return;
         }
 
-        // Visit all child nodes
-        for (Node child = node.getFirstChild(); child != null; child = child.getNext()) {
-            if (child instanceof AstNode) {
-                visitNode((AstNode) child, currentScope, braceNesting);
+        private void declareVariable(ScriptOrFnScope scope, String symbol, boolean var) {
+            if (var) {
+                declareVar(scope, symbol);
+            } else {
+                declare(scope, symbol);
             }
         }
     }
 
     /**
-     * Declare identifiers from a parameter (handles destructuring)
+     * @return Whether node gets a block scope: a block or the cases of a
+     *         switch declaring let or const, a for loop declaring them in
+     *         its head, or a catch clause with a parameter. The body of a
+     *         function is part of the function scope.
      */
-    private void declareParameterIdentifiers(AstNode param, ScriptOrFnScope scope) {
-        if (param instanceof Name) {
-            scope.declareIdentifier(((Name) param).getIdentifier());
-        } else if (param instanceof ArrayLiteral) {
-            // Array destructuring pattern
-            ArrayLiteral arr = (ArrayLiteral) param;
-            for (AstNode element : arr.getElements()) {
-                // Skip null or empty elements (e.g., [a, , b])
-                if (element != null && !(element instanceof EmptyExpression)) {
-                    declareParameterIdentifiers(element, scope);
+    private static boolean declaresLexically(AstNode node) {
+        if (node instanceof CatchClause) {
+            return ((CatchClause) node).getVarName() != null;
+        }
+        if (node instanceof ForLoop) {
+            return isLexical(((ForLoop) node).getInitializer());
+        }
+        if (node instanceof ForInLoop) {
+            return isLexical(((ForInLoop) node).getIterator());
+        }
+        if (node instanceof SwitchStatement) {
+            for (SwitchCase switchCase : ((SwitchStatement) node).getCases()) {
+                if (switchCase.getStatements() != null) {
+                    for (AstNode statement : switchCase.getStatements()) {
+                        if (isLexical(statement)) {
+                            return true;
+                        }
+                    }
                 }
             }
-        } else if (param instanceof ObjectLiteral) {
-            // Object destructuring pattern
-            ObjectLiteral obj = (ObjectLiteral) param;
-            for (ObjectProperty prop : obj.getElements()) {
-                // The value (right side) contains the binding
-                declareParameterIdentifiers(prop.getRight(), scope);
+            return false;
+        }
+        if (node.getClass() == Scope.class ||
+                node instanceof Block && !(node.getParent() instanceof FunctionNode)) {
+            for (Node child = node.getFirstChild(); child != null; child = child.getNext()) {
+                if (isLexical(child)) {
+                    return true;
+                }
             }
-        } else if (param instanceof Assignment) {
-            // Default parameter value
-            Assignment assign = (Assignment) param;
-            declareParameterIdentifiers(assign.getLeft(), scope);
         }
-        // Note: Rest parameters (...args) are handled as Name nodes
+        return false;
+    }
+
+    private static boolean isLexical(Node node) {
+        return node instanceof VariableDeclaration && !((VariableDeclaration) node).isVar();
     }
 
     /**
-     * Declare identifiers from a variable declaration target (handles destructuring)
+     * @return false if the name is a property name or a label
      */
-    private void declareVariableIdentifiers(AstNode target, ScriptOrFnScope scope) {
-        if (target instanceof Name) {
-            scope.declareIdentifier(((Name) target).getIdentifier());
-        } else if (target instanceof ArrayLiteral) {
-            // Array destructuring: const [a, b] = arr
-            ArrayLiteral arr = (ArrayLiteral) target;
-            for (AstNode element : arr.getElements()) {
-                if (element != null && !(element instanceof EmptyExpression)) {
-                    declareVariableIdentifiers(element, scope);
-                }
-            }
-        } else if (target instanceof ObjectLiteral) {
-            // Object destructuring: const {a, b} = obj
-            ObjectLiteral obj = (ObjectLiteral) target;
-            for (ObjectProperty prop : obj.getElements()) {
-                if (prop.isShorthand()) {
-                    // Shorthand: {a} is both key and binding
-                    if (prop.getLeft() instanceof Name) {
-                        scope.declareIdentifier(((Name) prop.getLeft()).getIdentifier());
-                    }
-                } else {
-                    // Regular: {a: b} - b is the binding
-                    declareVariableIdentifiers(prop.getRight(), scope);
-                }
+    private static boolean isVariableName(Name name) {
+        AstNode parent = name.getParent();
+        if (parent instanceof PropertyGet) {
+            return ((PropertyGet) parent).getProperty() != name;
+        }
+        return !(parent instanceof BreakStatement || parent instanceof ContinueStatement);
+    }
+
+    private static boolean standsAlone(FunctionNode fn) {
+        AstNode parent = fn.getParent();
+        if (fn.isMethod() || parent instanceof ObjectProperty &&
+                (((ObjectProperty) parent).isGetterMethod() || ((ObjectProperty) parent).isSetterMethod())) {
+            return false;
+        }
+        for (AstNode node = parent; node != null; node = node.getParent()) {
+            if (node instanceof WithStatement) {
+                return false;
             }
-        } else if (target instanceof Assignment) {
-            // Default value: const [a = 1] = arr
-            Assignment assign = (Assignment) target;
-            declareVariableIdentifiers(assign.getLeft(), scope);
+        }
+        return true;
+    }
+
+    /**
+     * A node to visit, with the scope it appears in
+     */
+    private static final class Visit {
+        final AstNode node;
+        final ScriptOrFnScope scope;
+        final int braceNesting;
+
+        Visit(AstNode node, ScriptOrFnScope scope, int braceNesting) {
+            this.node = node;
+            this.scope = scope;
+            this.braceNesting = braceNesting;
         }
     }
 
     /**
-     * Find identifier in current scope or parent scopes
+     * Find identifier in current scope or parent scopes, up to limit
+     * excluded
      */
-    private JavaScriptIdentifier findIdentifier(String name, ScriptOrFnScope scope) {
-        while (scope != null) {
+    private static JavaScriptIdentifier findIdentifier(String name, ScriptOrFnScope scope,
+                                                       ScriptOrFnScope limit) {
+        while (scope != limit) {
             JavaScriptIdentifier id = scope.getIdentifier(name);
             if (id != null) {
                 return id;
@@ -248,6 +656,14 @@ public class ScopeBuilder {
         return null;
     }
 
+    /**
+     * Get the identifier a Name node refers to, or null for property names,
+     * labels and undeclared variables
+     */
+    public JavaScriptIdentifier getIdentifier(Name name) {
+        return resolvedNames.get(name);
+    }
+
     /**
      * Get the scope for a given AST node
      */
@@ -9,21 +9,33 @@
 package com.yahoo.platform.yui.compressor;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 class ScriptOrFnScope {
 
-    private int braceNesting;
-    private ScriptOrFnScope parentScope;
-    private ArrayList subScopes;
-    private Hashtable identifiers = new Hashtable();
-    private Hashtable hints = new Hashtable();
+    private final int braceNesting;
+    private final ScriptOrFnScope parentScope;
+    private final boolean block;
+    private final List<ScriptOrFnScope> subScopes = new ArrayList<>(0);
+    private final IdentifierTable identifiers = new IdentifierTable();
+    private Map<String, String> hints;
     private boolean markedForMunging = true;
     private int varcount = 0;
 
     ScriptOrFnScope(int braceNesting, ScriptOrFnScope parentScope) {
+        this(braceNesting, parentScope, false);
+    }
+
+    /**
+     * @param block Whether this is the scope of the let and const
+     *        declarations of a block, or of a catch parameter, rather than
+     *        of a script or function
+     */
+    ScriptOrFnScope(int braceNesting, ScriptOrFnScope parentScope, boolean block) {
         this.braceNesting = braceNesting;
         this.parentScope = parentScope;
-        this.subScopes = new ArrayList();
+        this.block = block;
         if (parentScope != null) {
             parentScope.subScopes.add(this);
         }
@@ -37,20 +49,50 @@ class ScriptOrFnScope {
         return parentScope;
     }
 
+    boolean isBlock() {
+        return block;
+    }
+
+    /**
+     * @return The scope of the script or function this scope is part of,
+     *         where var declarations go
+     */
+    ScriptOrFnScope getVarScope() {
+        ScriptOrFnScope scope = this;
+        while (scope.block) {
+            scope = scope.parentScope;
+        }
+        return scope;
+    }
+
     JavaScriptIdentifier declareIdentifier(String symbol) {
-        JavaScriptIdentifier identifier = (JavaScriptIdentifier) identifiers.get(symbol);
+        JavaScriptIdentifier identifier = identifiers.get(symbol);
         if (identifier == null) {
             identifier = new JavaScriptIdentifier(symbol, this);
-            identifiers.put(symbol, identifier);
+            identifiers.add(identifier);
         }
         return identifier;
     }
 
     JavaScriptIdentifier getIdentifier(String symbol) {
-        return (JavaScriptIdentifier) identifiers.get(symbol);
+        return identifiers.get(symbol);
+    }
+
+    /**
+     * @return The identifiers declared in this scope, in declaration order
+     */
+    IdentifierTable getIdentifiers() {
+        return identifiers;
+    }
+
+    List<ScriptOrFnScope> getSubScopes() {
+        return subScopes;
     }
 
     void addHint(String variableName, String variableType) {
+        if (hints == null) {
+            hints = new HashMap<>();
+        }
         hints.put(variableName, variableType);
     }
 
@@ -62,28 +104,8 @@ class ScriptOrFnScope {
         }
     }
 
-    private ArrayList getUsedSymbols() {
-        ArrayList result = new ArrayList();
-        Enumeration elements = identifiers.elements();
-        while (elements.hasMoreElements()) {
-            JavaScriptIdentifier identifier = (JavaScriptIdentifier) elements.nextElement();
-            String mungedValue = identifier.getMungedValue();
-            if (mungedValue == null) {
-                mungedValue = identifier.getValue();
-            }
-            result.add(mungedValue);
-        }
-        return result;
-    }
-
-    private ArrayList getAllUsedSymbols() {
-        ArrayList result = new ArrayList();
-        ScriptOrFnScope scope = this;
-        while (scope != null) {
-            result.addAll(scope.getUsedSymbols());
-            scope = scope.parentScope;
-        }
-        return result;
+    boolean isMarkedForMunging() {
+        return markedForMunging;
     }
 
     int incrementVarCount() {
@@ -92,9 +114,7 @@ class ScriptOrFnScope {
     }
 
     public void getFullMapping(StringBuffer outBuffer, String mungedPrefix) {
-        Enumeration elements = identifiers.elements();
-        while (elements.hasMoreElements()) {
-            JavaScriptIdentifier identifier = (JavaScriptIdentifier) elements.nextElement();
+        for (JavaScriptIdentifier identifier : identifiers) {
             String mungedValue = identifier.getMungedValue();
             if (mungedValue == null) {
                 mungedValue = identifier.getValue();
@@ -104,76 +124,314 @@ class ScriptOrFnScope {
             outBuffer.append(identifier.getValue() + "\n");
         }
 
-        for (int i = 0; i < subScopes.size(); i++) {
-            ScriptOrFnScope scope = (ScriptOrFnScope) subScopes.get(i);
+        for (ScriptOrFnScope scope : subScopes) {
             scope.getFullMapping(outBuffer, "\t"+mungedPrefix);
         }
     }
 
+    /**
+     * Munges the identifiers of this scope and of its subscopes.
+     */
     void munge() {
+        munge(NamingStrategy.FREQUENCY, NameSequence.DEFAULT, null);
+    }
+
+    /**
+     * Munges like munge(), but the subscopes of this scope are munged
+     * concurrently in pool. They are independent of each other, so the
+     * names are the same.
+     */
+    void munge(ForkJoinPool pool) {
+        munge(NamingStrategy.FREQUENCY, NameSequence.DEFAULT, pool);
+    }
+
+    /**
+     * Munges like munge(), giving the names as the strategy says.
+     *
+     * @param order Order the names are handed out in
+     * @param pool Pool to munge the subscopes in, or null
+     */
+    void munge(NamingStrategy naming, NameSequence order, ForkJoinPool pool) {
+        munge(new UsedNames(), naming, order, pool);
+    }
+
+    /**
+     * Munges like munge(), as if the containing scopes used the names at
+     * the given indices in the NameSequence too.
+     */
+    void munge(int[] usedIndices) {
+        UsedNames used = new UsedNames();
+        for (int index : usedIndices) {
+            used.set(index);
+        }
+        munge(used, NamingStrategy.FREQUENCY, NameSequence.DEFAULT, null);
+    }
+
+    /**
+     * @return The highest index in the NameSequence of the names munged in
+     *         this scope and its subscopes, or -1 if none was
+     */
+    int getHighestMungedIndex() {
+        int highest = -1;
+        Deque<ScriptOrFnScope> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            ScriptOrFnScope scope = stack.pop();
+            for (JavaScriptIdentifier identifier : scope.identifiers) {
+                highest = Math.max(highest, identifier.getMungedIndex());
+            }
+            for (ScriptOrFnScope subScope : scope.subScopes) {
+                stack.push(subScope);
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * @param used Ranks in the order of the names used by the containing
+     *        scopes. It is left unchanged on return.
+     * @param pool Pool to munge the subscopes in, or null
+     */
+    private void munge(UsedNames used, NamingStrategy naming, NameSequence order,
+                       ForkJoinPool pool) {
 
         if (!markedForMunging) {
             // Stop right here if this scope was flagged as unsafe for munging.
             return;
         }
 
-        int pickFromSet = 1;
+        int count = identifiers.size();
+        // Rank of the original name of each identifier, if this scope
+        // marked it as used, or -1
+        int[] originals = new int[count];
+        // Ranks of the munged names picked by this scope
+        int[] picked = new int[count];
+        int pickedCount = 0;
+
+        // The original names are not free either
+        for (int i = 0; i < count; i++) {
+            int index = NameSequence.indexOf(identifiers.get(i).getValue());
+            int rank = index >= 0 ? order.rankOf(index) : -1;
+            if (rank >= 0 && !used.get(rank)) {
+                used.set(rank);
+                originals[i] = rank;
+            } else {
+                originals[i] = -1;
+            }
+        }
+        // So are the original names of the identifiers of the blocks of a
+        // script or function while it picks its own names, as if they were
+        // declared there. Otherwise, a catch parameter such as e would no
+        // longer keep its name free for the functions inside this one,
+        // whose most referenced variables can then miss the short names.
+        int[] blockOriginals = block ? new int[0] : reserveBlockOriginals(used, order);
 
         // Do not munge symbols in the global scope!
         if (parentScope != null) {
+            List<JavaScriptIdentifier> munged = new ArrayList<>(count);
+            for (JavaScriptIdentifier identifier : identifiers) {
+                if (identifier.isMarkedForMunging()) {
+                    munged.add(identifier);
+                } else {
+                    identifier.setMungedValue(identifier.getValue());
+                }
+            }
+            // Indices of the names this scope picks, shortest first
+            int[] names = new int[munged.size()];
+            int next = 0;
+            for (int i = 0; i < names.length; i++) {
+                // Skipping the names used in the containing scopes is
+                // essential, or some of the variables declared there
+                // would be redeclared here, which can lead to errors.
+                next = used.nextFree(next);
+                if (next >= NameSequence.size()) {
+                    throw new IllegalStateException("The YUI Compressor ran out of symbols. Aborting...");
+                }
+                used.set(next);
+                picked[pickedCount++] = next;
+                names[i] = order.indexAt(next);
+            }
+            if (naming == NamingStrategy.CANONICAL) {
+                // Parameters are the first identifiers a function uses
+                munged.sort(Comparator.comparingInt(JavaScriptIdentifier::getFirstUse));
+                for (int i = 0; i < names.length; i++) {
+                    munged.get(i).setMungedIndex(names[i]);
+                }
+            } else {
+                assignByRefcount(munged, names);
+            }
+
+            // The subscopes only need to avoid the names this scope ends
+            // up with, not the original names of its munged variables
+            for (int i = 0; i < count; i++) {
+                if (originals[i] >= 0 && identifiers.get(i).isMarkedForMunging()) {
+                    used.clear(originals[i]);
+                    originals[i] = -1;
+                }
+            }
+        }
+        // The blocks reserve their own original names again
+        for (int rank : blockOriginals) {
+            used.clear(rank);
+        }
 
-            LinkedHashSet freeSymbols = new LinkedHashSet();
-
-            freeSymbols.addAll(JavaScriptCompressor.ones);
-            freeSymbols.removeAll(getAllUsedSymbols());
-            if (freeSymbols.size() == 0) {
-                pickFromSet = 2;
-                freeSymbols.addAll(JavaScriptCompressor.twos);
-                freeSymbols.removeAll(getAllUsedSymbols());
-            }
-            if (freeSymbols.size() == 0) {
-                pickFromSet = 3;
-                freeSymbols.addAll(JavaScriptCompressor.threes);
-                freeSymbols.removeAll(getAllUsedSymbols());
-            }
-            if (freeSymbols.size() == 0) {
-                throw new IllegalStateException("The YUI Compressor ran out of symbols. Aborting...");
-            }
-
-            Enumeration elements = identifiers.elements();
-            while (elements.hasMoreElements()) {
-                if (freeSymbols.size() == 0) {
-                    pickFromSet++;
-                    if (pickFromSet == 2) {
-                        freeSymbols.addAll(JavaScriptCompressor.twos);
-                    } else if (pickFromSet == 3) {
-                        freeSymbols.addAll(JavaScriptCompressor.threes);
-                    } else {
-                        throw new IllegalStateException("The YUI Compressor ran out of symbols. Aborting...");
+        if (pool != null && subScopes.size() > 1) {
+            // Each subscope starts from a copy of the names in use here
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    List<RecursiveAction> tasks = new ArrayList<>(subScopes.size());
+                    for (ScriptOrFnScope scope : subScopes) {
+                        UsedNames copy = used.copy();
+                        tasks.add(new RecursiveAction() {
+                            @Override
+                            protected void compute() {
+                                scope.munge(copy, naming, order, null);
+                            }
+                        });
                     }
-                    // It is essential to remove the symbols already used in
-                    // the containing scopes, or some of the variables declared
-                    // in the containing scopes will be redeclared, which can
-                    // lead to errors.
-                    freeSymbols.removeAll(getAllUsedSymbols());
+                    invokeAll(tasks);
                 }
+            });
+        } else {
+            for (ScriptOrFnScope scope : subScopes) {
+                scope.munge(used, naming, order, null);
+            }
+        }
 
-                String mungedValue;
-                JavaScriptIdentifier identifier = (JavaScriptIdentifier) elements.nextElement();
-                if (identifier.isMarkedForMunging()) {
-                    Iterator freeSymIt = freeSymbols.iterator();
-                    mungedValue = (String) freeSymIt.next();
-                    freeSymIt.remove();
-                } else {
-                    mungedValue = identifier.getValue();
+        for (int i = 0; i < count; i++) {
+            if (originals[i] >= 0) {
+                used.clear(originals[i]);
+            }
+        }
+        for (int i = 0; i < pickedCount; i++) {
+            used.clear(picked[i]);
+        }
+    }
+
+    /**
+     * Marks as used the original names of the identifiers of the blocks of
+     * this scope, down to the functions they contain, that are not used yet.
+     *
+     * @return The ranks of the names marked
+     */
+    private int[] reserveBlockOriginals(UsedNames used, NameSequence order) {
+        int[] reserved = new int[0];
+        int count = 0;
+        Deque<ScriptOrFnScope> stack = new ArrayDeque<>();
+        for (ScriptOrFnScope scope : subScopes) {
+            if (scope.block) {
+                stack.push(scope);
+            }
+        }
+        while (!stack.isEmpty()) {
+            ScriptOrFnScope scope = stack.pop();
+            for (JavaScriptIdentifier identifier : scope.identifiers) {
+                int index = NameSequence.indexOf(identifier.getValue());
+                int rank = index >= 0 ? order.rankOf(index) : -1;
+                if (rank >= 0 && !used.get(rank)) {
+                    used.set(rank);
+                    if (count == reserved.length) {
+                        reserved = Arrays.copyOf(reserved, Math.max(4, count * 2));
+                    }
+                    reserved[count++] = rank;
+                }
+            }
+            for (ScriptOrFnScope subScope : scope.subScopes) {
+                if (subScope.block) {
+                    stack.push(subScope);
                 }
-                identifier.setMungedValue(mungedValue);
+            }
+        }
+        return Arrays.copyOf(reserved, count);
+    }
+
+    /**
+     * Gives the identifiers the names at the given indices in the
+     * NameSequence, shortest first. The most referenced identifiers
+     * get the shortest names. Among the identifiers getting names of the
+     * same length, which does not change the size of the code, the names
+     * go in declaration order, which repeats better across scopes and so
+     * compresses better, e.g. for the parameters of functions.
+     */
+    private static void assignByRefcount(List<JavaScriptIdentifier> identifiers, int[] names) {
+        int count = identifiers.size();
+        Integer[] byRefcount = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byRefcount[i] = i;
+        }
+        // Stable, so ties go in declaration order
+        Arrays.sort(byRefcount, Comparator.comparingInt(
+            (Integer i) -> identifiers.get(i).getRefcount()).reversed());
+
+        // The length of the name each identifier gets, and the next name
+        // of each length left to give
+        int[] lengths = new int[count];
+        Map<Integer, Integer> nextOfLength = new HashMap<>();
+        for (int rank = count - 1; rank >= 0; rank--) {
+            int length = NameSequence.get(names[rank]).length();
+            lengths[byRefcount[rank]] = length;
+            nextOfLength.put(length, rank);
+        }
+        for (int i = 0; i < count; i++) {
+            int rank = nextOfLength.merge(lengths[i], 1, Integer::sum) - 1;
+            identifiers.get(i).setMungedIndex(names[rank]);
+        }
+    }
+
+    /**
+     * Ranks of the names in use, in the order they are handed out, which
+     * are their indices in the NameSequence by default. The names of up to
+     * three characters, which are the ones normally handed out, are kept in
+     * a bitset. The few longer ones are kept apart, so that a long original
+     * name does not make the bitset grow to millions of bits.
+     */
+    private static final class UsedNames {
+
+        private static final int DENSE_LIMIT = 1 << 18;
+
+        private final BitSet dense;
+        private final Set<Integer> sparse;
+
+        UsedNames() {
+            this(new BitSet(), new HashSet<>());
+        }
+
+        private UsedNames(BitSet dense, Set<Integer> sparse) {
+            this.dense = dense;
+            this.sparse = sparse;
+        }
+
+        UsedNames copy() {
+            return new UsedNames((BitSet) dense.clone(), new HashSet<>(sparse));
+        }
+
+        boolean get(int index) {
+            return index < DENSE_LIMIT ? dense.get(index) : sparse.contains(index);
+        }
+
+        void set(int index) {
+            if (index < DENSE_LIMIT) {
+                dense.set(index);
+            } else {
+                sparse.add(index);
             }
         }
 
-        for (int i = 0; i < subScopes.size(); i++) {
-            ScriptOrFnScope scope = (ScriptOrFnScope) subScopes.get(i);
-            scope.munge();
+        void clear(int index) {
+            if (index < DENSE_LIMIT) {
+                dense.clear(index);
+            } else {
+                sparse.remove(index);
+            }
+        }
+
+        int nextFree(int from) {
+            int index = dense.nextClearBit(from);
+            while (index >= DENSE_LIMIT && sparse.contains(index)) {
+                index++;
+            }
+            return index;
         }
     }
 }
@@ -0,0 +1,46 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import java.util.function.BiFunction;
+
+/**
+ * Pass backed by a function, used for the built-in passes.
+ */
+final class SimplePass implements CompressorPass {
+
+    private final String name;
+    private final int order;
+    private final boolean required;
+    private final BiFunction<String, PassContext, String> function;
+
+    SimplePass(String name, int order, boolean required,
+               BiFunction<String, PassContext, String> function) {
+        this.name = name;
+        this.order = order;
+        this.required = required;
+        this.function = function;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public boolean isRequired() {
+        return required;
+    }
+
+    public String apply(String input, PassContext context) {
+        return function.apply(input, context);
+    }
+}
@@ -12,13 +12,16 @@ import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
-import org.mozilla.javascript.ErrorReporter;
 import org.mozilla.javascript.EvaluatorException;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class YUICompressor {
 
@@ -58,6 +61,24 @@ public class YUICompressor {
     @Option(name = "--disable-optimizations", usage = "Disable all micro optimizations")
     private boolean disableOptimizations = false;
 
+    @Option(name = "--disable-pass", metaVar = "NAME[,NAME]", usage = "Skip the named optional compression passes")
+    private String disabledPasses = null;
+
+    @Option(name = "--analysis-cache", metaVar = "DIR", usage = "Reuse and store the scope analysis of JavaScript files in this directory")
+    private String analysisCache = null;
+
+    @Option(name = "--parallel", usage = "Analyze and generate JavaScript functions concurrently")
+    private boolean parallel = false;
+
+    @Option(name = "--naming", metaVar = "frequency|canonical", usage = "How munged names are given to the local symbols of JavaScript files")
+    private NamingStrategy naming = NamingStrategy.FREQUENCY;
+
+    @Option(name = "--frequency-alphabet", usage = "Make munged names of the letters most frequent in the rest of the code")
+    private boolean frequencyAlphabet = false;
+
+    @Option(name = "--fast", usage = "Only remove the comments and whitespace of JavaScript files, without parsing them")
+    private boolean fast = false;
+
     @Argument(metaVar = "INPUT_FILES", usage = "Input files to compress")
     private List<String> inputFiles = new ArrayList<>();
 
@@ -116,6 +137,23 @@ public class YUICompressor {
                 System.exit(1);
             }
 
+            // Parse the names of the passes to skip
+            List<String> disabled = Collections.emptyList();
+            if (disabledPasses != null) {
+                disabled = Arrays.asList(disabledPasses.trim().split("\\s*,\\s*"));
+                // The same names go to the CSS and JavaScript pipelines, so
+                // each name only has to be known to one of them
+                Set<String> known = new LinkedHashSet<>(PassPipeline.getPassNames(CompressorPassProvider.CSS));
+                known.addAll(PassPipeline.getPassNames(CompressorPassProvider.JAVASCRIPT));
+                for (String name : disabled) {
+                    if (!known.contains(name)) {
+                        System.err.println("[ERROR] Unknown pass " + name + ", the passes are: " +
+                                String.join(", ", known));
+                        System.exit(1);
+                    }
+                }
+            }
+
             // Determine munge setting (nomunge inverts the logic)
             boolean munge = !nomunge;
 
@@ -182,37 +220,36 @@ public class YUICompressor {
                         outputFilename = inputFilename.replaceFirst(pattern[0], pattern[1]);
                     }
 
-                    if (fileType.equalsIgnoreCase("js")) {
-                        try {
-                            final String localFilename = inputFilename;
-
-                            JavaScriptCompressor compressor = new JavaScriptCompressor(in, new ErrorReporter() {
-                                public void warning(String message, String sourceName,
-                                        int line, String lineSource, int lineOffset) {
-                                    System.err.println("\n[WARNING] in " + localFilename);
-                                    if (line < 0) {
-                                        System.err.println("  " + message);
-                                    } else {
-                                        System.err.println("  " + line + ':' + lineOffset + ':' + message);
-                                    }
-                                }
+                    if (fileType.equalsIgnoreCase("js") && fast) {
+                        if (outputFilename != null && !inputFilename.equals("-") &&
+                                new File(inputFilename).getCanonicalFile().equals(
+                                    new File(outputFilename).getCanonicalFile())) {
+                            // The input is read while the output is written
+                            StringWriter source = new StringWriter();
+                            in.transferTo(source);
+                            in.close();
+                            in = new StringReader(source.toString());
+                        }
 
-                                public void error(String message, String sourceName,
-                                        int line, String lineSource, int lineOffset) {
-                                    System.err.println("[ERROR] in " + localFilename);
-                                    if (line < 0) {
-                                        System.err.println("  " + message);
-                                    } else {
-                                        System.err.println("  " + line + ':' + lineOffset + ':' + message);
-                                    }
-                                }
+                        if (outputFilename == null) {
+                            out = new OutputStreamWriter(System.out, charset);
+                        } else {
+                            out = new OutputStreamWriter(new FileOutputStream(outputFilename), charset);
+                        }
 
-                                public EvaluatorException runtimeError(String message, String sourceName,
-                                        int line, String lineSource, int lineOffset) {
-                                    error(message, sourceName, line, lineSource, lineOffset);
-                                    return new EvaluatorException(message);
-                                }
-                            });
+                        try {
+                            new FastJavaScriptCompressor(in).compress(out, linebreakpos);
+                        } catch (EvaluatorException e) {
+                            System.err.println("[ERROR] " + inputFilename + ":" + e.lineNumber() + ": " +
+                                e.details());
+                            // Return a special error code used specifically by the web front-end
+                            System.exit(2);
+                        }
+
+                    } else if (fileType.equalsIgnoreCase("js")) {
+                        DiagnosticCollector diagnostics = new DiagnosticCollector(inputFilename);
+                        try (JavaScriptCompressor compressor = new JavaScriptCompressor(in, diagnostics, parallel)) {
+                            diagnostics.printTo(System.err);
 
                             // Close input stream before opening output stream
                             in.close();
@@ -227,10 +264,30 @@ public class YUICompressor {
                                 }
                             }
 
+                            compressor.setNamingStrategy(naming);
+                            compressor.setFrequencyAlphabet(frequencyAlphabet);
+                            File artifactFile = null;
+                            boolean artifactUsed = false;
+                            if (analysisCache != null && munge) {
+                                artifactFile = new File(analysisCache, compressor.getSourceHash() + ".yuia");
+                                artifactUsed = loadAnalysisArtifact(compressor, artifactFile);
+                            }
+
+                            compressor.setDisabledPasses(passesOf(CompressorPassProvider.JAVASCRIPT, disabled));
+                            compressor.setParallelGeneration(parallel);
                             compressor.compress(out, mungemap, linebreakpos, munge, verbose,
                                     preserveSemi, disableOptimizations, preserveHints);
 
+                            if (artifactFile != null && !artifactUsed) {
+                                storeAnalysisArtifact(compressor, artifactFile);
+                            }
+
+                            if (verbose) {
+                                printPassStatistics(inputFilename, compressor.getPassStatistics());
+                            }
+
                         } catch (EvaluatorException e) {
+                            diagnostics.printTo(System.err);
                             e.printStackTrace();
                             // Return a special error code used specifically by the web front-end
                             System.exit(2);
@@ -249,9 +306,17 @@ public class YUICompressor {
                             out = new OutputStreamWriter(new FileOutputStream(outputFilename), charset);
                         }
 
+                        compressor.setDisabledPasses(passesOf(CompressorPassProvider.CSS, disabled));
                         compressor.compress(out, linebreakpos);
+
+                        if (verbose) {
+                            printPassStatistics(inputFilename, compressor.getPassStatistics());
+                        }
                     }
 
+                } catch (IllegalArgumentException e) {
+                    System.err.println("[ERROR] " + e.getMessage());
+                    System.exit(1);
                 } catch (IOException e) {
                     e.printStackTrace();
                     System.exit(1);
@@ -284,6 +349,72 @@ public class YUICompressor {
         }
     }
 
+    private boolean loadAnalysisArtifact(JavaScriptCompressor compressor, File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (InputStream is = new FileInputStream(file)) {
+            boolean used = compressor.useAnalysisArtifact(AnalysisArtifact.readFrom(is));
+            if (verbose) {
+                System.err.println("\n[INFO] " + (used ? "Using" : "Ignoring") + " analysis artifact " + file);
+            }
+            return used;
+        } catch (IOException e) {
+            if (verbose) {
+                System.err.println("\n[WARNING] Cannot read analysis artifact " + file + ": " + e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    private void storeAnalysisArtifact(JavaScriptCompressor compressor, File file) {
+        // Write to a temporary file first so that concurrent builds sharing
+        // the cache never read a partial artifact.
+        File tmp = null;
+        try {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create directory " + dir);
+            }
+            tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            try (OutputStream os = new FileOutputStream(tmp)) {
+                compressor.getAnalysisArtifact().writeTo(os);
+            }
+            java.nio.file.Files.move(tmp.toPath(), file.toPath(),
+                    java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+        } catch (IOException e) {
+            if (verbose) {
+                System.err.println("\n[WARNING] Cannot write analysis artifact " + file + ": " + e.getMessage());
+            }
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return The names among disabled of the passes of the given type
+     */
+    private static List<String> passesOf(String type, List<String> disabled) {
+        Set<String> names = PassPipeline.getPassNames(type);
+        List<String> result = new ArrayList<>();
+        for (String name : disabled) {
+            if (names.contains(name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    private void printPassStatistics(String filename, List<PassStatistics> statistics) {
+        System.err.println("\n[INFO] Compression passes for " + filename);
+        for (PassStatistics pass : statistics) {
+            System.err.println("  " + pass);
+        }
+    }
+
     private void version() {
         System.err.println("@VERSION@");
     }
@@ -306,12 +437,21 @@ public class YUICompressor {
                         + "  -o <file>                 Place the output into <file>. Defaults to stdout.\n"
                         + "                            Multiple files can be processed using the following syntax:\n"
                         + "                            java -jar yuicompressor.jar -o '.css$:-min.css' *.css\n"
-                        + "                            java -jar yuicompressor.jar -o '.js$:-min.js' *.js\n\n"
+                        + "                            java -jar yuicompressor.jar -o '.js$:-min.js' *.js\n"
+                        + "  --disable-pass <names>    Skip the comma separated optional compression passes\n\n"
 
                         + "JavaScript Options\n"
                         + "  --nomunge                 Minify only, do not obfuscate\n"
                         + "  --preserve-semi           Preserve all semicolons\n"
-                        + "  --disable-optimizations   Disable all micro optimizations\n\n"
+                        + "  --disable-optimizations   Disable all micro optimizations\n"
+                        + "  --analysis-cache <dir>    Reuse and store the scope analysis of the input files in <dir>\n"
+                        + "  --parallel                Analyze, munge and generate functions concurrently\n"
+                        + "  --naming <strategy>       frequency (default) gives the shortest names to the most\n"
+                        + "                            used symbols, canonical gives names in order of first\n"
+                        + "                            use, which can compress better with gzip\n"
+                        + "  --frequency-alphabet      Make munged names of the letters most frequent in the\n"
+                        + "                            rest of the code first, which gzip compresses better\n"
+                        + "  --fast                    Only remove comments and whitespace, without parsing\n\n"
 
                         + "If no input file is specified, it defaults to stdin. In this case, the 'type'\n"
                         + "option is required. Otherwise, the 'type' option is required only if the input\n"
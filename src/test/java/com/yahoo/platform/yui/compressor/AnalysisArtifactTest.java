@@ -0,0 +1,118 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Parser;
+
+/**
+ * Test cases for reusing the scope analysis of a source
+ */
+public class AnalysisArtifactTest {
+
+    private static final String SOURCE =
+        "function outer(alpha, beta) {\n" +
+        "  var sum = alpha + beta;\n" +
+        "  function inner(gamma) { var delta = gamma * sum; return delta + alpha; }\n" +
+        "  try { return inner(beta); } catch (error) { return error; }\n" +
+        "}\n" +
+        "var result = outer(1, 2);";
+
+    private String compress(JavaScriptCompressor compressor) throws IOException {
+        StringWriter writer = new StringWriter();
+        compressor.compress(writer, -1, true, false, false, false);
+        return writer.toString();
+    }
+
+    private AnalysisArtifact roundTrip(AnalysisArtifact artifact) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        artifact.writeTo(bytes);
+        return AnalysisArtifact.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testReuseProducesSameOutput() throws Exception {
+        JavaScriptCompressor first = new JavaScriptCompressor(new StringReader(SOURCE), null);
+        String expected = compress(first);
+        AnalysisArtifact artifact = roundTrip(first.getAnalysisArtifact());
+        assertEquals(first.getSourceHash(), artifact.getSourceHash());
+
+        JavaScriptCompressor second = new JavaScriptCompressor(new StringReader(SOURCE), null);
+        assertTrue(second.useAnalysisArtifact(artifact));
+        assertEquals(expected, compress(second));
+    }
+
+    @Test
+    public void testArtifactNamesAreUsed() throws Exception {
+        // Name the parameters of outer by hand instead of munging, the
+        // compressor must pick these names up.
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.setLanguageVersion(Context.VERSION_ES6);
+        ScriptOrFnScope globalScope = new ScopeBuilder().buildScopeTree(
+            new Parser(env).parse(SOURCE, null, 1));
+        ScriptOrFnScope outer = globalScope.getSubScopes().get(0);
+        outer.getIdentifier("alpha").setMungedValue("x");
+        outer.getIdentifier("beta").setMungedValue("y");
+        AnalysisArtifact artifact = roundTrip(
+            AnalysisArtifact.capture(AnalysisArtifact.hash(SOURCE), NamingStrategy.FREQUENCY, false,
+                globalScope));
+
+        JavaScriptCompressor second = new JavaScriptCompressor(new StringReader(SOURCE), null);
+        assertTrue(second.useAnalysisArtifact(artifact));
+        assertTrue(compress(second).startsWith("function outer(x,y){var sum=x+y;"));
+    }
+
+    @Test
+    public void testMismatchedArtifactIsIgnored() throws Exception {
+        JavaScriptCompressor other = new JavaScriptCompressor(
+            new StringReader("function f(a) { return a; }"), null);
+        AnalysisArtifact artifact = other.getAnalysisArtifact();
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(new StringReader(SOURCE), null);
+        assertFalse(compressor.useAnalysisArtifact(artifact));
+        assertEquals(compress(new JavaScriptCompressor(new StringReader(SOURCE), null)),
+            compress(compressor));
+    }
+
+    @Test
+    public void testArtifactOfOtherNamingOptionsIsIgnored() throws Exception {
+        JavaScriptCompressor first = new JavaScriptCompressor(new StringReader(SOURCE), null);
+        first.setNamingStrategy(NamingStrategy.CANONICAL);
+        AnalysisArtifact artifact = roundTrip(first.getAnalysisArtifact());
+        assertEquals(NamingStrategy.CANONICAL, artifact.getNamingStrategy());
+
+        assertFalse(new JavaScriptCompressor(new StringReader(SOURCE), null)
+            .useAnalysisArtifact(artifact));
+        JavaScriptCompressor second = new JavaScriptCompressor(new StringReader(SOURCE), null);
+        second.setNamingStrategy(NamingStrategy.CANONICAL);
+        second.setFrequencyAlphabet(true);
+        assertFalse(second.useAnalysisArtifact(artifact));
+        second.setFrequencyAlphabet(false);
+        assertTrue(second.useAnalysisArtifact(artifact));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedVersion() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new JavaScriptCompressor(new StringReader(SOURCE), null).getAnalysisArtifact().writeTo(bytes);
+        byte[] data = bytes.toByteArray();
+        data[7]++; // low byte of the version
+        AnalysisArtifact.readFrom(new ByteArrayInputStream(data));
+    }
+}
@@ -0,0 +1,44 @@
+package com.yahoo.platform.yui.compressor;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test cases for IdentifierTable
+ */
+public class IdentifierTableTest {
+
+    @Test
+    public void testLookupAfterGrowth() {
+        IdentifierTable table = new IdentifierTable();
+        for (int i = 0; i < 1000; i++) {
+            table.add(new JavaScriptIdentifier("v" + i, null));
+        }
+
+        assertEquals(1000, table.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("v" + i, table.get("v" + i).getValue());
+        }
+        assertNull(table.get("v1000"));
+    }
+
+    @Test
+    public void testDeclarationOrder() {
+        ScriptOrFnScope scope = new ScriptOrFnScope(0, null);
+        String[] names = {"zeta", "alpha", "Aa", "BB", "mu"};
+        for (String name : names) {
+            scope.declareIdentifier(name);
+        }
+        scope.declareIdentifier("alpha");
+
+        List<String> order = new ArrayList<>();
+        for (JavaScriptIdentifier identifier : scope.getIdentifiers()) {
+            order.add(identifier.getValue());
+        }
+        assertArrayEquals(names, order.toArray());
+    }
+}
@@ -0,0 +1,62 @@
+package com.yahoo.platform.yui.compressor;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Test cases for LineBreakingWriter
+ */
+public class LineBreakingWriterTest {
+
+    @Test
+    public void testBreaksAfterStatements() {
+        assertEquals("a=1;\nb=2,\nc=3", LineBreakingWriter.insertLineBreaks("a=1;b=2,c=3", 1));
+        assertEquals("f(){}\ng()", LineBreakingWriter.insertLineBreaks("f(){}g()", 1));
+    }
+
+    @Test
+    public void testNoBreakInLiterals() {
+        assertEquals("s='a;b',\nt=`c;${d}`", LineBreakingWriter.insertLineBreaks("s='a;b',t=`c;${d}`", 1));
+        assertEquals("r=/;,[/;]/g;\nx=1", LineBreakingWriter.insertLineBreaks("r=/;,[/;]/g;x=1", 1));
+    }
+
+    @Test
+    public void testRegExpAfterDivision() {
+        assertEquals("t=a/ /;/.source.length;\nu=1",
+            LineBreakingWriter.insertLineBreaks("t=a/ /;/.source.length;u=1", 1));
+        assertEquals("t=a/ /,/.source.length;\nu=1",
+            LineBreakingWriter.insertLineBreaks("t=a/ /,/.source.length;u=1", 1));
+        assertEquals("t=(a)/ /;/.source.length;\nu=1",
+            LineBreakingWriter.insertLineBreaks("t=(a)/ /;/.source.length;u=1", 1));
+        assertEquals("if(a){}\n/,/.test(b);\nu=1",
+            LineBreakingWriter.insertLineBreaks("if(a){}/,/.test(b);u=1", 1));
+        assertEquals("if(a)/;/.test(b);\nu=1",
+            LineBreakingWriter.insertLineBreaks("if(a)/;/.test(b);u=1", 1));
+    }
+
+    @Test
+    public void testDivisionAfterBrace() {
+        assertEquals("var x={}\n/1;\nvar y=/;/;\nu=1",
+            LineBreakingWriter.insertLineBreaks("var x={}/1;var y=/;/;u=1", 1));
+        assertEquals("x=function(){}\n/1;\ny=/;/;\nu=1",
+            LineBreakingWriter.insertLineBreaks("x=function(){}/1;y=/;/;u=1", 1));
+        assertEquals("x={a:{}\n/1,\nb:/,/}",
+            LineBreakingWriter.insertLineBreaks("x={a:{}/1,b:/,/}", 1));
+        assertEquals("t=`${{a:1}\n/2}`;\nr=/;/",
+            LineBreakingWriter.insertLineBreaks("t=`${{a:1}/2}`;r=/;/", 1));
+    }
+
+    @Test
+    public void testRegExpAfterBlock() {
+        assertEquals("function f(){}\n/,/.test(b);\nu=1",
+            LineBreakingWriter.insertLineBreaks("function f(){}/,/.test(b);u=1", 1));
+        assertEquals("x=()=>{}\n;\n/,/.test(b);\nu=1",
+            LineBreakingWriter.insertLineBreaks("x=()=>{};/,/.test(b);u=1", 1));
+    }
+
+    @Test
+    public void testDivisionAfterRegExp() {
+        assertEquals("t=/a/ /b,\nc=1", LineBreakingWriter.insertLineBreaks("t=/a/ /b,c=1", 1));
+    }
+}
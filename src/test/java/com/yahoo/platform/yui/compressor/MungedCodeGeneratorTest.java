@@ -3,6 +3,8 @@ package com.yahoo.platform.yui.compressor;
 import static org.junit.Assert.*;
 
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 import org.mozilla.javascript.CompilerEnvirons;
@@ -265,4 +267,123 @@ public class MungedCodeGeneratorTest {
         assertTrue("Should contain let", result.contains("let"));
         assertTrue("Should contain const", result.contains("const"));
     }
+
+    private String generate(String source) throws Exception {
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.setLanguageVersion(org.mozilla.javascript.Context.VERSION_ES6);
+        AstRoot ast = new Parser(env).parse(new StringReader(source), null, 1);
+        ScopeBuilder builder = new ScopeBuilder();
+        builder.buildScopeTree(ast);
+        return new MungedCodeGenerator(builder, false).generate(ast);
+    }
+
+    @Test
+    public void testMinimalSeparators() throws Exception {
+        assertEquals("var a=typeof b;", generate("var a = typeof b;"));
+        assertEquals("x=typeof(b);", generate("x = typeof (b);"));
+        assertEquals("x=\"a\"in o;", generate("x = \"a\" in o;"));
+        assertEquals("x=a instanceof B;", generate("x = a instanceof B;"));
+        assertEquals("function f(){return-1;}", generate("function f() { return -1; }"));
+        assertEquals("function f(){return\"s\";}", generate("function f() { return \"s\"; }"));
+        assertEquals("throw new Error();", generate("throw new Error();"));
+    }
+
+    @Test
+    public void testOperatorCollisions() throws Exception {
+        assertEquals("x=a+ +b;", generate("x = a + +b;"));
+        assertEquals("x=a- -b;", generate("x = a - -b;"));
+        assertEquals("x=a++ + ++b;", generate("x = a++ + ++b;"));
+        assertEquals("x=a/ /b/.source.length;", generate("x = a / /b/.source.length;"));
+        assertEquals("x=a<! --b;", generate("x = a < !--b;"));
+        assertEquals("x=1 .toString()+1.5.toFixed();", generate("x = 1 .toString() + 1.5.toFixed();"));
+    }
+
+    @Test
+    public void testLiteralsKeepTheirWhitespace() throws Exception {
+        assertEquals("x=/a  b/g;", generate("x = /a  b/g;"));
+        assertEquals("x=`a  ${b}  c`;", generate("x = `a  ${ b }  c`;"));
+        assertEquals("x=\"a  b\";", generate("x = \"a  b\";"));
+    }
+
+    @Test
+    public void testCompactSource() throws Exception {
+        assertEquals("for(x in y){a=\"b  c\";}",
+            MungedCodeGenerator.compactSource("for (x in y) {\n  a = \"b  c\";\n}\n"));
+        assertEquals("a+ +b;c=/ x /", MungedCodeGenerator.compactSource("a + +b; c = / x /"));
+        assertEquals("return/ x /g", MungedCodeGenerator.compactSource("return / x /g"));
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testDeeplyNestedExpressions() throws Exception {
+        int n = 100000;
+        String plus = "x=" + repeat("a+", n) + "a;";
+        assertEquals(plus, generate(plus));
+        String gets = "x=a" + repeat(".b", n) + ";";
+        assertEquals(gets, generate(gets));
+        String calls = "x=f" + repeat("()", n) + ";";
+        assertEquals(calls, generate(calls));
+        String commas = "x=(" + repeat("a,", n) + "a);";
+        assertEquals(commas, generate(commas));
+    }
+
+    @Test
+    public void testSeparatorsAcrossDeferredNodes() throws Exception {
+        // Every operand is a separate piece of output once deeply nested
+        String source = "x=" + repeat("a- -", 2000) + "a;";
+        assertEquals(source, generate(source));
+    }
+
+    @Test
+    public void testStreamingMatchesGeneratedString() throws Exception {
+        // Statements of various lengths, so that the output is written out
+        // between tokens that need a separator
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            source.append("x").append(i % 7 == 0 ? "" : i).append("=a- -b;");
+            source.append(i % 3 == 0 ? "y=c+ +d;" : "if(a){b=!c}");
+        }
+        CompilerEnvirons env = new CompilerEnvirons();
+        AstRoot ast = new Parser(env).parse(new StringReader(source.toString()), null, 1);
+        ScopeBuilder builder = new ScopeBuilder();
+        builder.buildScopeTree(ast);
+        MungedCodeGenerator generator = new MungedCodeGenerator(builder, false);
+
+        StringWriter writer = new StringWriter();
+        generator.generate(ast, writer);
+        assertEquals(generator.generate(ast), writer.toString());
+    }
+
+    @Test
+    public void testParallelGenerationMatchesSequential() throws Exception {
+        // Large functions, nested in each other, next to tokens that need
+        // a separator
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            body.append("var v").append(i).append(" = x - -").append(i).append(";\n");
+        }
+        String inner = "function inner(x) {\n" + body + "return x;\n}";
+        String source = "var t = typeof function outer(x) {\n" + body +
+            "return " + inner + ";\n};\nvoid " + inner + ";\n";
+
+        CompilerEnvirons env = new CompilerEnvirons();
+        AstRoot ast = new Parser(env).parse(new StringReader(source), null, 1);
+        ScopeBuilder builder = new ScopeBuilder();
+        builder.buildScopeTree(ast).munge();
+        MungedCodeGenerator generator = new MungedCodeGenerator(builder, true);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(generator.generate(ast), generator.generate(ast, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
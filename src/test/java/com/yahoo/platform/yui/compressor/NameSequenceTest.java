@@ -0,0 +1,86 @@
+package com.yahoo.platform.yui.compressor;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Test cases for NameSequence
+ */
+public class NameSequenceTest {
+
+    @Test
+    public void testOrder() {
+        assertEquals("a", NameSequence.get(0));
+        assertEquals("Z", NameSequence.get(51));
+        assertEquals("aa", NameSequence.get(52));
+        // "as" is skipped
+        assertEquals("a9", NameSequence.get(52 + 60));
+        assertEquals("ba", NameSequence.get(52 + 61));
+    }
+
+    @Test
+    public void testReservedWordsSkipped() {
+        assertEquals(-1, NameSequence.indexOf("do"));
+        assertEquals(-1, NameSequence.indexOf("var"));
+        assertEquals(-1, NameSequence.indexOf("NaN"));
+        assertEquals(-1, NameSequence.indexOf("this"));
+        assertEquals(-1, NameSequence.indexOf("eval"));
+        assertEquals("dp", NameSequence.get(NameSequence.indexOf("dn") + 1));
+    }
+
+    @Test
+    public void testIndexOf() {
+        assertEquals(-1, NameSequence.indexOf("1a"));
+        assertEquals(-1, NameSequence.indexOf("a_b"));
+        assertEquals(-1, NameSequence.indexOf("toolong"));
+        for (int i = 0; i < 300000; i += 997) {
+            assertEquals(i, NameSequence.indexOf(NameSequence.get(i)));
+        }
+    }
+
+    @Test
+    public void testBeyondThreeCharacters() {
+        assertEquals("aaaa", NameSequence.get(NameSequence.indexOf("Z99") + 1));
+        assertEquals("aaaaa", NameSequence.get(NameSequence.indexOf("Z999") + 1));
+        assertEquals(5, NameSequence.get(NameSequence.size() - 1).length());
+    }
+
+    @Test
+    public void testOrderByFrequency() {
+        int[] counts = new int[128];
+        counts['t'] = 5;
+        counts['e'] = 3;
+        counts['0'] = 4;
+        NameSequence order = NameSequence.byFrequency(counts);
+
+        assertEquals("t", NameSequence.get(order.indexAt(0)));
+        assertEquals("e", NameSequence.get(order.indexAt(1)));
+        assertEquals("a", NameSequence.get(order.indexAt(2)));
+        assertEquals("tt", NameSequence.get(order.indexAt(52)));
+        assertEquals("t0", NameSequence.get(order.indexAt(53)));
+        // The same names, skipping the same words
+        for (int rank = 0; rank < 300000; rank += 997) {
+            int index = order.indexAt(rank);
+            assertEquals(rank, order.rankOf(index));
+            assertEquals(NameSequence.get(rank).length(), NameSequence.get(index).length());
+        }
+        assertEquals(-1, NameSequence.indexOf("do"));
+        assertEquals(NameSequence.DEFAULT.indexAt(1000), 1000);
+    }
+
+    @Test
+    public void testHugeScope() {
+        ScriptOrFnScope global = new ScriptOrFnScope(0, null);
+        ScriptOrFnScope scope = new ScriptOrFnScope(1, global);
+        int count = NameSequence.indexOf("aaaa") + 10;
+        for (int i = 0; i < count; i++) {
+            scope.declareIdentifier("variable" + i);
+        }
+
+        global.munge();
+
+        assertEquals("a", scope.getIdentifier("variable0").getMungedValue());
+        assertEquals("aaaj", scope.getIdentifier("variable" + (count - 1)).getMungedValue());
+    }
+}
@@ -0,0 +1,76 @@
+package com.yahoo.platform.yui.compressor;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.Parser;
+
+/**
+ * Measures the time per call of parsing and compressing small scripts,
+ * with a parser set up for each call and with the ParserContext of the
+ * thread. Not run with the tests:
+ *
+ * java -cp target/classes:target/test-classes:rhino.jar \
+ *     com.yahoo.platform.yui.compressor.ParserContextBenchmark [iterations]
+ */
+public class ParserContextBenchmark {
+
+    private static final String[] SNIPPETS = {
+        "document.getElementById('menu').className = 'open';",
+        "window.dataLayer = window.dataLayer || []; function gtag(){dataLayer.push(arguments);}",
+        "var t = setTimeout(function () { location.reload(); }, 5000);",
+        "(function (w, d) { var s = d.createElement('script'); s.async = true; d.head.appendChild(s); })(window, document);",
+        "const items = [1, 2, 3].map(x => x * 2).filter(x => x > 2);"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        ErrorReporter reporter = new DiagnosticCollector(null);
+
+        // Warm up both ways before measuring
+        for (int round = 0; round < 2; round++) {
+            long parseFresh = time(iterations, i -> parseWithNewSetup(SNIPPETS[i % SNIPPETS.length], reporter));
+            long parseShared = time(iterations, i -> ParserContext.get().parse(SNIPPETS[i % SNIPPETS.length], 1, reporter));
+            long compress = time(iterations / 10, i -> compress(SNIPPETS[i % SNIPPETS.length]));
+            if (round == 1) {
+                System.out.printf("parse, new setup per call:  %8.0f ns/call%n", (double) parseFresh / iterations);
+                System.out.printf("parse, ParserContext:       %8.0f ns/call%n", (double) parseShared / iterations);
+                System.out.printf("compress, ParserContext:    %8.0f ns/call%n", (double) compress / (iterations / 10));
+            }
+        }
+    }
+
+    /**
+     * The setup each compression did before ParserContext
+     */
+    private static void parseWithNewSetup(String source, ErrorReporter reporter) {
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.setRecordingComments(false);
+        compilerEnv.setRecordingLocalJsDocComments(false);
+        compilerEnv.setLanguageVersion(Context.VERSION_ES6);
+        compilerEnv.setGenerateDebugInfo(false);
+        compilerEnv.setErrorReporter(reporter);
+        new Parser(compilerEnv).parse(source, null, 1);
+    }
+
+    private static void compress(String source) throws Exception {
+        try (JavaScriptCompressor compressor = new JavaScriptCompressor(new StringReader(source), null)) {
+            compressor.compress(new StringWriter(), -1, true, false, false, false);
+        }
+    }
+
+    private static long time(int iterations, Call call) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            call.run(i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private interface Call {
+        void run(int i) throws Exception;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * YUI Compressor
+ * http://developer.yahoo.com/yui/compressor/
+ * Author: Julien Lecomte - http://www.julienlecomte.net/
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ * The copyrights embodied in the content of this file are licensed
+ * by Yahoo! Inc. under the BSD (revised) open source license.
+ */
+package com.yahoo.platform.yui.compressor;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test cases for the pluggable compression passes
+ */
+public class PassPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Appends a marker to the output, registered through the ServiceLoader.
+     */
+    public static class MarkerPassProvider implements CompressorPassProvider {
+        public List<CompressorPass> getPasses(String type) {
+            if (!CSS.equals(type)) {
+                return Collections.emptyList();
+            }
+            return Collections.<CompressorPass>singletonList(
+                new SimplePass("marker", 3450, false, (css, context) -> css + "/*marker*/"));
+        }
+    }
+
+    private String compressCss(String source, String... disabledPasses) throws Exception {
+        CssCompressor compressor = new CssCompressor(new StringReader(source));
+        compressor.setDisabledPasses(Arrays.asList(disabledPasses));
+        StringWriter writer = new StringWriter();
+        compressor.compress(writer, -1);
+        return writer.toString();
+    }
+
+    @Test
+    public void testBuiltinPassesAreSorted() {
+        List<CompressorPass> passes = PassPipeline.create(CompressorPassProvider.CSS, null).getPasses();
+        for (int i = 1; i < passes.size(); i++) {
+            assertTrue(passes.get(i - 1).getOrder() <= passes.get(i).getOrder());
+        }
+        assertEquals("collect-comments", passes.get(0).getName());
+    }
+
+    @Test
+    public void testDisableOptionalPass() throws Exception {
+        String source = "a { color: #ff0000; margin: 0px; }";
+        assertEquals("a{color:red;margin:0}", compressCss(source));
+        assertEquals("a{color:#f00;margin:0}", compressCss(source, "color-keywords"));
+        assertEquals("a{color:red;margin:0px}", compressCss(source, "zero-units"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDisableRequiredPass() throws Exception {
+        compressCss("a{}", "restore-preserved-tokens");
+    }
+
+    @Test
+    public void testUnknownPassIsRejected() throws Exception {
+        try {
+            compressCss("a { color: red }", "no-such-pass");
+            fail("Should reject the name");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("no-such-pass"));
+            assertTrue(e.getMessage(), e.getMessage().contains("color-keywords"));
+        }
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        CssCompressor compressor = new CssCompressor(new StringReader("a  {  color : red ; }"));
+        compressor.compress(new StringWriter(), -1);
+        List<PassStatistics> statistics = compressor.getPassStatistics();
+        assertEquals(CssPasses.PASSES.size(), statistics.size());
+        for (PassStatistics pass : statistics) {
+            if (pass.getName().equals("collapse-whitespace")) {
+                assertEquals(-2, pass.getDelta());
+            }
+        }
+    }
+
+    @Test
+    public void testJavaScriptPasses() throws Exception {
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader("/*! keep */ var s = 'a  b'; f( s );"), null);
+        StringWriter writer = new StringWriter();
+        compressor.compress(writer, -1, true, false, false, false);
+        assertTrue(writer.toString().startsWith("/*! keep */"));
+        assertTrue(writer.toString().contains("'a  b'"));
+        assertFalse(compressor.getPassStatistics().isEmpty());
+    }
+
+    @Test
+    public void testServiceLoaderProvider() throws Exception {
+        File services = new File(folder.getRoot(), "META-INF/services");
+        assertTrue(services.mkdirs());
+        Files.write(new File(services, CompressorPassProvider.class.getName()).toPath(),
+            (MarkerPassProvider.class.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader(
+                new URL[] { folder.getRoot().toURI().toURL() }, getClass().getClassLoader())) {
+            thread.setContextClassLoader(loader);
+            assertEquals("a{color:red}/*marker*/", compressCss("a { color: red }"));
+            assertEquals("a{color:red}", compressCss("a { color: red }", "marker"));
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+}
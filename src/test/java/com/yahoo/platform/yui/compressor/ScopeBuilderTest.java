@@ -2,12 +2,17 @@ package com.yahoo.platform.yui.compressor;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.StringReader;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.ast.AstNode;
 import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.Name;
 
 /**
  * Test cases for ScopeBuilder
@@ -145,6 +150,37 @@ public class ScopeBuilderTest {
         assertNotNull("Const variable 'y' should be declared", globalScope.getIdentifier("y"));
     }
 
+    @Test
+    public void testBlockScopes() throws Exception {
+        String source = "function test(p) {\n" +
+            "  if (p) { let a = 1; var v = a; } else { const b = 2; }\n" +
+            "  for (let i = 0; i < p; i++) {}\n" +
+            "  try {} catch (err) { var err = 1; }\n" +
+            "  { var w; }\n" +
+            "}";
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.setLanguageVersion(Context.VERSION_ES6);
+        ScriptOrFnScope globalScope = new ScopeBuilder().buildScopeTree(new Parser(env).parse(source, null, 1));
+
+        ScriptOrFnScope function = globalScope.getSubScopes().get(0);
+        assertNotNull(function.getIdentifier("v"));
+        assertNotNull(function.getIdentifier("w"));
+        assertNull(function.getIdentifier("a"));
+        // The block without let or const has no scope
+        assertEquals(4, function.getSubScopes().size());
+        for (ScriptOrFnScope block : function.getSubScopes()) {
+            assertTrue(block.isBlock());
+            assertSame(function, block.getVarScope());
+        }
+        assertNotNull(function.getSubScopes().get(0).getIdentifier("a"));
+        assertNotNull(function.getSubScopes().get(1).getIdentifier("b"));
+        assertNotNull(function.getSubScopes().get(2).getIdentifier("i"));
+        // A var of the name of the catch parameter assigns the parameter
+        JavaScriptIdentifier parameter = function.getSubScopes().get(3).getIdentifier("err");
+        assertFalse(parameter.isMarkedForMunging());
+        assertFalse(function.getIdentifier("err").isMarkedForMunging());
+    }
+
     @Test
     public void testEmptySource() throws Exception {
         String source = "";
@@ -166,4 +202,143 @@ public class ScopeBuilderTest {
 
         assertNotNull("Variable 'result' should be declared", globalScope.getIdentifier("result"));
     }
+
+    private Name findName(AstRoot ast, final String identifier, final int occurrence) {
+        final Name[] found = new Name[1];
+        final int[] count = new int[1];
+        ast.visit(node -> {
+            if (node instanceof Name && ((Name) node).getIdentifier().equals(identifier)
+                    && count[0]++ == occurrence) {
+                found[0] = (Name) node;
+            }
+            return found[0] == null;
+        });
+        return found[0];
+    }
+
+    @Test
+    public void testNamesResolvedToDeclarations() throws Exception {
+        String source = "function f() { x = 1; g(function(y) { return x + y; }); var x; }";
+        AstRoot ast = parseSource(source);
+
+        ScopeBuilder builder = new ScopeBuilder();
+        builder.buildScopeTree(ast);
+
+        JavaScriptIdentifier x = builder.getIdentifier(findName(ast, "x", 0));
+        assertNotNull("Reference before a hoisted var should resolve", x);
+        assertSame(x, builder.getIdentifier(findName(ast, "x", 1)));
+        assertSame(x, builder.getIdentifier(findName(ast, "x", 2)));
+        assertEquals(3, x.getRefcount());
+        assertNotNull("Parameter of a callback should resolve",
+                builder.getIdentifier(findName(ast, "y", 1)));
+        assertNull("Undeclared names stay unresolved",
+                builder.getIdentifier(findName(ast, "g", 0)));
+    }
+
+    @Test
+    public void testPropertyNamesNotResolved() throws Exception {
+        String source = "function f(a) { return {a: a.a}; }";
+        AstRoot ast = parseSource(source);
+
+        ScopeBuilder builder = new ScopeBuilder();
+        builder.buildScopeTree(ast);
+
+        assertNotNull(builder.getIdentifier(findName(ast, "a", 0)));
+        assertNull("Property key", builder.getIdentifier(findName(ast, "a", 1)));
+        assertNotNull(builder.getIdentifier(findName(ast, "a", 2)));
+        assertNull("Property access", builder.getIdentifier(findName(ast, "a", 3)));
+    }
+
+    @Test
+    public void testShortGlobalsReserved() throws Exception {
+        String source = "function f() { var local = b; return local; }";
+        AstRoot ast = parseSource(source);
+
+        ScopeBuilder builder = new ScopeBuilder();
+        ScriptOrFnScope globalScope = builder.buildScopeTree(ast);
+        globalScope.munge();
+
+        assertNotNull("Undeclared short name should be reserved", globalScope.getIdentifier("b"));
+        JavaScriptIdentifier local = builder.getIdentifier(findName(ast, "local", 0));
+        assertFalse("b".equals(local.getMungedValue()));
+    }
+
+    @Test
+    public void testMungeAvoidsEnclosingNames() throws Exception {
+        ScriptOrFnScope global = new ScriptOrFnScope(0, null);
+        global.declareIdentifier("a");
+        ScriptOrFnScope outer = new ScriptOrFnScope(1, global);
+        JavaScriptIdentifier first = outer.declareIdentifier("first");
+        JavaScriptIdentifier kept = outer.declareIdentifier("c");
+        kept.preventMunging();
+        ScriptOrFnScope inner = new ScriptOrFnScope(2, outer);
+        JavaScriptIdentifier innerVar = inner.declareIdentifier("innerVar");
+        ScriptOrFnScope sibling = new ScriptOrFnScope(2, outer);
+        JavaScriptIdentifier siblingVar = sibling.declareIdentifier("siblingVar");
+
+        global.munge();
+
+        assertEquals("b", first.getMungedValue());
+        assertEquals("c", kept.getMungedValue());
+        assertEquals("d", innerVar.getMungedValue());
+        assertEquals("Sibling scopes reuse names", "d", siblingVar.getMungedValue());
+    }
+
+    @Test
+    public void testDeeplyNestedExpression() throws Exception {
+        StringBuilder source = new StringBuilder("function f(a){return ");
+        for (int i = 0; i < 100000; i++) {
+            source.append("a+");
+        }
+        source.append("a}");
+        AstRoot ast = parseSource(source.toString());
+
+        ScopeBuilder builder = new ScopeBuilder();
+        ScriptOrFnScope globalScope = builder.buildScopeTree(ast);
+
+        ScriptOrFnScope fnScope = globalScope.getSubScopes().get(0);
+        // The parameter and each of its uses
+        assertEquals(100002, fnScope.getIdentifier("a").getRefcount());
+    }
+
+    private static String analyze(String source, ForkJoinPool pool) throws Exception {
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.setLanguageVersion(org.mozilla.javascript.Context.VERSION_ES6);
+        AstRoot ast = new Parser(env).parse(new StringReader(source), null, 1);
+        ScriptOrFnScope globalScope = new ScopeBuilder().buildScopeTree(ast, pool);
+        if (pool != null) {
+            globalScope.munge(pool);
+        } else {
+            globalScope.munge();
+        }
+        StringBuffer mapping = new StringBuffer();
+        globalScope.getFullMapping(mapping, "");
+        // The artifact has the reference counts too
+        ByteArrayOutputStream artifact = new ByteArrayOutputStream();
+        AnalysisArtifact.capture("", NamingStrategy.FREQUENCY, false, globalScope).writeTo(artifact);
+        return mapping + java.util.Arrays.toString(artifact.toByteArray());
+    }
+
+    @Test
+    public void testParallelAnalysisMatchesSequential() throws Exception {
+        // Global declarations and undeclared short names coming from every
+        // function, in an order the parallel analysis has to reproduce
+        String source =
+            "var g = 1;\n" +
+            "function one(x) { \"q:nomunge, x:nomunge\"; var q = b + c; return function(y) { return x + y + q + d; }; }\n" +
+            "var e = function named(p) { var b = 2; try { f(p) } catch (err) { var h = err; } return b + c + named + k; };\n" +
+            "(function (modules) { var ab = 1; return modules.map(function (m) { return m(ab, c, d) + a; }); })([\n" +
+            "  function (module, exports, require) { var a = 1, b = 2; module.exports = a + b + e + f; },\n" +
+            "  function (module) { \"z:nomunge\"; var z = 3; let [p1, {q1}] = module; return z + p1 + q1 + j; },\n" +
+            "  (u, v = w) => u + v + x\n" +
+            "]);\n" +
+            "function two() { return one + g + c + y; }\n";
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(analyze(source, null), analyze(source, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
@@ -152,4 +152,27 @@ public class CssCompressorTest {
         // The single-quoted string should remain intact
         assertTrue("Single-quoted string with } should be preserved", result.contains("'test}value'"));
     }
+
+    @Test
+    public void testPlaceholderLikeSource() throws Exception {
+        String input = "a::after { content: \"___YUICSSMIN_PRESERVED_TOKEN_0___\"; }\n"
+                + "b { content: \"/*!x*/\"; }";
+        String expected = "a::after{content:\"___YUICSSMIN_PRESERVED_TOKEN_0___\"}"
+                + "b{content:\"/*!x*/\"}";
+
+        CssCompressor compressor = new CssCompressor(new StringReader(input));
+        compressor.compress(output, -1);
+
+        assertEquals(expected, output.toString());
+    }
+
+    @Test
+    public void testDataUrlInsideString() throws Exception {
+        String input = "a { content: \"url(data:image/png;base64,AA AA)\"; }";
+
+        CssCompressor compressor = new CssCompressor(new StringReader(input));
+        compressor.compress(output, -1);
+
+        assertEquals("a{content:\"url(data:image/png;base64,AAAA)\"}", output.toString());
+    }
 }
@@ -0,0 +1,66 @@
+package org.codelibs.yuicompressor;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+import org.mozilla.javascript.EvaluatorException;
+
+import com.yahoo.platform.yui.compressor.Diagnostic;
+import com.yahoo.platform.yui.compressor.DiagnosticCollector;
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+
+/**
+ * Test cases for the structured diagnostics
+ */
+public class DiagnosticCollectorTest {
+
+    @Test
+    public void testSyntaxErrorIsCollected() throws Exception {
+        DiagnosticCollector collector = new DiagnosticCollector("bad.js");
+        try {
+            new JavaScriptCompressor(new StringReader("var a = 1;\nvar x = ;"), collector);
+            fail("Should not parse");
+        } catch (EvaluatorException e) {
+            // expected
+        }
+
+        assertTrue(collector.hasErrors());
+        Diagnostic first = collector.getDiagnostics().get(0);
+        assertEquals(Diagnostic.Severity.ERROR, first.getSeverity());
+        assertEquals(Diagnostic.PARSE_ERROR, first.getCode());
+        assertEquals("bad.js", first.getSourceName());
+        assertEquals(2, first.getLine());
+        assertTrue(first.toString().startsWith("[ERROR] bad.js:2:"));
+    }
+
+    @Test
+    public void testWarningsAndPrinting() throws Exception {
+        DiagnosticCollector collector = new DiagnosticCollector("file.js");
+        collector.warning("first", null, 3, "line", 7);
+        collector.warning("second", "other.js", -1, null, -1);
+
+        assertFalse(collector.hasErrors());
+        List<Diagnostic> diagnostics = collector.getDiagnostics();
+        assertEquals(2, diagnostics.size());
+        assertEquals("other.js", diagnostics.get(1).getSourceName());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        collector.printTo(new PrintStream(bytes, true, "UTF-8"));
+        assertEquals("\n[WARNING] in file.js\n  3:7:first\n" +
+                     "\n[WARNING] in other.js\n  second\n",
+                     new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDefaultReporterCollects() throws Exception {
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader("var a = 1;"), null);
+        assertTrue(compressor.getDiagnostics().isEmpty());
+    }
+}
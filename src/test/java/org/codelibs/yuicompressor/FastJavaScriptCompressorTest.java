@@ -0,0 +1,110 @@
+package org.codelibs.yuicompressor;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.mozilla.javascript.EvaluatorException;
+
+import com.yahoo.platform.yui.compressor.FastJavaScriptCompressor;
+
+/**
+ * Test cases for the parser-free JavaScript minifier
+ */
+public class FastJavaScriptCompressorTest {
+
+    private String compress(String input, int linebreakpos) throws Exception {
+        return compress(new StringReader(input), linebreakpos);
+    }
+
+    private String compress(Reader input, int linebreakpos) throws Exception {
+        StringWriter output = new StringWriter();
+        new FastJavaScriptCompressor(input).compress(output, linebreakpos);
+        return output.toString();
+    }
+
+    @Test
+    public void testWhitespaceAndComments() throws Exception {
+        assertEquals("var a=1,b=a+2;function f(x){return x*b;}",
+            compress("var a = 1, // one\n  b = a + 2;\n/* f */ function f( x ) {\n  return x * b;\n}", -1));
+    }
+
+    @Test
+    public void testSeparators() throws Exception {
+        assertEquals("a+ +b;a- --b;x=a/ /re/.source;", compress("a + +b; a - --b; x = a / /re/.source;", -1));
+        assertEquals("x=1 .toString()+1.5.toFixed();", compress("x = 1 .toString() + 1.5.toFixed();", -1));
+        assertEquals("x=a< !--b;", compress("x = a < !--b;", -1));
+        assertEquals("typeof x in y", compress("typeof x  in  y", -1));
+    }
+
+    @Test
+    public void testLineBreaksForAutomaticSemicolons() throws Exception {
+        assertEquals("a=b\n++c", compress("a = b\n++c", -1));
+        assertEquals("function f(){return\n42}", compress("function f() {\n  return\n  42\n}", -1));
+        assertEquals("a=b+c;d()", compress("a = b +\n c;\n d()", -1));
+        assertEquals("a=b/c", compress("a = b\n/ c", -1));
+    }
+
+    @Test
+    public void testRegularExpressions() throws Exception {
+        assertEquals("x=/[/\\]] +/g.test(s)/2;", compress("x = /[/\\]] +/g.test(s) / 2;", -1));
+        assertEquals("return/ a b /;", compress("return / a b /;", -1));
+        assertEquals("if(a){b()}\n/ c /.test(d)", compress("if (a) { b() }\n/ c /.test(d)", -1));
+    }
+
+    @Test
+    public void testDivisionAfterBrace() throws Exception {
+        assertEquals("var a={}/2;", compress("var a = {} / 2;", -1));
+        assertEquals("x=function(){}/1", compress("x = function(){} / 1", -1));
+        assertEquals("x=function*g(a,b=(1)){return{}}/1", compress("x = function* g(a, b = (1)) { return {} } / 1", -1));
+        assertEquals("x={a:{}/2}", compress("x = { a: {} / 2 }", -1));
+        assertEquals("function f(){}/ a /.test(b)", compress("function f() {} / a /.test(b)", -1));
+        assertEquals("l:{}/ a /.test(b)", compress("l: {} / a /.test(b)", -1));
+        assertEquals("a=()=>{}\n/ a /.test(b)", compress("a = () => {}\n/ a /.test(b)", -1));
+    }
+
+    @Test
+    public void testStringsAndTemplates() throws Exception {
+        assertEquals("s='a  b'+\"c // d\";", compress("s = 'a  b' + \"c // d\";", -1));
+        assertEquals("t=`a  ${b+`c ${{d:1}.d} e`}  f`;",
+            compress("t = `a  ${ b + `c ${ { d: 1 }.d } e` }  f`;", -1));
+        assertEquals("t=`}${`{`}`;x=/ /", compress("t = `}${ `{` }`; x = / /", -1));
+    }
+
+    @Test
+    public void testSpecialComments() throws Exception {
+        assertEquals("/*! License */\nvar a=1;/*@cc_on b() @*/c()",
+            compress("/*! License */\nvar a = 1; /*@cc_on b() @*/ c() /* gone */", -1));
+    }
+
+    @Test
+    public void testLineBreakPosition() throws Exception {
+        assertEquals("a=1;b=2;\nc=3;d='x;y';\ne=4;",
+            compress("a = 1; b = 2; c = 3; d = 'x;y'; e = 4;", 6));
+    }
+
+    @Test
+    public void testReadsInSmallPieces() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            input.append("var s").append(i).append(" = `x${ a / 2 }` + '  '; // comment\n");
+        }
+        // A reader returning one character at a time
+        Reader slow = new StringReader(input.toString()) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+                return super.read(cbuf, off, Math.min(len, 1));
+            }
+        };
+        assertEquals(compress(input.toString(), -1), compress(slow, -1));
+        assertTrue(compress(slow, -1).isEmpty());
+    }
+
+    @Test(expected = EvaluatorException.class)
+    public void testUnterminatedString() throws Exception {
+        compress("var s = 'abc\n';", -1);
+    }
+}
@@ -0,0 +1,141 @@
+package org.codelibs.yuicompressor;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.mozilla.javascript.EvaluatorException;
+
+import com.yahoo.platform.yui.compressor.IncrementalCompressor;
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+
+/**
+ * Test cases for the compression of successive versions of a script
+ */
+public class IncrementalCompressorTest {
+
+    private static final String SCRIPT =
+        "function first(value) {\n  var doubled = value * 2;\n  return doubled;\n}\n" +
+        "var list = [1, 2, 3].map(function (item) {\n  var squared = item * item;\n  return squared;\n});\n" +
+        "function last(value) {\n  var tripled = value * 3;\n  return tripled;\n}\n";
+
+    private static String compressFully(String source) throws Exception {
+        StringWriter output = new StringWriter();
+        try (JavaScriptCompressor compressor = new JavaScriptCompressor(new StringReader(source), null)) {
+            compressor.compress(output, -1, true, false, false, false);
+        }
+        return output.toString();
+    }
+
+    private static String compress(IncrementalCompressor compressor, String source) throws Exception {
+        StringWriter output = new StringWriter();
+        compressor.compress(source, output, -1);
+        return output.toString();
+    }
+
+    @Test
+    public void testEditsMatchFullCompression() throws Exception {
+        IncrementalCompressor compressor = new IncrementalCompressor(null, true, false);
+        String[] versions = {
+            SCRIPT,
+            SCRIPT.replace("value * 2", "value * 4"),
+            SCRIPT.replace("var list", "var a = 1;\nvar list"),
+            SCRIPT.replace("squared;\n}", "squared + eval('1');\n}"),
+            SCRIPT.replace("}\nvar list", "}\n/* comment */ var list"),
+            SCRIPT.replace("return tripled;", "return tripled;\n  }\n  function inner() {"),
+            SCRIPT.substring(SCRIPT.indexOf("var list")),
+            "",
+            SCRIPT
+        };
+        for (String version : versions) {
+            assertEquals(compressFully(version), compress(compressor, version));
+        }
+    }
+
+    @Test
+    public void testReusesUnchangedUnits() throws Exception {
+        IncrementalCompressor compressor = new IncrementalCompressor(null, true, false);
+        compress(compressor, SCRIPT);
+        // Three statements and the three functions of the global scope
+        assertEquals(6, compressor.getUnits());
+        assertEquals(0, compressor.getReusedUnits());
+
+        String edited = SCRIPT.replace("item * item", "item * item * item");
+        compress(compressor, edited);
+        assertEquals(6, compressor.getUnits());
+        assertEquals(5, compressor.getReusedUnits());
+
+        compress(compressor, edited.replace("var list", "var list2 = 0;\nvar list"));
+        assertEquals(7, compressor.getUnits());
+        assertEquals(6, compressor.getReusedUnits());
+    }
+
+    @Test
+    public void testSyntaxErrorKeepsPreviousVersion() throws Exception {
+        IncrementalCompressor compressor = new IncrementalCompressor(null, true, false);
+        compress(compressor, SCRIPT);
+        try {
+            compress(compressor, SCRIPT.replace("value * 2", "value * "));
+            fail("Should not parse");
+        } catch (EvaluatorException e) {
+            // Expected
+        }
+        String edited = SCRIPT.replace("value * 3", "value + 3");
+        assertEquals(compressFully(edited), compress(compressor, edited));
+        assertEquals(5, compressor.getReusedUnits());
+    }
+
+    @Test
+    public void testOptionsMatchFullCompression() throws Exception {
+        String source = SCRIPT + "var flags = { 'on': true, 'size': 1000 }, text = 'caf\u00e9 \u4e2d';\n";
+
+        // Without the optimizations
+        IncrementalCompressor compressor = new IncrementalCompressor(null, true, false, true, null);
+        StringWriter full = new StringWriter();
+        try (JavaScriptCompressor fullCompressor = new JavaScriptCompressor(new StringReader(source), null)) {
+            fullCompressor.compress(full, -1, true, false, false, true);
+        }
+        assertEquals(full.toString(), compress(compressor, source));
+        assertTrue(full.toString().contains("'on':true,'size':1000"));
+
+        // In a charset that cannot encode every character
+        compressor = new IncrementalCompressor(null, true, false, false, StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JavaScriptCompressor fullCompressor = new JavaScriptCompressor(new StringReader(source), null);
+             Writer out = new OutputStreamWriter(bytes, StandardCharsets.ISO_8859_1)) {
+            fullCompressor.compress(out, -1, true, false, false, false);
+        }
+        String expected = new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1);
+        assertEquals(expected, compress(compressor, source));
+        assertTrue(expected.contains("'caf\u00e9 \\u4e2d'"));
+    }
+
+    @Test
+    public void testEditInWith() throws Exception {
+        IncrementalCompressor compressor = new IncrementalCompressor(null, true, false);
+        String source = "var o = {undefined: 1};\nwith (o) { (function () { var aa = 1; return undefined; })(); }\n";
+        assertEquals(compressFully(source), compress(compressor, source));
+        String edited = source.replace("aa = 1", "aa = 2");
+        assertEquals(compressFully(edited), compress(compressor, edited));
+        assertTrue(compressFully(edited).contains("return undefined"));
+    }
+
+    @Test
+    public void testGlobalUndefinedDeclaredElsewhere() throws Exception {
+        IncrementalCompressor compressor = new IncrementalCompressor(null, true, false);
+        String source = "var undefined = 5;\nfunction f(x) { return x === undefined; }\n";
+        assertEquals(compressFully(source), compress(compressor, source));
+        assertTrue(compressFully(source).contains("a===undefined"));
+
+        // Without the declaration, the function is generated again
+        String edited = source.replace("var undefined = 5;", "var defined = 5;");
+        assertEquals(compressFully(edited), compress(compressor, edited));
+        assertTrue(compressFully(edited).contains("a===void 0"));
+    }
+}
@@ -2,13 +2,22 @@ package org.codelibs.yuicompressor;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+import com.yahoo.platform.yui.compressor.NamingStrategy;
+import com.yahoo.platform.yui.compressor.OutputVariant;
 
 /**
  * Test cases for JavaScript compression
@@ -127,6 +136,110 @@ public class JavaScriptCompressorTest {
         assertFalse("Variable y should be munged", result.contains("var y"));
     }
 
+    @Test
+    public void testMostReferencedVariablesGetShortestNames() throws Exception {
+        // More variables than names of one character, the most referenced
+        // one declared last
+        StringBuilder input = new StringBuilder("function f(p) { var ");
+        for (int i = 0; i < 60; i++) {
+            input.append("v").append(i).append(" = p, ");
+        }
+        input.append("last = p; return [");
+        for (int i = 0; i < 60; i++) {
+            input.append("v").append(i).append(", ");
+        }
+        input.append("last, last, last, last]; }");
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input.toString()), null);
+        compressor.compress(output, -1, true, false, false, false);
+
+        String result = output.toString();
+        assertTrue("The most referenced variable should get a one-letter name: " + result,
+            result.matches(".*,(\\w),\\1,\\1,\\1]}"));
+        // Variables referenced as often keep the declaration order
+        assertTrue(result.startsWith("function f(a){var b=a,c=a,d=a,"));
+    }
+
+    @Test
+    public void testCanonicalNaming() throws Exception {
+        String input = "function f(first, second) { use(late); var early = 0, late = 1;\n" +
+                       "  return early + late + late + first + second; }";
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input), null);
+        compressor.compress(output, -1, true, false, false, false);
+        assertEquals("function f(a,b){use(d);var c=0,d=1;return c+d+d+a+b}", output.toString());
+
+        // Parameters by position, then the other variables by first use
+        compressor = new JavaScriptCompressor(new StringReader(input), null);
+        compressor.setNamingStrategy(NamingStrategy.CANONICAL);
+        StringWriter canonical = new StringWriter();
+        compressor.compress(canonical, -1, true, false, false, false);
+        assertEquals("function f(a,b){use(c);var d=0,c=1;return d+c+c+a+b}", canonical.toString());
+    }
+
+    @Test
+    public void testFrequencyAlphabet() throws Exception {
+        String input = "function f(first, second) { return 'zzzzzzzz' + first + second; }";
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input), null);
+        compressor.setFrequencyAlphabet(true);
+        compressor.compress(output, -1, true, false, false, false);
+        // z is the most frequent letter once the names to munge are left out
+        assertEquals("function f(z,n){return'zzzzzzzz'+z+n}", output.toString());
+    }
+
+    @Test
+    public void testBlockScopesReuseNames() throws Exception {
+        String input = "function f(input) {\n" +
+                       "  if (input) { let first = input * 2; use(first); }\n" +
+                       "  else { const second = 3; use(second); }\n" +
+                       "  try { use(input); } catch (problem) { use(problem); }\n" +
+                       "}";
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input), null);
+        compressor.compress(output, -1, true, false, false, false);
+        String result = output.toString();
+        assertTrue(result, result.contains("let b=a*2;use(b)"));
+        assertTrue(result, result.contains("const b=3;use(b)"));
+        assertTrue(result, result.contains("catch(b){use(b)}"));
+    }
+
+    @Test
+    public void testCatchParameterKeepsNameFree() throws Exception {
+        // Enough variables to take every name of one character, which the
+        // original name of the catch parameter leaves free for inner
+        StringBuilder input = new StringBuilder("function outer() {\n");
+        StringBuilder sum = new StringBuilder();
+        for (int i = 0; i < 52; i++) {
+            input.append("  var v").append(i).append(" = ").append(i).append(";\n");
+            sum.append(" + v").append(i);
+        }
+        input.append("  try { use(); } catch (e) { use(e); }\n")
+             .append("  function inner() { var hot = 1; return hot + hot + hot; }\n")
+             .append("  return inner()").append(sum).append(";\n}");
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input.toString()), null);
+        compressor.compress(output, -1, true, false, false, false);
+        String result = output.toString();
+        assertTrue(result, result.contains("function inner(){var e=1;return e+e+e}"));
+    }
+
+    @Test
+    public void testJQuerySize() throws Exception {
+        // The size of ES5 code, with the munging of before block scopes
+        try (Reader in = new InputStreamReader(
+                getClass().getResourceAsStream("/jquery-1.6.4.js"), StandardCharsets.UTF_8)) {
+            JavaScriptCompressor compressor = new JavaScriptCompressor(in, null);
+            compressor.compress(output, -1, true, false, false, true);
+        }
+        assertTrue(output.toString().length() + " characters", output.toString().length() <= 104939);
+    }
+
     @Test
     public void testNestedScopes() throws Exception {
         String input = "function outer() { var a = 1; function inner() { var b = 2; return a + b; } return inner(); }";
@@ -191,7 +304,69 @@ public class JavaScriptCompressorTest {
 
         String result = output.toString();
         assertTrue("Number literals should be preserved",
-            result.contains("3.14159") && result.contains("1000000"));
+            result.contains("3.14159") && result.contains("1e6"));
+
+        // As written without the optimizations
+        compressor = new JavaScriptCompressor(new StringReader(input), null);
+        StringWriter unoptimized = new StringWriter();
+        compressor.compress(unoptimized, -1, true, false, false, true);
+        assertTrue(unoptimized.toString().contains("1000000"));
+    }
+
+    @Test
+    public void testShortestLiterals() throws Exception {
+        String input = "var a = [1000, 0.5, 0.0001, 123456789000, 0.000015, 1.50, 0x10, 1e21, 281474976710655," +
+                       " 'it\\'s', \"say \\\"hi\\\"\", 1000..toFixed(), 10..toFixed()];";
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input), null);
+        compressor.compress(output, -1, true, false, false, false);
+        assertEquals("var a=[1e3,.5,1e-4,123456789e3,15e-6,1.5,16,1e21,0xffffffffffff," +
+                     "\"it's\",'say \"hi\"',1e3.toFixed(),10 .toFixed()];", output.toString());
+    }
+
+    @Test
+    public void testStringCharsetEscapes() throws Exception {
+        String input = "var s = 'caf\u00e9 \u4e2d \ud83d\ude00';";
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input), null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer out = new OutputStreamWriter(bytes, StandardCharsets.ISO_8859_1)) {
+            compressor.compress(out, -1, true, false, false, false);
+        }
+        assertEquals("var s='caf\u00e9 \\u4e2d \\ud83d\\ude00';",
+            new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1));
+
+        // Characters the charset encodes are written as they are
+        compressor = new JavaScriptCompressor(new StringReader(input), null);
+        bytes.reset();
+        try (Writer out = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+            compressor.compress(out, -1, true, false, false, false);
+        }
+        assertEquals("var s='caf\u00e9 \u4e2d \ud83d\ude00';",
+            new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStringControlCharacterEscapes() throws Exception {
+        String input = "var s = ['a\\0b', 'c\\u000bd', 'e\\u001bf', 'g\\u2028h\\u2029i', 'j\\ud800k', 'l\\udc00m'];";
+        String expected = "var s=['a\\x00b','c\\x0bd','e\\x1bf','g\\u2028h\\u2029i','j\\ud800k','l\\udc00m'];";
+
+        // Whatever the charset, and with the optimizations disabled too
+        for (boolean disableOptimizations : new boolean[] { false, true }) {
+            JavaScriptCompressor compressor = new JavaScriptCompressor(new StringReader(input), null);
+            StringWriter unknown = new StringWriter();
+            compressor.compress(unknown, -1, true, false, false, disableOptimizations);
+            assertEquals(expected, unknown.toString());
+
+            compressor = new JavaScriptCompressor(new StringReader(input), null);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (Writer out = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+                compressor.compress(out, -1, true, false, false, disableOptimizations);
+            }
+            assertEquals(expected, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        }
     }
 
     @Test
@@ -385,7 +560,7 @@ public class JavaScriptCompressorTest {
 
         String result = output.toString();
         assertTrue("String with escaped quotes should be preserved",
-            result.contains("He said \\\"Hello, World!\\\""));
+            result.contains("'He said \"Hello, World!\"'"));
     }
 
     @Test
@@ -606,10 +781,36 @@ public class JavaScriptCompressorTest {
             new StringReader(input), null);
         compressor.compress(output, -1, true, false, false, false);
 
-        String result = output.toString();
-        assertTrue("Should contain true", result.contains("true"));
-        assertTrue("Should contain false", result.contains("false"));
-        assertTrue("Should contain null", result.contains("null"));
+        assertEquals("var t=!0;var f=!1;var n=null;", output.toString());
+
+        // Without the optimizations, the keywords are kept
+        compressor = new JavaScriptCompressor(new StringReader(input), null);
+        StringWriter unoptimized = new StringWriter();
+        compressor.compress(unoptimized, -1, true, false, false, true);
+        assertEquals("var t=true;var f=false;var n=null;", unoptimized.toString());
+    }
+
+    @Test
+    public void testExpressionOptimizations() throws Exception {
+        String input = "var o = {'foo': 1, 'class': 2, '1': 3, '01': 4};\n" +
+                       "function f(undefined) { return o['foo'] || o['class'] || undefined; }\n" +
+                       "function g(x) { if (x) { return undefined; } return x === undefined ? void 0 : true.toString(); }";
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input), null);
+        compressor.compress(output, -1, true, false, false, false);
+        assertEquals("var o={foo:1,'class':2,1:3,'01':4};" +
+                     "function f(a){return o.foo||o['class']||a}" +
+                     "function g(a){if(a){{return}}return a===void 0?void 0:true.toString()}",
+                     output.toString());
+    }
+
+    @Test
+    public void testDeletedUndefinedIsKept() throws Exception {
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader("var d = delete undefined, t = typeof undefined;"), null);
+        compressor.compress(output, -1, true, false, false, false);
+        assertEquals("var d=delete undefined,t=typeof void 0;", output.toString());
     }
 
     @Test
@@ -715,5 +916,127 @@ public class JavaScriptCompressorTest {
         assertTrue("Should contain catch keyword", result.contains("catch"));
         assertFalse("Should not be empty", result.isEmpty());
     }
-}
 
+    @Test
+    public void testPreserveSemicolons() throws Exception {
+        String input = "function f() { a(); b(); } switch (x) { case 1: c(); }";
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input), null);
+        compressor.compress(output, -1, false, false, true, false);
+        assertEquals("function f(){a();b();}switch(x){case 1:c();}", output.toString());
+
+        StringWriter trimmed = new StringWriter();
+        compressor.compress(trimmed, -1, false, false, false, false);
+        assertEquals("function f(){a();b()}switch(x){case 1:c()}", trimmed.toString());
+    }
+
+    @Test
+    public void testMultipleVariants() throws Exception {
+        String input = "function test(longParameterName) {\n" +
+                      "  var localValue = longParameterName * 2;\n" +
+                      "  return localValue;\n" +
+                      "}";
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input), null);
+        StringWriter min = new StringWriter();
+        StringWriter debug = new StringWriter();
+        StringWriter wrapped = new StringWriter();
+        StringWriter mungemap = new StringWriter();
+        compressor.compress(Arrays.asList(
+            new OutputVariant(min, mungemap, -1, true, false, false),
+            new OutputVariant(debug, null, -1, false, true, false),
+            new OutputVariant(wrapped, null, 20, true, false, false)), true);
+
+        assertEquals("function test(a){var b=a*2;return b}", min.toString());
+        assertEquals("function test(longParameterName){var localValue=longParameterName*2;return localValue;}",
+            debug.toString());
+        assertEquals(min.toString(), wrapped.toString().replace("\n", ""));
+        assertTrue("Mapping should list the munged names",
+            mungemap.toString().contains("longParameterName"));
+
+        // Munged names are stable across calls
+        StringWriter again = new StringWriter();
+        compressor.compress(again, -1, true, false, false, false);
+        assertEquals(min.toString(), again.toString());
+    }
+
+    @Test
+    public void testStreamedVariantsMatchBufferedOutput() throws Exception {
+        StringBuilder input = new StringBuilder("/*! License */\n");
+        for (int i = 0; i < 2000; i++) {
+            input.append("function f").append(i).append("(value) {\n")
+                 .append("  return value - -1 + \"s\";\n")
+                 .append("}\n");
+        }
+
+        for (int linebreak : new int[] { -1, 80 }) {
+            JavaScriptCompressor compressor = new JavaScriptCompressor(
+                new StringReader(input.toString()), null);
+            StringWriter buffered = new StringWriter();
+            StringWriter other = new StringWriter();
+            compressor.compress(Arrays.asList(
+                new OutputVariant(buffered, null, linebreak, true, false, false),
+                new OutputVariant(other, null, linebreak, false, false, false)), true);
+
+            // Written in several pieces while the code is generated
+            final int[] writes = new int[1];
+            StringWriter streamed = new StringWriter() {
+                @Override
+                public void write(char[] cbuf, int off, int len) {
+                    writes[0]++;
+                    super.write(cbuf, off, len);
+                }
+            };
+            compressor.compress(streamed, linebreak, true, false, false, false);
+
+            assertEquals(buffered.toString(), streamed.toString());
+            assertTrue(streamed.toString().startsWith("/*! License */\n"));
+            assertTrue("Output should be streamed", writes[0] > 1);
+        }
+    }
+
+    @Test
+    public void testLineBreaksAtTokenBoundaries() throws Exception {
+        String input = "var longName = 'a;b,c}d' + `x${ { y: 1 }.y };z`;\n" +
+            "if (longName) /[;,}]/.test(longName), longName = [1, 2, 3];\n" +
+            "function f() { return /;/g; }";
+
+        JavaScriptCompressor compressor = new JavaScriptCompressor(
+            new StringReader(input), null);
+        compressor.compress(output, 1, false, false, false, false);
+
+        assertEquals("var longName='a;b,c}d'+`x${{y:1}\n.y};z`;\n" +
+            "if(longName){/[;,}]/.test(longName),\nlongName=[1,\n2,\n3]}\n" +
+            "function f(){return/;/g}",
+            output.toString());
+    }
+
+    @Test
+    public void testClosedCompressorKeepsOnlyResults() throws Exception {
+        JavaScriptCompressor compressor;
+        try (JavaScriptCompressor c = new JavaScriptCompressor(
+                new StringReader("function f(value) { return value; }"), null)) {
+            compressor = c;
+            compressor.compress(output, -1, true, false, false, false);
+        }
+        assertEquals("function f(a){return a}", output.toString());
+        assertFalse(compressor.getPassStatistics().isEmpty());
+        assertNotNull(compressor.getSourceHash());
+        compressor.close();
+
+        try {
+            compressor.compress(new StringWriter(), -1, true, false, false, false);
+            fail("A closed compressor should not compress");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            compressor.getAnalysisArtifact();
+            fail("A closed compressor should not analyze");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
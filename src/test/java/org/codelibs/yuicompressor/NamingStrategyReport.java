@@ -0,0 +1,100 @@
+package org.codelibs.yuicompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+import com.yahoo.platform.yui.compressor.NamingStrategy;
+
+/**
+ * Reports the size of the munged code of JavaScript files, raw and
+ * gzipped, with each naming strategy against the default one. Not run
+ * with the tests:
+ *
+ * java -cp target/classes:target/test-classes:rhino.jar \
+ *     org.codelibs.yuicompressor.NamingStrategyReport FILE_OR_DIR...
+ */
+public class NamingStrategyReport {
+
+    public static void main(String[] args) throws Exception {
+        List<File> files = new ArrayList<>();
+        for (String arg : args) {
+            File file = new File(arg);
+            if (file.isDirectory()) {
+                File[] children = file.listFiles((dir, name) -> name.endsWith(".js"));
+                Arrays.sort(children);
+                files.addAll(Arrays.asList(children));
+            } else {
+                files.add(file);
+            }
+        }
+
+        NamingStrategy[] strategies = NamingStrategy.values();
+        long[] raw = new long[strategies.length];
+        long[] gzip = new long[strategies.length];
+        int count = 0;
+        System.out.printf("%-40s", "file");
+        for (NamingStrategy strategy : strategies) {
+            System.out.printf(" %12s %12s", strategy + " raw", "gzip");
+        }
+        System.out.println();
+        for (File file : files) {
+            String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            long[] sizes = new long[strategies.length * 2];
+            try {
+                for (int i = 0; i < strategies.length; i++) {
+                    byte[] code = compress(source, strategies[i]).getBytes(StandardCharsets.UTF_8);
+                    sizes[2 * i] = code.length;
+                    sizes[2 * i + 1] = gzip(code);
+                }
+            } catch (Exception e) {
+                // Not a script the compressor can parse
+                continue;
+            }
+            count++;
+            System.out.printf("%-40s", file.getName());
+            for (int i = 0; i < strategies.length; i++) {
+                raw[i] += sizes[2 * i];
+                gzip[i] += sizes[2 * i + 1];
+                System.out.printf(" %12d %12d", sizes[2 * i], sizes[2 * i + 1]);
+            }
+            System.out.println();
+        }
+
+        System.out.printf("%n%d files%n", count);
+        for (int i = 0; i < strategies.length; i++) {
+            System.out.printf("%-10s raw %10d (%+.2f%%)  gzip %10d (%+.2f%%)%n", strategies[i],
+                raw[i], delta(raw[i], raw[0]), gzip[i], delta(gzip[i], gzip[0]));
+        }
+    }
+
+    private static String compress(String source, NamingStrategy strategy) throws IOException {
+        StringWriter output = new StringWriter();
+        try (JavaScriptCompressor compressor = new JavaScriptCompressor(new StringReader(source), null)) {
+            compressor.setNamingStrategy(strategy);
+            compressor.compress(output, -1, true, false, false, false);
+        }
+        return output.toString();
+    }
+
+    private static long gzip(byte[] code) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(code);
+        }
+        return bytes.size();
+    }
+
+    private static double delta(long size, long reference) {
+        return reference == 0 ? 0 : 100.0 * (size - reference) / reference;
+    }
+}